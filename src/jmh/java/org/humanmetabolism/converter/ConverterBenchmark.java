@@ -0,0 +1,162 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.UnificationXref;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion stages on synthetic Recon-like models of several sizes (see {@link SyntheticSbmlGenerator}):
+ * end-to-end conversion (JSBML and streaming), species conversion, xrefs generation,
+ * complexes filling, and OWL serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ConverterBenchmark {
+
+    @Param({"500", "2000", "8000"})
+    public int reactions;
+
+    private byte[] sbml;
+    private SbmlParts parts;
+    private Model converted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws XMLStreamException {
+        sbml = SyntheticSbmlGenerator.reconLike(reactions).toBytes();
+        parts = new SbmlParts();
+        new SbmlStreamReader(parts).read(new ByteArrayInputStream(sbml));
+        converted = new SbmlToBiopaxConverter().convert(new ByteArrayInputStream(sbml));
+    }
+
+    @Benchmark
+    public Model convert() throws XMLStreamException {
+        return new SbmlToBiopaxConverter().convert(new ByteArrayInputStream(sbml));
+    }
+
+    @Benchmark
+    public Model convertStreaming() throws XMLStreamException {
+        SbmlToBiopaxConverter converter = new SbmlToBiopaxConverter();
+        converter.setStreaming(true);
+        return converter.convert(new ByteArrayInputStream(sbml));
+    }
+
+    @Benchmark
+    public Model convertSpecies() {
+        SbmlToBiopaxUtils utils = new SbmlToBiopaxUtils();
+        Model model = utils.createModel();
+        parts.convertSpecies(utils, model);
+        return model;
+    }
+
+    @Benchmark
+    public int generateXrefs() {
+        SbmlToBiopaxUtils utils = new SbmlToBiopaxUtils();
+        Model model = utils.createModel();
+        int xrefs = 0;
+        for (SbmlSpecies species : parts.species) {
+            // resolves the resources and gets/creates the xrefs (resourceToXref)
+            xrefs += utils.generateXrefsForSBase(model, UnificationXref.class, species).size();
+        }
+        return xrefs;
+    }
+
+    @Benchmark
+    public Model fillComplexes(ComplexesState state) {
+        state.utils.fillComplexes(state.model);
+        return state.model;
+    }
+
+    @Benchmark
+    public int writeOwl() throws IOException {
+        try (OwlStreamWriter writer = new OwlStreamWriter(OutputStream.nullOutputStream(), false, "reconx:")) {
+            writer.writeRemaining(converted);
+            writer.finish();
+            return writer.getWrittenCount();
+        }
+    }
+
+    @Benchmark
+    public void writeOwlPaxtools() {
+        new SimpleIOHandler().convertToOWL(converted, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long writeNTriples() throws IOException {
+        return new RdfLinesWriter(RdfLinesWriter.Format.NTRIPLES, 1)
+                .write(converted, Channels.newChannel(OutputStream.nullOutputStream()));
+    }
+
+    @Benchmark
+    public long writeNTriplesParallel() throws IOException {
+        return new RdfLinesWriter(RdfLinesWriter.Format.NTRIPLES, Runtime.getRuntime().availableProcessors())
+                .write(converted, Channels.newChannel(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * A model with the species converted (and the complexes still empty), new for each invocation.
+     */
+    @State(Scope.Thread)
+    public static class ComplexesState {
+        SbmlToBiopaxUtils utils;
+        Model model;
+
+        @Setup(Level.Invocation)
+        public void setUp(ConverterBenchmark benchmark) {
+            utils = new SbmlToBiopaxUtils();
+            model = utils.createModel();
+            benchmark.parts.convertSpecies(utils, model);
+        }
+    }
+
+    /*
+     * Collects the compartments and species of the SBML model.
+     */
+    private static class SbmlParts implements SbmlModelHandler {
+        private final Map<String, SbmlElement> compartments = new HashMap<>();
+        private final List<SbmlSpecies> species = new ArrayList<>();
+
+        void convertSpecies(SbmlToBiopaxUtils utils, Model model) {
+            for (SbmlSpecies s : species) {
+                utils.convertSpecies(model, s, compartments.get(s.getCompartment()));
+            }
+        }
+
+        @Override
+        public void startModel(SbmlElement model) {
+        }
+
+        @Override
+        public void compartment(SbmlElement compartment) {
+            compartments.put(compartment.getId(), compartment);
+        }
+
+        @Override
+        public void species(SbmlSpecies species) {
+            this.species.add(species);
+        }
+
+        @Override
+        public void reaction(SbmlReaction reaction) {
+        }
+
+        @Override
+        public void endModel() {
+        }
+    }
+}
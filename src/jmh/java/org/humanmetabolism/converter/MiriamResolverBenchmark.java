@@ -0,0 +1,63 @@
+package org.humanmetabolism.converter;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MiriamResolver} with the former split/replace/java.net.URI based parsing
+ * of the annotation resources (MIRIAM URNs, as in Recon 2).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MiriamResolverBenchmark {
+
+    private static final String[] RESOURCES = {
+            "urn:miriam:chebi:CHEBI%3A15377",
+            "urn:miriam:kegg.compound:C00001",
+            "urn:miriam:pubchem.substance:3303",
+            "urn:miriam:hmdb:HMDB02111",
+            "urn:miriam:obo.go:GO%3A0005829",
+            "urn:miriam:ec-code:1.1.1.1",
+            "urn:miriam:pubmed:12345678",
+            "urn:miriam:biomodels.db:MODEL1109130000"
+    };
+
+    private final MiriamResolver resolver = MiriamResolver.getInstance();
+
+    @Benchmark
+    public void resolver(Blackhole blackhole) {
+        for (String resource : RESOURCES) {
+            MiriamResolver.Resolved resolved = resolver.resolve(resource);
+            blackhole.consume(resolved.getDb());
+            blackhole.consume(resolved.getId());
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        for (String resource : RESOURCES) {
+            String[] tokens = resource.split(":");
+            String dataBase = tokens[2]
+                    .replace(".", " ")
+                    .replace("-", " ")
+                    .replace(" db", " database")
+                    .replace("obo ", "");
+            String id;
+            try {
+                id = new URI(tokens[3]).getPath();
+            } catch (URISyntaxException e) {
+                id = tokens[3];
+            }
+            blackhole.consume(dataBase);
+            blackhole.consume(id);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.humanmetabolism;
+
+import org.humanmetabolism.converter.ConversionMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts many SBML files in one JVM, on a fixed pool of workers;
+ * each file gets its own converter and model, so that a failure does not affect the others.
+ * The inputs come from a directory (*.xml, *.sbml files, also gzip, bzip2, zip or zstd compressed: *.xml.gz, etc.)
+ * or a manifest file
+ * (one "input [output]" per line, paths relative to the manifest; # - comments).
+ */
+public class BatchConverter {
+    private static Logger log = LoggerFactory.getLogger(BatchConverter.class);
+
+    public static final String SUMMARY_FILE = "batch-summary.tsv";
+    // input file name: base name, SBML extension and the optional compression one
+    private static final Pattern SBML_FILE = Pattern.compile("(.+)\\.(?i:xml|sbml)(\\.(?i:gz|bz2|zip|zst))?");
+
+    private final ConversionOptions options;
+    private final int jobs;
+
+    /**
+     * @param options conversion options for every file
+     * @param jobs number of files to convert at the same time
+     */
+    public BatchConverter(ConversionOptions options, int jobs) {
+        if(jobs < 1) {
+            throw new IllegalArgumentException("jobs must be positive: " + jobs);
+        }
+        this.options = options;
+        this.jobs = jobs;
+    }
+
+    /**
+     * One input file to convert and the result.
+     */
+    public static class Task {
+        private final Path input;
+        private final Path output;
+        private long millis;
+        private int objects;
+        private String error;
+
+        public Task(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public int getObjects() {
+            return objects;
+        }
+
+        /**
+         * @return error message, or null when converted successfully
+         */
+        public String getError() {
+            return error;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+    }
+
+    /**
+     * Lists the tasks for the directory or manifest file.
+     *
+     * @param input directory or manifest file
+     * @param outputDir directory for the outputs (when not specified in the manifest)
+     * @param extension output file extension, e.g. ".owl" or ".owl.gz"
+     * @return tasks
+     * @throws IOException when cannot read the input
+     */
+    public static List<Task> tasks(Path input, Path outputDir, String extension) throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        if(Files.isDirectory(input)) {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(input,
+                    file -> SBML_FILE.matcher(file.getFileName().toString()).matches())) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            }
+            files.sort(null);
+            for (Path file : files) {
+                tasks.add(new Task(file, outputDir.resolve(baseName(file) + extension)));
+            }
+        } else {
+            Path dir = input.toAbsolutePath().getParent();
+            for (String line : Files.readAllLines(input, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] columns = line.split("\\s+");
+                Path file = dir.resolve(columns[0]);
+                Path output = (columns.length > 1) ? dir.resolve(columns[1])
+                        : outputDir.resolve(baseName(file) + extension);
+                tasks.add(new Task(file, output));
+            }
+        }
+        return tasks;
+    }
+
+    /*
+     * The file name without the SBML and compression extensions (e.g. "recon2.xml.gz" - "recon2").
+     */
+    static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        Matcher matcher = SBML_FILE.matcher(name);
+        if(matcher.matches()) {
+            return matcher.group(1);
+        }
+        int dot = name.lastIndexOf('.');
+        return (dot > 0) ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Converts the files and writes the summary.
+     *
+     * @param tasks files to convert
+     * @param summary summary file to write (TSV) or null
+     * @return the number of failed conversions
+     * @throws IOException when cannot write the summary
+     */
+    public int run(List<Task> tasks, Path summary) throws IOException {
+        log.info("Converting " + tasks.size() + " files using " + jobs + " workers...");
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                futures.add(executor.submit(() -> convert(task)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                } catch (ExecutionException e) {
+                    // cannot happen (convert catches everything)
+                    log.error("Unexpected batch failure", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int failed = 0;
+        for (Task task : tasks) {
+            if(task.isFailed()) {
+                failed++;
+                log.error("FAILED " + task.getInput() + ": " + task.getError());
+            }
+        }
+        log.info(String.format(Locale.ROOT, "Batch completed in %.1f s: %d converted, %d failed",
+                (System.nanoTime() - start) / 1e9, tasks.size() - failed, failed));
+
+        if(summary != null) {
+            writeSummary(tasks, summary);
+            log.info("Summary: " + summary);
+        }
+        return failed;
+    }
+
+    private void convert(Task task) {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(task.getOutput().toAbsolutePath().getParent());
+            log.info("Converting " + task.getInput() + " to " + task.getOutput());
+            ConversionMetrics metrics = ReconxToBiopax.convert(task.getInput().toFile(),
+                    task.getOutput().toString(), options);
+            task.objects = ((Number) metrics.get("writtenObjects")).intValue();
+        } catch (Exception | StackOverflowError | OutOfMemoryError e) {
+            // (the other files' models are independent; OOM may be due to this one large model)
+            log.error("Failed to convert " + task.getInput(), e);
+            task.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        } finally {
+            task.millis = (System.nanoTime() - start) / 1000000L;
+        }
+    }
+
+    private static void writeSummary(List<Task> tasks, Path summary) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(summary, StandardCharsets.UTF_8)) {
+            writer.write("input\toutput\tstatus\tmillis\tobjects\terror\n");
+            for (Task task : tasks) {
+                writer.write(task.getInput() + "\t" + task.getOutput() + "\t"
+                        + (task.isFailed() ? "FAILED" : "OK") + "\t" + task.getMillis() + "\t"
+                        + task.getObjects() + "\t"
+                        + (task.isFailed() ? task.getError().replaceAll("\\s+", " ") : "") + "\n");
+            }
+        }
+    }
+}
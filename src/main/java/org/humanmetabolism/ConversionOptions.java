@@ -0,0 +1,192 @@
+package org.humanmetabolism;
+
+import java.nio.file.Path;
+
+import org.humanmetabolism.converter.RdfLinesWriter;
+import org.humanmetabolism.converter.ReactionFilter;
+import org.humanmetabolism.converter.ShardedOwlWriter;
+
+/**
+ * Command line conversion options (the same for each file in the batch mode).
+ */
+public class ConversionOptions {
+    private boolean makePathway = false; //default - won't create top model all-interactions pathway
+    private boolean streaming = false;
+    private int threads = 1;
+    private boolean gzip = false;
+    private boolean incremental = false;
+    private boolean check = false;
+    private boolean strict = false;
+    private ReactionFilter reactionFilter;
+    private ShardedOwlWriter.Partitioning sharding;
+    private RdfLinesWriter.Format format;
+    private int shardBuckets;
+    private Path cacheDir;
+    private long cacheSize = 4L << 30; // 4 GB
+
+    public boolean isMakePathway() {
+        return makePathway;
+    }
+
+    public void setMakePathway(boolean makePathway) {
+        this.makePathway = makePathway;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Whether to update the previous output (if there is one, with its index file)
+     * by converting only the added and modified reactions.
+     *
+     * @return true/false
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Whether to check the structural integrity of the BioPAX objects while converting,
+     * and to save the report.
+     *
+     * @return true/false
+     */
+    public boolean isCheck() {
+        return check || strict;
+    }
+
+    public void setCheck(boolean check) {
+        this.check = check;
+    }
+
+    /**
+     * Whether to fail on the first integrity issue (implies {@link #isCheck()}).
+     *
+     * @return true/false
+     */
+    public boolean isStrict() {
+        return strict;
+    }
+
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    /**
+     * Line-oriented output format (instead of RDF/XML).
+     *
+     * @return format or null (default - BioPAX RDF/XML)
+     */
+    public RdfLinesWriter.Format getFormat() {
+        return format;
+    }
+
+    public void setFormat(RdfLinesWriter.Format format) {
+        this.format = format;
+    }
+
+    /**
+     * @return output file extension for the format and compression
+     */
+    String getExtension() {
+        String extension = (format == null) ? ".owl" : (format == RdfLinesWriter.Format.NTRIPLES) ? ".nt"
+                : (format == RdfLinesWriter.Format.NQUADS) ? ".nq" : ".jsonl";
+        return gzip ? extension + ".gz" : extension;
+    }
+
+    /**
+     * How to split the output into shards (then the output is a directory of shard files and a manifest).
+     *
+     * @return partitioning or null (default - a single output file)
+     */
+    public ShardedOwlWriter.Partitioning getSharding() {
+        return sharding;
+    }
+
+    public void setSharding(ShardedOwlWriter.Partitioning sharding) {
+        this.sharding = sharding;
+    }
+
+    /**
+     * @return number of shards for the hash partitioning
+     */
+    public int getShardBuckets() {
+        return shardBuckets;
+    }
+
+    public void setShardBuckets(int shardBuckets) {
+        this.shardBuckets = shardBuckets;
+    }
+
+    /**
+     * The converted models cache directory.
+     *
+     * @return directory or null (default - no cache)
+     */
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    public void setCacheDir(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @return the cache size limit (bytes)
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * The reactions to convert (subset conversion).
+     *
+     * @return filter or null (all the reactions)
+     */
+    public ReactionFilter getReactionFilter() {
+        return reactionFilter;
+    }
+
+    public void setReactionFilter(ReactionFilter reactionFilter) {
+        this.reactionFilter = reactionFilter;
+    }
+
+    /**
+     * @return the reaction filter (created if not set yet)
+     */
+    ReactionFilter reactionFilter() {
+        if(reactionFilter == null) {
+            reactionFilter = new ReactionFilter();
+        }
+        return reactionFilter;
+    }
+}
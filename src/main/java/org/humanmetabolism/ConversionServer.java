@@ -0,0 +1,328 @@
+package org.humanmetabolism;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.biopax.paxtools.model.Model;
+import org.humanmetabolism.converter.OwlStreamWriter;
+import org.humanmetabolism.converter.RdfLinesWriter;
+import org.humanmetabolism.converter.SbmlToBiopaxConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Conversion service (a warm JVM for many small conversions): a local HTTP server that converts
+ * the SBML sent in the POST /convert request body (or the local file: POST /convert?file=path,
+ * only when listening at a loopback address or for the files under the configured root directory)
+ * and sends back the BioPAX (RDF/XML, or ?format=nt|nq|jsonl; ?pathway=true - with the model pathway)
+ * once it is completely converted and rendered.
+ *
+ * The conversions run on a fixed number of workers, with a bounded queue;
+ * when the queue is full, the request is rejected right away with 429 (Too Many Requests).
+ * GET /metrics - request, latency and throughput counters (JSON); GET /health - "ok".
+ */
+public class ConversionServer {
+    private static Logger log = LoggerFactory.getLogger(ConversionServer.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final ConversionOptions options;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private volatile Path fileRoot;
+    private final long started = System.nanoTime();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param options conversion options (defaults for each request)
+     * @param address address to listen at (e.g. localhost:8080)
+     * @param workers number of conversions at the same time
+     * @param queue number of conversions that can wait for a worker
+     * @throws IOException when cannot listen at the address
+     */
+    public ConversionServer(ConversionOptions options, InetSocketAddress address, int workers, int queue)
+            throws IOException {
+        if(workers < 1 || queue < 0) {
+            throw new IllegalArgumentException("workers must be positive and queue - not negative: "
+                    + workers + ", " + queue);
+        }
+        this.options = options;
+        // (a SynchronousQueue when queue is 0 - no waiting)
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                (queue > 0) ? new ArrayBlockingQueue<>(queue) : new SynchronousQueue<>(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/convert", this::convert);
+        server.createContext("/metrics", this::metrics);
+        server.createContext("/health", exchange -> send(exchange, 200, "text/plain", "ok\n"));
+    }
+
+    /**
+     * Allows ?file= only for the files under this directory (even when listening at a non-loopback address);
+     * without it, ?file= works only when the server is bound to a loopback address.
+     *
+     * @param fileRoot directory, or null
+     * @throws IOException when the directory does not exist
+     */
+    public void setFileRoot(Path fileRoot) throws IOException {
+        this.fileRoot = (fileRoot != null) ? fileRoot.toRealPath() : null;
+    }
+
+    public void start() {
+        server.start();
+        log.info("Listening at http://" + server.getAddress().getHostString() + ":" + getPort()
+                + "/convert (workers: " + executor.getMaximumPoolSize() + ")");
+    }
+
+    /**
+     * @return the port (e.g. when started at port 0 - any free one)
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, and waits for the running conversions (at most the given time).
+     *
+     * @param seconds time to wait
+     */
+    public void stop(int seconds) {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(seconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+    }
+
+    /*
+     * (on the server thread) queues the conversion or rejects it; the response is sent by the worker.
+     */
+    private void convert(HttpExchange exchange) throws IOException {
+        if(!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, "text/plain", "POST the SBML (or ?file=path) to convert\n");
+            return;
+        }
+        requests.increment();
+        long start = System.nanoTime();
+        try {
+            executor.execute(() -> convert(exchange, start));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, TOO_MANY_REQUESTS, "text/plain", "Too many conversions; try again later\n");
+        }
+    }
+
+    private void convert(HttpExchange exchange, long start) {
+        boolean ok = false;
+        Path spool = null;
+        try {
+            Map<String, String> parameters = parameters(exchange);
+            SbmlToBiopaxConverter sbmlToBiopaxConverter = ReconxToBiopax.converter(options);
+            if(parameters.containsKey("pathway")) {
+                sbmlToBiopaxConverter.setMakePathway(Boolean.parseBoolean(parameters.get("pathway")));
+            }
+            RdfLinesWriter.Format format = parameters.containsKey("format")
+                    ? ReconxToBiopax.format(parameters.get("format")) : options.getFormat();
+
+            Model bpModel;
+            if(parameters.containsKey("file")) {
+                File file = localFile(parameters.get("file"));
+                if(file == null) {
+                    // (the same response for a missing file, not to tell which paths exist)
+                    send(exchange, 403, "text/plain", "File access not allowed: " + parameters.get("file") + "\n");
+                    return;
+                }
+                bpModel = sbmlToBiopaxConverter.convert(file);
+            } else {
+                try (InputStream inputStream = body(exchange)) {
+                    bpModel = sbmlToBiopaxConverter.convert(inputStream);
+                }
+            }
+
+            // render the model to a temporary file first (gzipped if the client accepts that), so that
+            // a failure is still an error response rather than a truncated document with the 200 status
+            // (and the response is not held in memory)
+            String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = accept != null && accept.contains("gzip");
+            spool = Files.createTempFile("reconx-response-", ".tmp");
+            if(format == null) {
+                try (OwlStreamWriter owlWriter = new OwlStreamWriter(spool, gzip, ReconxToBiopax.XML_BASE)) {
+                    owlWriter.writeRemaining(bpModel);
+                    owlWriter.finish();
+                }
+            } else {
+                new RdfLinesWriter(format, 1).write(bpModel, spool, gzip);
+            }
+            if(gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", contentType(format));
+            exchange.sendResponseHeaders(200, Files.size(spool));
+            try (OutputStream body = exchange.getResponseBody()) {
+                Files.copy(spool, body);
+            }
+            ok = true;
+        } catch (IllegalArgumentException | XMLStreamException e) {
+            sendError(exchange, 400, e); // bad parameters or not an SBML
+        } catch (Exception | StackOverflowError | OutOfMemoryError e) {
+            log.error("Failed to convert", e);
+            sendError(exchange, 500, e);
+        } finally {
+            exchange.close();
+            deleteQuietly(spool);
+            long nanos = System.nanoTime() - start;
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            (ok ? completed : failed).increment();
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if(path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Cannot delete " + path + ": " + e);
+        }
+    }
+
+    private static InputStream body(HttpExchange exchange) throws IOException {
+        InputStream inputStream = new BufferedInputStream(exchange.getRequestBody(), 1 << 16);
+        return "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                ? new GZIPInputStream(inputStream, 1 << 16) : inputStream;
+    }
+
+    private static String contentType(RdfLinesWriter.Format format) {
+        if(format == null) {
+            return "application/rdf+xml";
+        }
+        switch (format) {
+            case NTRIPLES:
+                return "application/n-triples";
+            case NQUADS:
+                return "application/n-quads";
+            default:
+                return "application/x-ndjson";
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        long done = completed.sum() + failed.sum();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        String json = "{\n"
+                + "  \"requests\": " + requests.sum() + ",\n"
+                + "  \"rejected\": " + rejected.sum() + ",\n"
+                + "  \"completed\": " + completed.sum() + ",\n"
+                + "  \"failed\": " + failed.sum() + ",\n"
+                + "  \"active\": " + executor.getActiveCount() + ",\n"
+                + "  \"queued\": " + executor.getQueue().size() + ",\n"
+                + "  \"latencyAvgMillis\": " + ((done > 0) ? totalNanos.sum() / done / 1000000L : 0) + ",\n"
+                + "  \"latencyMaxMillis\": " + maxNanos.get() / 1000000L + ",\n"
+                + "  \"throughputPerMinute\": " + String.format(Locale.ROOT, "%.2f", completed.sum() * 60 / seconds) + ",\n"
+                + "  \"uptimeSeconds\": " + (long) seconds + "\n"
+                + "}\n";
+        send(exchange, 200, "application/json", json);
+    }
+
+    /*
+     * The file to convert (?file=), if it exists and may be read: under the file root, if set,
+     * or any file - when listening at a loopback address only; otherwise null.
+     */
+    private File localFile(String name) {
+        Path root = fileRoot;
+        if(root == null && !server.getAddress().getAddress().isLoopbackAddress()) {
+            return null;
+        }
+        try {
+            // (the real path - no way out of the root via .. or symbolic links)
+            Path path = Paths.get(name).toRealPath();
+            if((root != null && !path.startsWith(root)) || !Files.isRegularFile(path)) {
+                return null;
+            }
+            return path.toFile();
+        } catch (IOException | InvalidPathException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if(query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = (eq < 0) ? pair : pair.substring(0, eq);
+                String value = (eq < 0) ? "true" : pair.substring(eq + 1);
+                parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, Throwable e) {
+        try {
+            send(exchange, status, "text/plain", e.getClass().getSimpleName() + ": " + e.getMessage() + "\n");
+        } catch (IOException | RuntimeException ex) {
+            // the response has been started already (or the client is gone)
+            log.debug("Cannot send the error response: " + ex);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Parses "[host:]port" (default host - localhost).
+     *
+     * @param address address
+     * @return socket address
+     */
+    static InetSocketAddress address(String address) {
+        int colon = address.lastIndexOf(':');
+        return (colon < 0) ? new InetSocketAddress("localhost", Integer.parseInt(address))
+                : new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+}
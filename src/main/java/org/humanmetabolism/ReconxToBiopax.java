@@ -1,44 +1,348 @@
 package org.humanmetabolism;
 
+import org.humanmetabolism.converter.ConversionMetrics;
+import org.humanmetabolism.converter.IntegrityChecker;
+import org.humanmetabolism.converter.ModelCache;
+import org.humanmetabolism.converter.OwlStreamWriter;
+import org.humanmetabolism.converter.RdfLinesWriter;
+import org.humanmetabolism.converter.ReactionIndex;
 import org.humanmetabolism.converter.SbmlToBiopaxConverter;
-import org.biopax.paxtools.io.SimpleIOHandler;
-import org.biopax.paxtools.model.BioPAXLevel;
+import org.humanmetabolism.converter.ShardedOwlWriter;
 import org.biopax.paxtools.model.Model;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 
 public class ReconxToBiopax {
     private static Logger log = LoggerFactory.getLogger(ReconxToBiopax.class);
+    static final String XML_BASE = "reconx:";
+    private static final int MAX_INTEGRITY_SAMPLES = 10;
 
     public static void main(String[] args) throws IOException, XMLStreamException {
-        boolean makePathway = false; //default - won't create top model all-interactions pathway
+        ConversionOptions options = new ConversionOptions();
+        boolean batch = false;
+        boolean server = false;
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int queue = 16;
+        String fileRoot = null;
+        int jobs = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
 
-        if(args.length < 2) {
-            System.err.println("Usage: ReconxToBiopax input.sbml output.owl [--pathway]\n" +
+        if(args.length < 2 || (args[0].equals("--batch") && args.length < 3)) {
+            System.err.println("Usage: ReconxToBiopax input.sbml output.owl [--pathway] [--stream] [--threads N] [--gzip] [--incremental] [--format owl|nt|nq|jsonl]\n" +
+                    "       ReconxToBiopax input.sbml output_dir --shards compartment|subsystem|N [options]\n" +
+                    "       ReconxToBiopax --batch input_dir|manifest output_dir [--jobs N] [options]\n" +
+                    "       ReconxToBiopax --server [host:]port [--workers N] [--queue N] [options]\n" +
                     "Optional parameters:\n" +
-                    "--pathway\tcreate a root model Pathway that simply contains all the interactions");
+                    "--pathway\tcreate a root model Pathway that simply contains all the interactions\n" +
+                    "--stream\tread the SBML with a StAX cursor (low memory) instead of building the JSBML document\n" +
+                    "--threads N\tconvert reactions using N threads (default: 1); the result does not depend on N\n" +
+                    "--gzip\tgzip the output (also when the output file name ends with .gz)\n" +
+                    "--incremental\tupdate the previous output (using its .index file) converting only the changed reactions\n" +
+                    "--batch\tconvert all the *.xml/*.sbml (also *.xml.gz, etc.) files in the input directory or listed in the manifest\n" +
+                    "\t(lines: input [output], relative to the manifest) to the output directory, in one JVM\n" +
+                    "--check\tcheck the BioPAX objects (e.g. references without unification xrefs, empty complexes,\n" +
+                    "\tunused xrefs) while converting, and save the counts and samples to <output>.integrity.tsv\n" +
+                    "--strict\tlike --check, but fail on the first issue\n" +
+                    "--cache DIR\treuse the models converted earlier from the same input and options (cached in DIR)\n" +
+                    "--cache-size MB\tthe cache size limit, the least recently used models are removed (default: 4096)\n" +
+                    "--format owl|nt|nq|jsonl\twrite BioPAX RDF/XML (default), N-Triples, N-Quads or JSON Lines\n" +
+                    "--shards compartment|subsystem|N\twrite the output directory of BioPAX files (and manifest.tsv),\n" +
+                    "\tone per compartment, subsystem, or N hash buckets of the reactions, each with all the objects it needs\n" +
+                    "--server\tconvert the SBML POSTed to http://host:port/convert (or ?file=path), sending back BioPAX;\n" +
+                    "\tGET /metrics - counters; the conversions run on N workers, and up to N queued, or get 429\n" +
+                    "--file-root DIR\tallow ?file= for the files under DIR (otherwise - only when listening at localhost)\n" +
+                    "--jobs N\tnumber of files to convert at the same time in the batch mode (default: half the CPUs)\n" +
+                    "Reaction selection (subset conversion; options can be repeated, a reaction must match each kind):\n" +
+                    "--select-id ID\tconvert the reaction with this id\n" +
+                    "--select-ids FILE\tconvert the reactions listed in the file (one id per line)\n" +
+                    "--select-id-pattern REGEX\tconvert the reactions whose id matches the regular expression\n" +
+                    "--select-sbo N\tconvert the reactions with this SBO term (e.g. 185 or SBO:0000185)\n" +
+                    "--select-compartment ID\tconvert the reactions with a reactant or product in this compartment\n" +
+                    "--select-subsystem NAME\tconvert the reactions with this SUBSYSTEM in the notes");
             System.exit(-1);
         }
 
-        String sbmlFile = args[0];
-        String bpFile = args[1];
-        if(args.length > 2 && args[2].equals("--pathway")) {
-            makePathway = true;
+        int first = 0;
+        if(args[0].equals("--batch")) {
+            batch = true;
+            first = 1;
+        } else if(args[0].equals("--server")) {
+            server = true;
+        }
+        String sbmlFile = args[first];
+        String bpFile = args[first + 1];
+        for(int i = server ? 2 : first + 2; i < args.length; i++) {
+            if(args[i].equals("--pathway")) {
+                options.setMakePathway(true);
+            } else if(args[i].equals("--stream")) {
+                options.setStreaming(true);
+            } else if(args[i].equals("--threads") && i + 1 < args.length) {
+                options.setThreads(Integer.parseInt(args[++i]));
+            } else if(args[i].equals("--gzip")) {
+                options.setGzip(true);
+            } else if(args[i].equals("--incremental")) {
+                options.setIncremental(true);
+            } else if(args[i].equals("--batch")) {
+                batch = true;
+            } else if(args[i].equals("--jobs") && i + 1 < args.length) {
+                jobs = Integer.parseInt(args[++i]);
+            } else if(args[i].equals("--workers") && i + 1 < args.length) {
+                workers = Integer.parseInt(args[++i]);
+            } else if(args[i].equals("--queue") && i + 1 < args.length) {
+                queue = Integer.parseInt(args[++i]);
+            } else if(args[i].equals("--file-root") && i + 1 < args.length) {
+                fileRoot = args[++i];
+            } else if(args[i].equals("--check")) {
+                options.setCheck(true);
+            } else if(args[i].equals("--strict")) {
+                options.setStrict(true);
+            } else if(args[i].equals("--cache") && i + 1 < args.length) {
+                options.setCacheDir(Paths.get(args[++i]));
+            } else if(args[i].equals("--cache-size") && i + 1 < args.length) {
+                options.setCacheSize(Long.parseLong(args[++i]) << 20);
+            } else if(args[i].equals("--format") && i + 1 < args.length) {
+                options.setFormat(format(args[++i]));
+            } else if(args[i].equals("--shards") && i + 1 < args.length) {
+                String shards = args[++i];
+                if(shards.matches("\\d+")) {
+                    options.setSharding(ShardedOwlWriter.Partitioning.HASH);
+                    options.setShardBuckets(Integer.parseInt(shards));
+                } else {
+                    options.setSharding(ShardedOwlWriter.Partitioning.valueOf(shards.toUpperCase()));
+                }
+            } else if(args[i].equals("--select-id") && i + 1 < args.length) {
+                options.reactionFilter().addId(args[++i]);
+            } else if(args[i].equals("--select-ids") && i + 1 < args.length) {
+                for (String line : Files.readAllLines(Paths.get(args[++i]))) {
+                    if(!line.trim().isEmpty() && !line.startsWith("#")) {
+                        options.reactionFilter().addId(line.trim());
+                    }
+                }
+            } else if(args[i].equals("--select-id-pattern") && i + 1 < args.length) {
+                options.reactionFilter().setIdPattern(args[++i]);
+            } else if(args[i].equals("--select-sbo") && i + 1 < args.length) {
+                String sbo = args[++i];
+                options.reactionFilter().addSboTerm(Integer.parseInt(sbo.startsWith("SBO:") ? sbo.substring(4) : sbo));
+            } else if(args[i].equals("--select-compartment") && i + 1 < args.length) {
+                options.reactionFilter().addCompartment(args[++i]);
+            } else if(args[i].equals("--select-subsystem") && i + 1 < args.length) {
+                options.reactionFilter().addSubsystem(args[++i]);
+            } else {
+                log.warn("Unknown parameter: " + args[i]);
+            }
+        }
+
+        if(server) {
+            ConversionServer conversionServer = new ConversionServer(options,
+                    ConversionServer.address(args[1]), workers, queue);
+            if(fileRoot != null) {
+                conversionServer.setFileRoot(Paths.get(fileRoot));
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> conversionServer.stop(30)));
+            conversionServer.start();
+            return;
+        }
+
+        if(batch) {
+            Path outputDir = Paths.get(bpFile);
+            BatchConverter batchConverter = new BatchConverter(options, jobs);
+            List<BatchConverter.Task> tasks = BatchConverter.tasks(Paths.get(sbmlFile), outputDir,
+                    (options.getSharding() != null) ? ".shards" : options.getExtension());
+            Files.createDirectories(outputDir);
+            int failed = batchConverter.run(tasks, outputDir.resolve(BatchConverter.SUMMARY_FILE));
+            if(failed > 0) {
+                System.exit(1);
+            }
+            return;
         }
 
         log.info("Converting the SBML model to BioPAX...");
+        convert(new File(sbmlFile), bpFile, options);
+    }
+
+    /**
+     * Converts the SBML file to BioPAX and writes the metrics report next to it.
+     *
+     * @param sbmlFile input SBML
+     * @param bpFile output BioPAX file path
+     * @param options conversion options
+     * @return conversion metrics
+     * @throws IOException when cannot read or write
+     * @throws XMLStreamException when cannot parse the SBML
+     */
+    static ConversionMetrics convert(File sbmlFile, String bpFile, ConversionOptions options)
+            throws IOException, XMLStreamException {
+        SbmlToBiopaxConverter sbmlToBiopaxConverter = converter(options);
+        boolean gzip = options.isGzip() || bpFile.endsWith(".gz");
+        ConversionMetrics metrics = new ConversionMetrics();
+        sbmlToBiopaxConverter.setMetrics(metrics);
+        if(options.getSharding() != null) {
+            return convertToShards(sbmlToBiopaxConverter, sbmlFile, bpFile, options);
+        }
+        if(options.getFormat() != null) {
+            return convertToLines(sbmlToBiopaxConverter, sbmlFile, bpFile, options);
+        }
+        Path output = Paths.get(bpFile);
+        Path index = Paths.get(bpFile + ".index");
+        if(options.isIncremental() && Files.exists(index) && Files.exists(output)) {
+            // (the unchanged objects are copied from the previous output, which is only replaced when done)
+            try (ConversionMetrics.Timer timer = metrics.time("previous")) {
+                sbmlToBiopaxConverter.setIncrementalBase(ReactionIndex.read(index), output);
+                log.info("Updating the previous BioPAX output " + bpFile);
+            } catch (IOException e) {
+                log.warn("Cannot read the index " + index + " (" + e + "); converting everything");
+            }
+        }
+        // interactions are written as soon as converted; the rest - when the conversion is done
+        try (OwlStreamWriter owlWriter = new OwlStreamWriter(output, gzip, XML_BASE)) {
+            owlWriter.setRecordingRanges(options.isIncremental());
+            sbmlToBiopaxConverter.setCompletedElementConsumer(owlWriter::write);
+            sbmlToBiopaxConverter.convert(sbmlFile);
+            log.info("Saving the rest of the BioPAX model to " + bpFile);
+            // (the interactions were written during the 'reactions' phase, unless incremental)
+            try (ConversionMetrics.Timer timer = metrics.time("write")) {
+                sbmlToBiopaxConverter.writeRemaining(owlWriter);
+            }
+            if(options.isIncremental()) {
+                // no stale index for the new output, whatever happens next
+                Files.deleteIfExists(index);
+            }
+            // (replaces the output file only now; if the conversion fails, the previous output stays)
+            owlWriter.finish();
+            log.info("Completed! Written " + owlWriter.getWrittenCount() + " BioPAX objects.");
+            metrics.set("writtenObjects", owlWriter.getWrittenCount());
+        }
+
+        if(options.isIncremental() && sbmlToBiopaxConverter.getReactionIndex() != null) {
+            ReactionIndex reactionIndex = sbmlToBiopaxConverter.getReactionIndex();
+            reactionIndex.setOutputSize(Files.size(output));
+            reactionIndex.write(index);
+        }
+
+        writeReports(sbmlToBiopaxConverter, bpFile);
+        return metrics;
+    }
+
+    /**
+     * Creates a new converter (one per conversion) with the options.
+     *
+     * @param options conversion options
+     * @return converter
+     * @throws IOException when cannot create the cache directory
+     */
+    static SbmlToBiopaxConverter converter(ConversionOptions options) throws IOException {
         SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
-        sbmlToBiopaxConverter.setMakePathway(makePathway);
-        sbmlToBiopaxConverter.biopaxModelXmlBase("reconx:");
-        Model bpModel = sbmlToBiopaxConverter.convert(new File(sbmlFile));
-        log.info("Saving the BioPAX model to " + bpFile);
-        SimpleIOHandler bpHandler = new SimpleIOHandler(BioPAXLevel.L3);
-        bpHandler.convertToOWL(bpModel, new FileOutputStream(bpFile));
-        log.info("Completed!");
+        sbmlToBiopaxConverter.setMakePathway(options.isMakePathway());
+        sbmlToBiopaxConverter.setStreaming(options.isStreaming());
+        sbmlToBiopaxConverter.setParallelism(options.getThreads());
+        sbmlToBiopaxConverter.setReactionFilter(options.getReactionFilter());
+        if(options.getCacheDir() != null) {
+            if(options.isIncremental()) {
+                log.warn("--cache is not used with --incremental");
+            } else {
+                sbmlToBiopaxConverter.setCache(new ModelCache(options.getCacheDir(), options.getCacheSize()));
+            }
+        }
+        if(options.isCheck()) {
+            sbmlToBiopaxConverter.setIntegrityChecker(new IntegrityChecker(options.isStrict(), MAX_INTEGRITY_SAMPLES));
+        }
+        sbmlToBiopaxConverter.biopaxModelXmlBase(XML_BASE);
+        return sbmlToBiopaxConverter;
+    }
+
+    /*
+     * Converts and then writes the model as N-Triples, N-Quads or JSON Lines (rendered in parallel).
+     */
+    private static ConversionMetrics convertToLines(SbmlToBiopaxConverter sbmlToBiopaxConverter, File sbmlFile,
+                                                    String bpFile, ConversionOptions options)
+            throws IOException, XMLStreamException {
+        if(options.isIncremental()) {
+            log.warn("--incremental is only supported for the RDF/XML output (ignored)");
+        }
+        ConversionMetrics metrics = sbmlToBiopaxConverter.getMetrics();
+        Model bpModel = sbmlToBiopaxConverter.convert(sbmlFile);
+        RdfLinesWriter linesWriter = new RdfLinesWriter(options.getFormat(), Runtime.getRuntime().availableProcessors());
+        long bytes;
+        try (ConversionMetrics.Timer timer = metrics.time("write")) {
+            bytes = linesWriter.write(bpModel, Paths.get(bpFile), options.isGzip() || bpFile.endsWith(".gz"));
+        }
+        log.info("Completed! Written " + bpModel.getObjects().size() + " BioPAX objects ("
+                + options.getFormat() + ", " + bytes + " bytes) to " + bpFile);
+        metrics.set("writtenObjects", bpModel.getObjects().size());
+        metrics.set("writtenBytes", bytes);
+        writeReports(sbmlToBiopaxConverter, bpFile);
+        return metrics;
+    }
+
+    static RdfLinesWriter.Format format(String name) {
+        switch (name.toLowerCase()) {
+            case "owl":
+            case "rdfxml":
+                return null;
+            case "nt":
+            case "ntriples":
+                return RdfLinesWriter.Format.NTRIPLES;
+            case "nq":
+            case "nquads":
+                return RdfLinesWriter.Format.NQUADS;
+            case "jsonl":
+            case "json":
+                return RdfLinesWriter.Format.JSONL;
+            default:
+                throw new IllegalArgumentException("Unknown output format: " + name);
+        }
+    }
+
+    /*
+     * Converts and then writes the model as shards, concurrently, to the output directory.
+     */
+    private static ConversionMetrics convertToShards(SbmlToBiopaxConverter sbmlToBiopaxConverter, File sbmlFile,
+                                                     String bpDir, ConversionOptions options)
+            throws IOException, XMLStreamException {
+        if(options.isIncremental()) {
+            log.warn("--incremental is not supported with --shards (ignored)");
+        }
+        if(options.getFormat() != null) {
+            log.warn("--format is not supported with --shards (RDF/XML shards are written)");
+        }
+        ConversionMetrics metrics = sbmlToBiopaxConverter.getMetrics();
+        Model bpModel = sbmlToBiopaxConverter.convert(sbmlFile);
+        ShardedOwlWriter shardedWriter = new ShardedOwlWriter(options.getSharding(), options.getShardBuckets(),
+                options.isGzip(), XML_BASE, Runtime.getRuntime().availableProcessors());
+        List<ShardedOwlWriter.Shard> shards;
+        try (ConversionMetrics.Timer timer = metrics.time("write")) {
+            shards = shardedWriter.write(bpModel, Paths.get(bpDir));
+        }
+        int objects = 0;
+        for (ShardedOwlWriter.Shard shard : shards) {
+            objects += shard.getObjectCount();
+        }
+        log.info("Completed! Written " + shards.size() + " shards to " + bpDir);
+        metrics.set("shards", shards.size());
+        metrics.set("writtenObjects", objects);
+        writeReports(sbmlToBiopaxConverter, bpDir);
+        return metrics;
+    }
+
+    /*
+     * Writes the metrics and integrity check reports next to the output.
+     */
+    private static void writeReports(SbmlToBiopaxConverter sbmlToBiopaxConverter, String bpFile) throws IOException {
+        Path report = Paths.get(bpFile + ".metrics.json");
+        sbmlToBiopaxConverter.getMetrics().writeJson(report);
+        log.info("Conversion metrics: " + report);
+        IntegrityChecker integrityChecker = sbmlToBiopaxConverter.getIntegrityChecker();
+        if(integrityChecker != null) {
+            Path integrityReport = Paths.get(bpFile + ".integrity.tsv");
+            integrityChecker.writeReport(integrityReport);
+            log.info("Integrity check: " + integrityChecker + " (" + integrityReport + ")");
+        }
     }
 }
@@ -0,0 +1,154 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXFactory;
+import org.biopax.paxtools.model.Model;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe get-or-create of the BioPAX elements of a model by URI,
+ * so that each URI is created (and initialized) exactly once, whichever thread asks first.
+ *
+ * In the deferred mode (used while reactions are prepared in parallel),
+ * new elements are only registered here; they get added to the model
+ * when first requested again with the deferred mode off, i.e. in the same
+ * order as by the single-threaded conversion, which keeps the result deterministic.
+ */
+public class BiopaxElementRegistry {
+    private final BioPAXFactory bioPAXFactory;
+    private final Model model;
+    private final ConcurrentMap<String, BioPAXElement> elements = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean deferred;
+    private volatile Consumer<BioPAXElement> attachListener;
+
+    public BiopaxElementRegistry(BioPAXFactory bioPAXFactory, Model model) {
+        this.bioPAXFactory = bioPAXFactory;
+        this.model = model;
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Sets the callback for new elements, when these get added to the model
+     * (always on the thread that links the objects, even in the parallel mode),
+     * e.g. to set default properties that refer to shared objects.
+     *
+     * @param attachListener callback or null
+     */
+    public void setAttachListener(Consumer<BioPAXElement> attachListener) {
+        this.attachListener = attachListener;
+    }
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    /**
+     * Gets the element by URI or creates, initializes and registers a new one.
+     * The initializer runs once, before any other thread can see the element;
+     * it must only set the element's own (data) properties, not link other shared objects.
+     *
+     * @param type BioPAX type to create
+     * @param uri absolute URI
+     * @param initializer sets the properties of a new element, or null
+     * @param <T> BioPAX type
+     * @return existing or new element
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BioPAXElement> T getOrCreate(Class<T> type, String uri, Consumer<? super T> initializer) {
+        BioPAXElement element = elements.get(uri);
+        if(element == null) {
+            element = elements.computeIfAbsent(uri, u -> {
+                BioPAXElement existing;
+                synchronized (model) {
+                    existing = model.getByID(u);
+                }
+                if(existing != null) {
+                    return existing;
+                }
+                T e = bioPAXFactory.create(type, u);
+                if(initializer != null) {
+                    initializer.accept(e);
+                }
+                pending.add(u);
+                return e;
+            });
+        }
+        if(!deferred && pending.remove(uri)) {
+            attach(element);
+        }
+        return (T) element;
+    }
+
+    /**
+     * Gets a registered element or the model's one.
+     *
+     * @param uri absolute URI
+     * @return element or null
+     */
+    public BioPAXElement get(String uri) {
+        BioPAXElement element = elements.get(uri);
+        if(element == null) {
+            synchronized (model) {
+                element = model.getByID(uri);
+            }
+        } else if(!deferred && pending.remove(uri)) {
+            attach(element);
+        }
+        return element;
+    }
+
+    /**
+     * Adds the element to the model if it was created in the deferred mode and is not there yet
+     * (for the elements found in another cache, not by {@link #get(String)}).
+     *
+     * @param element registered element
+     * @param <T> BioPAX type
+     * @return the element
+     */
+    public <T extends BioPAXElement> T attachPending(T element) {
+        if(!deferred && pending.remove(element.getUri())) {
+            attach(element);
+        }
+        return element;
+    }
+
+    private void attach(BioPAXElement element) {
+        synchronized (model) {
+            model.add(element);
+        }
+        Consumer<BioPAXElement> listener = attachListener;
+        if(listener != null) {
+            listener.accept(element);
+        }
+    }
+
+    /**
+     * Removes the element from the registry and model.
+     *
+     * @param element to remove
+     */
+    public void remove(BioPAXElement element) {
+        elements.remove(element.getUri());
+        if(!pending.remove(element.getUri())) {
+            synchronized (model) {
+                model.remove(element);
+            }
+        }
+    }
+
+    public int size() {
+        return elements.size();
+    }
+}
@@ -0,0 +1,71 @@
+package org.humanmetabolism.converter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable UTF-8 byte buffer (no intermediate strings or encoders),
+ * which the writers render the output into before writing it to a channel.
+ */
+final class ByteSink {
+    private byte[] bytes;
+    private int size;
+    private char highSurrogate;
+
+    ByteSink(int capacity) {
+        bytes = new byte[Math.max(64, capacity)];
+    }
+
+    ByteSink append(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            append(s.charAt(i));
+        }
+        return this;
+    }
+
+    ByteSink append(char c) {
+        if(size + 4 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        if(c < 0x80) {
+            bytes[size++] = (byte) c;
+        } else if(c < 0x800) {
+            bytes[size++] = (byte) (0xc0 | (c >> 6));
+            bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        } else if(Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if(Character.isLowSurrogate(c)) {
+            if(highSurrogate == 0) {
+                bytes[size++] = '?'; // unpaired
+            } else {
+                int codePoint = Character.toCodePoint(highSurrogate, c);
+                highSurrogate = 0;
+                bytes[size++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3f));
+            }
+        } else {
+            bytes[size++] = (byte) (0xe0 | (c >> 12));
+            bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        }
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /*
+     * (keeps the buffer)
+     */
+    void clear() {
+        size = 0;
+        highSurrogate = 0;
+    }
+
+    ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+}
@@ -0,0 +1,259 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Complex;
+import org.biopax.paxtools.model.level3.Protein;
+import org.biopax.paxtools.model.level3.ProteinReference;
+import org.biopax.paxtools.model.level3.RelationshipXref;
+import org.biopax.paxtools.model.level3.Xref;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Fills the complexes, which the conversion leaves empty, with protein components.
+ *
+ * While visiting the model, it indexes the protein references by their xrefs' (db, id), whatever the xref type
+ * (complexes have relationship xrefs, and protein references - unification xrefs), and by the HGNC symbols.
+ * Then, each complex is resolved independently (in parallel, if there is a pool):
+ * its xrefs are looked up in the index, and the rest of the complex name parts (gene symbols)
+ * become proteins of the references found by symbol or new ones.
+ * The objects are created (once per URI) via the element registry in the deferred mode,
+ * and finally linked and added to the model in the complexes order.
+ */
+public class ComplexResolver implements ModelPostProcessor {
+    private static Logger log = LoggerFactory.getLogger(ComplexResolver.class);
+
+    private static final String SYMBOL_DB = "hgnc.symbol";
+
+    private final BiopaxElementRegistry registry;
+    private final XrefRegistry xrefRegistry;
+    private final UriFactory uriFactory;
+    private final ForkJoinPool pool;
+
+    private final Map<XrefKey, ProteinReference> byXref = new HashMap<>();
+    private final Map<String, ProteinReference> bySymbol = new HashMap<>();
+    private final List<Complex> complexes = new ArrayList<>();
+    private Set<String> complexUris;
+
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder symbolMatched = new LongAdder();
+    private final LongAdder symbolCreated = new LongAdder();
+
+    /**
+     * @param registry model's element registry
+     * @param xrefRegistry model's xref registry
+     * @param uriFactory makes the URIs of the new objects
+     * @param pool to resolve the complexes in parallel, or null
+     */
+    ComplexResolver(BiopaxElementRegistry registry, XrefRegistry xrefRegistry, UriFactory uriFactory, ForkJoinPool pool) {
+        this.registry = registry;
+        this.xrefRegistry = xrefRegistry;
+        this.uriFactory = uriFactory;
+        this.pool = pool;
+    }
+
+    /**
+     * Limits the resolution to these complexes (the other complexes are left as they are).
+     *
+     * @param complexUris complex URIs, or null (default - all the complexes)
+     */
+    void setComplexes(Set<String> complexUris) {
+        this.complexUris = complexUris;
+    }
+
+    @Override
+    public void visit(BioPAXElement element) {
+        if(element instanceof ProteinReference) {
+            ProteinReference proteinRef = (ProteinReference) element;
+            for (Xref xref : proteinRef.getXref()) {
+                XrefKey key = XrefKey.untyped(xref);
+                byXref.putIfAbsent(key, proteinRef);
+                if(isSymbol(key)) {
+                    bySymbol.putIfAbsent(key.id, proteinRef);
+                }
+            }
+        } else if(element instanceof Complex && (complexUris == null || complexUris.contains(element.getUri()))) {
+            complexes.add((Complex) element);
+        }
+    }
+
+    @Override
+    public void complete(Model model) {
+        // (the order of linking matters, e.g. a protein shared by complexes gets the last one's location)
+        complexes.sort(Comparator.comparing(Complex::getUri));
+        List<Resolution> resolutions;
+        registry.setDeferred(true);
+        try {
+            if(pool == null) {
+                resolutions = complexes.stream().map(this::resolve).collect(Collectors.toList());
+            } else {
+                resolutions = pool.submit(() -> complexes.parallelStream().map(this::resolve)
+                        .collect(Collectors.toList())).join();
+            }
+        } finally {
+            registry.setDeferred(false);
+        }
+
+        for (Resolution resolution : resolutions) {
+            resolution.link();
+        }
+
+        log.info("Filled " + complexes.size() + " complexes: " + this);
+    }
+
+    /*
+     * Finds or creates the components of the complex (does not modify the shared objects).
+     */
+    private Resolution resolve(Complex complex) {
+        Resolution resolution = new Resolution(complex);
+        Set<String> names = symbols(complex.getDisplayName());
+
+        // Let's try to capture proteins from the model first
+        for (Xref xref : complex.getXref()) {
+            ProteinReference proteinRef = byXref.get(XrefKey.untyped(xref));
+            if(proteinRef != null) {
+                Protein protein = registry.getOrCreate(Protein.class,
+                        uriFactory.component(complex.getUri(), proteinRef.getUri()), p -> {
+                            p.setDisplayName(proteinRef.getDisplayName());
+                            p.setStandardName(proteinRef.getStandardName());
+                        });
+                resolution.add(protein, proteinRef, null);
+                names.remove(proteinRef.getDisplayName());
+                matched.increment();
+            }
+        }
+
+        // These are the ones we were not able to capture by xrefs; use the symbols
+        for (String symbol : names) {
+            String name = uriFactory.name(symbol);
+            Protein protein = registry.getOrCreate(Protein.class, uriFactory.symbolProtein(name), p -> {
+                p.setDisplayName(name);
+                p.setStandardName(name);
+            });
+
+            ProteinReference proteinReference = bySymbol.get(name);
+            if(proteinReference != null) {
+                resolution.add(protein, proteinReference, null);
+                symbolMatched.increment();
+            } else {
+                proteinReference = registry.getOrCreate(ProteinReference.class,
+                        uriFactory.symbolReference(name), r -> {
+                            r.setDisplayName(name);
+                            r.setStandardName(name);
+                        });
+                resolution.add(protein, proteinReference,
+                        xrefRegistry.getOrCreate(RelationshipXref.class, SYMBOL_DB, name));
+                symbolCreated.increment();
+            }
+        }
+
+        return resolution;
+    }
+
+    /*
+     * Splits the complex name (e.g. "ATP5A1:ATP5B:ATP5C1") to the gene symbols.
+     */
+    static Set<String> symbols(String name) {
+        Set<String> symbols = new LinkedHashSet<>();
+        if(name == null) {
+            return symbols;
+        }
+        int start = 0;
+        while (start <= name.length()) {
+            int end = name.indexOf(':', start);
+            if(end < 0) {
+                end = name.length();
+            }
+            if(end > start) {
+                symbols.add(name.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return symbols;
+    }
+
+    static boolean isSymbol(XrefKey key) {
+        return key.db.equals(SYMBOL_DB) || key.db.equals("hgnc symbol");
+    }
+
+    public int getComplexCount() {
+        return complexes.size();
+    }
+
+    /**
+     * @return number of the components found by the complex xrefs
+     */
+    public long getMatchedCount() {
+        return matched.sum();
+    }
+
+    /**
+     * @return number of the components found by the gene symbol (existing protein references)
+     */
+    public long getSymbolMatchedCount() {
+        return symbolMatched.sum();
+    }
+
+    /**
+     * @return number of the symbol-fallback components (with new protein references)
+     */
+    public long getSymbolCreatedCount() {
+        return symbolCreated.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "components matched by xref: " + getMatchedCount()
+                + ", by symbol: " + getSymbolMatchedCount()
+                + ", symbol-fallback: " + getSymbolCreatedCount();
+    }
+
+    /*
+     * A complex with its components to link.
+     */
+    private class Resolution {
+        private final Complex complex;
+        private final List<Protein> proteins = new ArrayList<>();
+        private final List<ProteinReference> references = new ArrayList<>();
+        private final List<Xref> symbolXrefs = new ArrayList<>();
+
+        Resolution(Complex complex) {
+            this.complex = complex;
+        }
+
+        void add(Protein protein, ProteinReference reference, Xref symbolXref) {
+            proteins.add(protein);
+            references.add(reference);
+            symbolXrefs.add(symbolXref);
+        }
+
+        /*
+         * Adds the new objects to the model and links them (single-threaded).
+         */
+        void link() {
+            for (int i = 0; i < proteins.size(); i++) {
+                Protein protein = (Protein) registry.get(proteins.get(i).getUri());
+                ProteinReference reference = (ProteinReference) registry.get(references.get(i).getUri());
+                Xref symbolXref = symbolXrefs.get(i);
+                if(symbolXref != null) {
+                    reference.addXref((Xref) registry.get(symbolXref.getUri()));
+                }
+                protein.setEntityReference(reference);
+                complex.addComponent(protein);
+                protein.setCellularLocation(complex.getCellularLocation());
+            }
+        }
+    }
+}
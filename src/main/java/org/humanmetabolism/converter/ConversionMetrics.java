@@ -0,0 +1,270 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-phase wall time and allocated bytes, object counts, cache statistics and peak heap
+ * of a conversion run, written as a JSON report; each phase is also emitted as a JFR event
+ * ({@link ConversionPhaseEvent}).
+ *
+ * The phases can be nested (e.g. species conversion happens while converting the reactions,
+ * and everything - while parsing, in the streaming mode) and repeated (times are accumulated).
+ * The allocated bytes (if supported by the JVM) are only of the conversion's own threads: the one that created
+ * the metrics and those added with {@link #addThread(Thread)} (e.g. the conversion pool's workers),
+ * so that the conversions running at the same time (batch, server) do not count each other's allocations.
+ * The peak heap is process-wide (it is not reset, as it is shared by the concurrent conversions).
+ */
+public class ConversionMetrics {
+    private static final Timer NO_TIMER = () -> { };
+
+    private final long started = System.nanoTime();
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, Object> counters = new LinkedHashMap<>();
+    private final Map<String, Integer> objects = new TreeMap<>();
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    public ConversionMetrics() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threadMXBean = (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+                ? (com.sun.management.ThreadMXBean) bean : null;
+        threads.add(Thread.currentThread());
+    }
+
+    /**
+     * Adds a thread that works on this conversion (its allocations are counted from now on).
+     *
+     * @param thread thread
+     */
+    public void addThread(Thread thread) {
+        threads.add(thread);
+    }
+
+    /**
+     * Ends a phase (no checked exceptions).
+     */
+    public interface Timer extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Returns the phase timer if there are metrics, or a no-op one.
+     *
+     * @param metrics metrics or null
+     * @param phase phase name
+     * @return timer to close when the phase ends
+     */
+    public static Timer time(ConversionMetrics metrics, String phase) {
+        return (metrics == null) ? NO_TIMER : metrics.time(phase);
+    }
+
+    /**
+     * Starts (or continues) a phase.
+     *
+     * @param phase phase name
+     * @return timer to close when the phase ends
+     */
+    public Timer time(String phase) {
+        ConversionPhaseEvent event = new ConversionPhaseEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long allocated = allocatedBytes();
+        return () -> {
+            long bytes = Math.max(0, allocatedBytes() - allocated);
+            add(phase, System.nanoTime() - start, bytes);
+            event.end();
+            if(event.shouldCommit()) {
+                event.phase = phase;
+                event.allocatedBytes = bytes;
+                event.commit();
+            }
+        };
+    }
+
+    private synchronized void add(String phase, long nanos, long bytes) {
+        Phase p = phases.computeIfAbsent(phase, k -> new Phase());
+        p.count++;
+        p.nanos += nanos;
+        p.bytes += bytes;
+    }
+
+    /**
+     * Adds the time of a phase measured by the caller, e.g. of a frequent short step,
+     * which a {@link #time(String)} timer per call would slow down (no allocated bytes and JFR events then).
+     *
+     * @param phase phase name
+     * @param nanos total time
+     * @param count number of times the step was done
+     */
+    public synchronized void addTime(String phase, long nanos, long count) {
+        Phase p = phases.computeIfAbsent(phase, k -> new Phase());
+        p.count += count;
+        p.nanos += nanos;
+        p.bytesMeasured = false;
+    }
+
+    /*
+     * Total bytes allocated by the conversion's live threads so far.
+     */
+    private long allocatedBytes() {
+        if(threadMXBean == null) {
+            return 0;
+        }
+        threads.removeIf(thread -> !thread.isAlive());
+        long[] ids = threads.stream().mapToLong(Thread::getId).toArray();
+        long total = 0;
+        for (long bytes : threadMXBean.getThreadAllocatedBytes(ids)) {
+            if(bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Sets a named counter (number, string, etc.)
+     *
+     * @param name counter name
+     * @param value value
+     */
+    public synchronized void set(String name, Object value) {
+        counters.put(name, value);
+    }
+
+    public synchronized Object get(String name) {
+        return counters.get(name);
+    }
+
+    /**
+     * Counts the model objects by BioPAX class.
+     *
+     * @param model BioPAX model
+     */
+    public synchronized void countObjects(Model model) {
+        objects.clear();
+        for (BioPAXElement element : model.getObjects()) {
+            objects.merge(element.getModelInterface().getSimpleName(), 1, Integer::sum);
+        }
+    }
+
+    public synchronized long getNanos(String phase) {
+        Phase p = phases.get(phase);
+        return (p == null) ? 0 : p.nanos;
+    }
+
+    /**
+     * @param phase phase name
+     * @return bytes allocated in the phase, or -1 if not measured (see {@link #addTime(String, long, long)})
+     */
+    public synchronized long getAllocatedBytes(String phase) {
+        Phase p = phases.get(phase);
+        if(p == null) {
+            return 0;
+        }
+        return p.bytesMeasured ? p.bytes : -1;
+    }
+
+    /**
+     * @return peak used heap of the process (since the JVM start, of all the conversions), in bytes
+     */
+    public long getProcessPeakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Writes the JSON report.
+     *
+     * @param path file to (over)write
+     * @throws IOException when cannot write
+     */
+    public void writeJson(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(toJson());
+        }
+    }
+
+    public synchronized String toJson() {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"wallTimeMs\": ").append(millis(System.nanoTime() - started)).append(",\n");
+        sb.append("  \"processPeakHeapBytes\": ").append(getProcessPeakHeapBytes()).append(",\n");
+        sb.append("  \"phases\": {");
+        List<String> items = new ArrayList<>();
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase p = entry.getValue();
+            items.add(quote(entry.getKey()) + ": {\"wallTimeMs\": " + millis(p.nanos)
+                    + (p.bytesMeasured ? ", \"allocatedBytes\": " + p.bytes : "") + ", \"count\": " + p.count + "}");
+        }
+        sb.append(join(items)).append("},\n");
+        sb.append("  \"counters\": {");
+        items.clear();
+        for (Map.Entry<String, Object> entry : counters.entrySet()) {
+            Object value = entry.getValue();
+            items.add(quote(entry.getKey()) + ": " + ((value instanceof Number || value instanceof Boolean)
+                    ? String.valueOf(value) : quote(String.valueOf(value))));
+        }
+        sb.append(join(items)).append("},\n");
+        sb.append("  \"objects\": {");
+        items.clear();
+        for (Map.Entry<String, Integer> entry : objects.entrySet()) {
+            items.add(quote(entry.getKey()) + ": " + entry.getValue());
+        }
+        sb.append(join(items)).append("}\n}\n");
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String join(List<String> items) {
+        return items.isEmpty() ? "" : "\n    " + String.join(",\n    ", items) + "\n  ";
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if(c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static final class Phase {
+        private long count;
+        private long nanos;
+        private long bytes;
+        private boolean bytesMeasured = true;
+    }
+}
@@ -0,0 +1,26 @@
+package org.humanmetabolism.converter;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for a conversion phase (see {@link ConversionMetrics}),
+ * e.g. to record with -XX:StartFlightRecording and look at in JDK Mission Control.
+ */
+@Name("org.humanmetabolism.ConversionPhase")
+@Label("Conversion Phase")
+@Category({"ReconX to BioPAX"})
+@Description("A phase of the SBML to BioPAX conversion")
+class ConversionPhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
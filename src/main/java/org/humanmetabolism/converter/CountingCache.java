@@ -0,0 +1,68 @@
+package org.humanmetabolism.converter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A thread-safe memo (unbounded, lives as long as a conversion does)
+ * that counts hits and misses, to see how much repeated work it saves.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class CountingCache<K, V> {
+    private final String name;
+    private final ConcurrentMap<K, V> map = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CountingCache(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the cached value or computes (once) and caches a new one.
+     *
+     * @param key key
+     * @param function computes the value for a new key (must not return null)
+     * @return value
+     */
+    public V get(K key, Function<? super K, ? extends V> function) {
+        V value = map.get(key);
+        if(value != null) {
+            hits.increment();
+            return value;
+        }
+        return map.computeIfAbsent(key, k -> {
+            misses.increment();
+            return function.apply(k);
+        });
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public String toString() {
+        return name + " cache: " + getHits() + " hits, " + getMisses() + " misses, " + size() + " entries";
+    }
+}
@@ -0,0 +1,272 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.XReferrable;
+import org.biopax.paxtools.model.level3.Xref;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A conversion result to write as RDF/XML (see {@link OwlStreamWriter}), and what the output index needs
+ * (see {@link ReactionIndex}): the output units, and - after an incremental conversion - the previous output
+ * and its index. The unchanged reactions' interactions and the unchanged units' objects are then copied
+ * from the previous output, and the converted ones are written in between, in the same order as
+ * the whole model conversion writes them: the interactions in the SBML order, and the rest by URI.
+ */
+final class IncrementalOutput {
+    private static Logger log = LoggerFactory.getLogger(IncrementalOutput.class);
+
+    private final Model model;
+    private final ReactionIndex index;
+    private final OutputUnits units;
+    private final Set<String> globals;
+    // when converted incrementally: the previous index and output, the accepted reactions, and the converted units
+    private final ReactionIndex base;
+    private final Path previousOutput;
+    private final List<String> reactions;
+    private final Set<String> changedUnits;
+    private final Set<String> copied = new HashSet<>();
+
+    /**
+     * @param model converted model
+     * @param index its reaction index, or null (not to index the output)
+     * @param units its output units, or null
+     * @param globals URIs of the data source, organism and pathway
+     */
+    IncrementalOutput(Model model, ReactionIndex index, OutputUnits units, Set<String> globals) {
+        this(model, index, units, globals, null, null, Collections.emptyList(), Collections.emptySet());
+    }
+
+    /**
+     * @param model the converted changes (the changed reactions, and the changed units' objects)
+     * @param index the reaction index of the update
+     * @param units the output units of the update
+     * @param globals URIs of the data source, organism and pathway
+     * @param base the previous output's index
+     * @param previousOutput the previous output
+     * @param reactions ids of the converted (accepted) reactions, in the SBML order
+     * @param changedUnits the units that are converted
+     */
+    IncrementalOutput(Model model, ReactionIndex index, OutputUnits units, Set<String> globals,
+                      ReactionIndex base, Path previousOutput, List<String> reactions, Set<String> changedUnits) {
+        this.model = model;
+        this.index = index;
+        this.units = units;
+        this.globals = globals;
+        this.base = base;
+        this.previousOutput = previousOutput;
+        this.reactions = reactions;
+        this.changedUnits = changedUnits;
+    }
+
+    Model getModel() {
+        return model;
+    }
+
+    /**
+     * Writes all but the interactions (these are written as converted),
+     * or - after an incremental conversion - everything; then, if the writer records the ranges,
+     * puts the objects' ranges and units to the reaction index.
+     *
+     * @param owlWriter writer
+     * @throws IOException when cannot read the previous output or write
+     */
+    void write(OwlStreamWriter owlWriter) throws IOException {
+        if(base == null) {
+            owlWriter.writeRemaining(model);
+        } else {
+            merge(owlWriter);
+        }
+        if(index != null && units != null && owlWriter.isRecordingRanges()) {
+            index(owlWriter);
+        }
+    }
+
+    private void merge(OwlStreamWriter owlWriter) throws IOException {
+        Path tmp = null;
+        try {
+            Path path = previousOutput;
+            if(InputFiles.compression(previousOutput) != InputFiles.Compression.NONE) {
+                // (the objects are copied from all over the file)
+                tmp = Files.createTempFile(previousOutput.toAbsolutePath().getParent(),
+                        "." + previousOutput.getFileName(), ".tmp");
+                try (InputStream inputStream = InputFiles.open(previousOutput)) {
+                    Files.copy(inputStream, tmp, StandardCopyOption.REPLACE_EXISTING);
+                }
+                path = tmp;
+            }
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+                merge(owlWriter, source);
+            }
+        } finally {
+            if(tmp != null) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private void merge(OwlStreamWriter owlWriter, FileChannel source) throws IOException {
+        Set<String> xrefs = new HashSet<>();
+        // the interactions, in the SBML order
+        for (String reactionId : reactions) {
+            ReactionIndex.Entry entry = index.getReaction(reactionId);
+            ReactionIndex.Entry previous = base.getReaction(reactionId);
+            boolean reused = previous != null && previous.getHash().equals(entry.getHash());
+            for (String uri : entry.getUris()) {
+                if(reused) {
+                    xrefs.addAll(copy(owlWriter, source, uri));
+                } else {
+                    BioPAXElement element = element(uri);
+                    owlWriter.write(element);
+                    xrefs.addAll(xrefUris(element));
+                }
+            }
+        }
+
+        // the rest: the unchanged units' objects, the converted ones, and the xrefs any of these refers to
+        List<BioPAXElement> converted = new ArrayList<>();
+        for (String unit : changedUnits) {
+            for (String uri : units.getObjects(unit)) {
+                converted.add(element(uri));
+            }
+        }
+        for (String uri : globals) {
+            converted.add(element(uri));
+        }
+        for (BioPAXElement element : converted) {
+            xrefs.addAll(xrefUris(element));
+        }
+        Map<String, String> signatures = units.getSignatures();
+        for (ReactionIndex.Block block : base.getObjects().values()) {
+            if(isKept(block, signatures)) {
+                xrefs.addAll(block.getXrefs());
+            }
+        }
+        for (String uri : xrefs) {
+            if(base.getObject(uri) == null) {
+                converted.add(element(uri));
+            }
+        }
+
+        // in the URI order (the previous output's objects are in that order already)
+        converted.sort(Comparator.comparing(BioPAXElement::getUri));
+        int i = 0;
+        for (Map.Entry<String, ReactionIndex.Block> entry : base.getObjects().entrySet()) {
+            String uri = entry.getKey();
+            ReactionIndex.Block block = entry.getValue();
+            if(!isKept(block, signatures) && !(OutputUnits.NONE.equals(block.getUnit()) && xrefs.contains(uri))) {
+                continue;
+            }
+            while (i < converted.size() && converted.get(i).getUri().compareTo(uri) < 0) {
+                owlWriter.write(converted.get(i++));
+            }
+            if(i < converted.size() && converted.get(i).getUri().equals(uri)) {
+                continue; // (converted again)
+            }
+            copy(owlWriter, source, uri);
+        }
+        while (i < converted.size()) {
+            owlWriter.write(converted.get(i++));
+        }
+        log.info("Copied " + copied.size() + " unchanged objects from " + previousOutput);
+    }
+
+    /*
+     * Whether the previous output's object is the same now (and there is still such an object).
+     */
+    private boolean isKept(ReactionIndex.Block block, Map<String, String> signatures) {
+        String unit = block.getUnit();
+        return signatures.containsKey(unit) && !changedUnits.contains(unit);
+    }
+
+    private List<String> copy(OwlStreamWriter owlWriter, FileChannel source, String uri) throws IOException {
+        ReactionIndex.Block block = base.getObject(uri);
+        if(block == null) {
+            throw new IllegalStateException("The previous output index has no " + uri);
+        }
+        owlWriter.copy(uri, source, block.getOffset(), block.getLength());
+        copied.add(uri);
+        return block.getXrefs();
+    }
+
+    private BioPAXElement element(String uri) {
+        BioPAXElement element = model.getByID(uri);
+        if(element == null) {
+            throw new IllegalStateException("Not converted: " + uri);
+        }
+        return element;
+    }
+
+    private static List<String> xrefUris(BioPAXElement element) {
+        if(!(element instanceof XReferrable)) {
+            return Collections.emptyList();
+        }
+        List<String> uris = new ArrayList<>();
+        for (Xref xref : ((XReferrable) element).getXref()) {
+            uris.add(xref.getUri());
+        }
+        Collections.sort(uris);
+        return uris;
+    }
+
+    /*
+     * Puts the written objects' ranges, units and xrefs, and the units' signatures to the index.
+     */
+    private void index(OwlStreamWriter owlWriter) {
+        Map<String, String> interactions = new HashMap<>();
+        for (Map.Entry<String, ReactionIndex.Entry> entry : index.getReactions().entrySet()) {
+            for (String uri : entry.getValue().getUris()) {
+                interactions.put(uri, entry.getKey());
+            }
+        }
+        int unknown = 0;
+        for (Map.Entry<String, long[]> entry : owlWriter.getRanges().entrySet()) {
+            String uri = entry.getKey();
+            long[] range = entry.getValue();
+            if(copied.contains(uri)) {
+                ReactionIndex.Block block = base.getObject(uri);
+                index.putObject(uri, block.getUnit(), range[0], range[1], block.getXrefs());
+                continue;
+            }
+            BioPAXElement element = element(uri);
+            String unit;
+            if(interactions.containsKey(uri)) {
+                unit = OutputUnits.REACTION + interactions.get(uri);
+            } else if(element instanceof Xref) {
+                unit = OutputUnits.NONE;
+            } else if(globals.contains(uri)) {
+                unit = OutputUnits.GLOBAL;
+            } else {
+                unit = units.getUnit(uri);
+                if(unit == null) {
+                    unit = OutputUnits.UNKNOWN;
+                    unknown++;
+                }
+            }
+            index.putObject(uri, unit, range[0], range[1], xrefUris(element));
+        }
+        for (Map.Entry<String, String> entry : units.getSignatures().entrySet()) {
+            index.putUnit(entry.getKey(), entry.getValue());
+        }
+        if(unknown > 0) {
+            log.warn(unknown + " objects of the output are not in any unit; the next conversion won't be incremental");
+        }
+    }
+}
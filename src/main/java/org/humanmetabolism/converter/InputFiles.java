@@ -0,0 +1,316 @@
+package org.humanmetabolism.converter;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens the input files (SBML, or the previous BioPAX output), plain or compressed.
+ * The compression is detected by the magic bytes (not the file name): gzip, bzip2, zip (the first file in it)
+ * and zstd. The files are read through a memory-mapped channel; a compressed file is decompressed
+ * on a separate thread, which passes the data to the reader (XML parser) via a bounded buffer queue,
+ * so that reading and decompressing the file overlaps with parsing and converting it.
+ */
+public final class InputFiles {
+    private static Logger log = LoggerFactory.getLogger(InputFiles.class);
+    // the decompressed data chunks, and how many of these can wait for the reader
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int CHUNKS = 32;
+    // memory map the file by up to 1 GB regions
+    private static final long REGION_SIZE = 1L << 30;
+
+    public enum Compression {
+        NONE, GZIP, BZIP2, ZIP, ZSTD;
+
+        static Compression of(byte[] magic, int length) {
+            if(length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+                return GZIP;
+            }
+            if(length >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+                return BZIP2;
+            }
+            if(length >= 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+                return ZIP;
+            }
+            if(length >= 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5
+                    && (magic[2] & 0xff) == 0x2f && (magic[3] & 0xff) == 0xfd) {
+                return ZSTD;
+            }
+            return NONE;
+        }
+    }
+
+    private InputFiles() {
+    }
+
+    /**
+     * Opens the file for reading (decompressed, if it is compressed).
+     *
+     * @param path file
+     * @return input stream (not buffered - there is no need to)
+     * @throws IOException when cannot open the file
+     */
+    public static InputStream open(Path path) throws IOException {
+        MappedInputStream inputStream = new MappedInputStream(path);
+        Compression compression = inputStream.compression();
+        if(compression == Compression.NONE) {
+            return inputStream;
+        }
+        log.debug("Decompressing " + path + " (" + compression + ")");
+        try {
+            return new PipelineInputStream(decompress(inputStream, compression, path), "decompress-" + path.getFileName());
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Detects the file's compression (by the magic bytes).
+     *
+     * @param path file
+     * @return compression, or NONE
+     * @throws IOException when cannot read the file
+     */
+    public static Compression compression(Path path) throws IOException {
+        try (MappedInputStream inputStream = new MappedInputStream(path)) {
+            return inputStream.compression();
+        }
+    }
+
+    private static InputStream decompress(InputStream inputStream, Compression compression, Path path)
+            throws IOException {
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(inputStream, CHUNK_SIZE);
+            case BZIP2:
+                // (decompressedConcatenated - like bunzip2 does)
+                return new BZip2CompressorInputStream(inputStream, true);
+            case ZSTD:
+                return new ZstdCompressorInputStream(inputStream);
+            case ZIP:
+                ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+                ZipEntry entry;
+                while ((entry = zipInputStream.getNextEntry()) != null && entry.isDirectory()) {
+                    // skip
+                }
+                if(entry == null) {
+                    zipInputStream.close();
+                    throw new IOException("No file in the zip archive " + path);
+                }
+                log.info("Reading " + entry.getName() + " from " + path);
+                return zipInputStream;
+            default:
+                return inputStream;
+        }
+    }
+
+    /*
+     * Reads the file through the memory-mapped regions.
+     */
+    static final class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private long regionStart = 0;
+        private MappedByteBuffer region;
+
+        MappedInputStream(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                this.size = channel.size();
+                this.region = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, REGION_SIZE));
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /*
+         * (before reading anything)
+         */
+        Compression compression() {
+            byte[] magic = new byte[4];
+            int length = Math.min(magic.length, region.remaining());
+            region.get(0, magic, 0, length);
+            return Compression.of(magic, length);
+        }
+
+        private boolean next() throws IOException {
+            if(region.hasRemaining()) {
+                return true;
+            }
+            long start = regionStart + region.capacity();
+            if(start >= size) {
+                return false;
+            }
+            regionStart = start;
+            region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, REGION_SIZE));
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? region.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) {
+                return 0;
+            }
+            if(!next()) {
+                return -1;
+            }
+            int n = Math.min(len, region.remaining());
+            region.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && next()) {
+                int k = (int) Math.min(n - skipped, region.remaining());
+                region.position(region.position() + k);
+                skipped += k;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - regionStart - region.position());
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /*
+     * Reads the source stream on a separate thread, ahead of the reader (up to CHUNKS chunks).
+     */
+    static final class PipelineInputStream extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final InputStream source;
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS);
+        private final Thread thread;
+        private volatile IOException error;
+        private volatile boolean closed;
+        private byte[] chunk;
+        private int position;
+
+        PipelineInputStream(InputStream source, String name) {
+            this.source = source;
+            this.thread = new Thread(this::pump, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void pump() {
+            try {
+                while (!closed) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int n = source.readNBytes(buffer, 0, CHUNK_SIZE);
+                    if(n == 0) {
+                        break;
+                    }
+                    chunks.put((n < CHUNK_SIZE) ? Arrays.copyOf(buffer, n) : buffer);
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } catch (IOException e) {
+                error = e;
+            } catch (Throwable e) { // e.g. a corrupt bzip2 stream, or an Error - the reader must not wait forever
+                error = new IOException(e);
+            } finally {
+                if(!closed) {
+                    try {
+                        chunks.put(END);
+                    } catch (InterruptedException e) {
+                        // closed
+                    }
+                }
+            }
+        }
+
+        private boolean next() throws IOException {
+            if(chunk != null && position < chunk.length) {
+                return true;
+            }
+            if(chunk == END) {
+                return false;
+            }
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            position = 0;
+            if(chunk == END) {
+                if(error != null) {
+                    throw error;
+                }
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? chunk[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) {
+                return 0;
+            }
+            if(!next()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (chunk == null || chunk == END) ? 0 : chunk.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            source.close();
+        }
+    }
+}
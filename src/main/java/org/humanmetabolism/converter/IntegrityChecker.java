@@ -0,0 +1,215 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Structural checks of the BioPAX objects done during the conversion, as these are created
+ * (species, reactions) and in the post-processing pass (complexes, xrefs), i.e. without loading the output again
+ * (the issues the BioPAX Validator would report for these rules).
+ * Each rule's violations are counted, and a few first ones are kept as samples for the report.
+ * In the strict mode, the first violation stops the conversion (see {@link IntegrityException}).
+ */
+public class IntegrityChecker implements ModelPostProcessor {
+
+    public enum Rule {
+        /** a new EntityReference has no UnificationXref (the species has no identifiers) */
+        ER_WITHOUT_UNIFICATION_XREF,
+        /** a Complex has no components (neither by xref nor by name) */
+        EMPTY_COMPLEX,
+        /** an xref is not used by any object */
+        DANGLING_XREF,
+        /** an xref has no db or id */
+        INCOMPLETE_XREF,
+        /** a Conversion has no left or no right participants */
+        CONVERSION_WITHOUT_PARTICIPANTS,
+        /** a Control has no controller or controlled */
+        INCOMPLETE_CONTROL
+    }
+
+    private final boolean strict;
+    private final int maxSamples;
+    private final Map<Rule, LongAdder> counts = new EnumMap<>(Rule.class);
+    private final Map<Rule, List<String>> samples = new EnumMap<>(Rule.class);
+    // collected in the post-processing pass
+    private final List<Complex> complexes = new ArrayList<>();
+    private final List<Xref> xrefs = new ArrayList<>();
+
+    /**
+     * @param strict whether to fail on the first violation
+     * @param maxSamples number of example URIs to keep per rule
+     */
+    public IntegrityChecker(boolean strict, int maxSamples) {
+        this.strict = strict;
+        this.maxSamples = maxSamples;
+        for (Rule rule : Rule.values()) {
+            counts.put(rule, new LongAdder());
+            samples.put(rule, Collections.synchronizedList(new ArrayList<>()));
+        }
+    }
+
+    public boolean isStrict() {
+        return strict;
+    }
+
+    /**
+     * Records a violation (throws one in the strict mode).
+     *
+     * @param rule rule
+     * @param element the object that violates it
+     */
+    public void violation(Rule rule, BioPAXElement element) {
+        if(strict) {
+            throw new IntegrityException(rule, element.getUri());
+        }
+        counts.get(rule).increment();
+        List<String> list = samples.get(rule);
+        synchronized (list) {
+            if(list.size() < maxSamples) {
+                list.add(element.getUri());
+            }
+        }
+    }
+
+    /**
+     * Checks the new entity reference (when a species is converted).
+     *
+     * @param reference entity reference
+     * @param xrefs its xrefs
+     */
+    public void checkReference(EntityReference reference, Iterable<? extends Xref> xrefs) {
+        for (Xref xref : xrefs) {
+            if(xref instanceof UnificationXref) {
+                return;
+            }
+        }
+        violation(Rule.ER_WITHOUT_UNIFICATION_XREF, reference);
+    }
+
+    /**
+     * Checks the interactions of a converted reaction.
+     *
+     * @param conversion conversion
+     * @param controls its controls
+     */
+    public void checkReaction(Conversion conversion, List<Control> controls) {
+        if(conversion.getLeft().isEmpty() || conversion.getRight().isEmpty()) {
+            violation(Rule.CONVERSION_WITHOUT_PARTICIPANTS, conversion);
+        }
+        for (Control control : controls) {
+            if(control.getController().isEmpty() || control.getControlled().isEmpty()) {
+                violation(Rule.INCOMPLETE_CONTROL, control);
+            }
+        }
+    }
+
+    @Override
+    public void visit(BioPAXElement element) {
+        if(element instanceof Complex) {
+            complexes.add((Complex) element);
+        } else if(element instanceof Xref) {
+            Xref xref = (Xref) element;
+            xrefs.add(xref);
+            if(xref.getDb() == null || xref.getDb().isEmpty() || xref.getId() == null || xref.getId().isEmpty()) {
+                violation(Rule.INCOMPLETE_XREF, xref);
+            }
+        }
+    }
+
+    /**
+     * Checks the complexes and xrefs (must run after the complexes are filled).
+     *
+     * @param model BioPAX model
+     */
+    @Override
+    public void complete(Model model) {
+        for (Complex complex : complexes) {
+            if(complex.getComponent().isEmpty()) {
+                violation(Rule.EMPTY_COMPLEX, complex);
+            }
+        }
+        for (Xref xref : xrefs) {
+            if(xref.getXrefOf().isEmpty()) {
+                violation(Rule.DANGLING_XREF, xref);
+            }
+        }
+        complexes.clear();
+        xrefs.clear();
+    }
+
+    public long getCount(Rule rule) {
+        return counts.get(rule).sum();
+    }
+
+    public List<String> getSamples(Rule rule) {
+        List<String> list = samples.get(rule);
+        synchronized (list) {
+            return new ArrayList<>(list);
+        }
+    }
+
+    /**
+     * @return total number of violations
+     */
+    public long getViolationCount() {
+        long n = 0;
+        for (LongAdder count : counts.values()) {
+            n += count.sum();
+        }
+        return n;
+    }
+
+    /**
+     * Sets the counts (integrity.RULE) to the metrics.
+     *
+     * @param metrics conversion metrics
+     */
+    public void addTo(ConversionMetrics metrics) {
+        for (Rule rule : Rule.values()) {
+            metrics.set("integrity." + rule, getCount(rule));
+        }
+    }
+
+    /**
+     * @return report: a line per rule - the rule, count and sample URIs (tab-separated)
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder("#rule\tcount\tsamples\n");
+        for (Rule rule : Rule.values()) {
+            sb.append(rule).append('\t').append(getCount(rule));
+            for (String uri : getSamples(rule)) {
+                sb.append('\t').append(uri);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    public void writeReport(Path path) throws IOException {
+        Files.write(path, report().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("integrity violations: " + getViolationCount());
+        for (Rule rule : Rule.values()) {
+            long count = getCount(rule);
+            if(count > 0) {
+                sb.append("; ").append(rule).append(": ").append(count);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package org.humanmetabolism.converter;
+
+/**
+ * A structural integrity rule violation in the strict mode (see {@link IntegrityChecker}).
+ */
+public class IntegrityException extends IllegalStateException {
+    private final IntegrityChecker.Rule rule;
+    private final String uri;
+
+    public IntegrityException(IntegrityChecker.Rule rule, String uri) {
+        super(rule + ": " + uri);
+        this.rule = rule;
+        this.uri = uri;
+    }
+
+    public IntegrityChecker.Rule getRule() {
+        return rule;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+}
@@ -0,0 +1,221 @@
+package org.humanmetabolism.converter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves SBML annotation resources to the xref (db, id) pairs.
+ * Understands the following forms:
+ * <ul>
+ *     <li>urn:miriam:chebi:CHEBI%3A15589</li>
+ *     <li>http(s)://identifiers.org/chebi/CHEBI:15589 (provider/namespace style)</li>
+ *     <li>http(s)://identifiers.org/CHEBI:15589, http(s)://identifiers.org/taxonomy:9606 (compact style)</li>
+ *     <li>http(s)://bioregistry.io/chebi:15589, http(s)://bioregistry.io/reference/chebi:15589</li>
+ * </ul>
+ *
+ * The database names are the same as the converter always used
+ * (e.g. obo.go -> go, kegg.compound -> kegg compound, biomodels.db -> biomodels database),
+ * precompiled for the well-known prefixes and cached (bounded) for the others.
+ */
+public final class MiriamResolver {
+
+    private static final String URN_MIRIAM = "urn:miriam:";
+    private static final String IDENTIFIERS_ORG = "identifiers.org/";
+    private static final String BIOREGISTRY_IO = "bioregistry.io/";
+    private static final String BIOREGISTRY_REFERENCE = "reference/";
+
+    private static final int MAX_CACHED_PREFIXES = 1024;
+
+    // prefixes used in Recon and other SBML models we convert
+    private static final String[] KNOWN_PREFIXES = {
+            "biomodels.db", "chebi", "obo.chebi", "ec-code", "go", "obo.go", "hmdb", "inchi",
+            "kegg.compound", "kegg.drug", "kegg.genes", "kegg.glycan", "kegg.pathway", "kegg.reaction",
+            "pubchem.compound", "pubchem.substance", "pubmed", "reactome", "rhea", "taxonomy", "ncbitaxon",
+            "uniprot", "ncbigene", "entrez.gene", "hgnc", "hgnc.symbol", "ensembl", "metanetx.chemical",
+            "metanetx.reaction", "bigg.metabolite", "bigg.reaction", "seed.compound", "seed.reaction",
+            "lipidmaps", "sbo", "doi", "cas"
+    };
+
+    // namespaces whose local ids embed the prefix (compact form chebi:15589 -> CHEBI:15589)
+    private static final Map<String, String> EMBEDDED_PREFIXES = new HashMap<>();
+    static {
+        EMBEDDED_PREFIXES.put("chebi", "CHEBI");
+        EMBEDDED_PREFIXES.put("go", "GO");
+        EMBEDDED_PREFIXES.put("sbo", "SBO");
+        EMBEDDED_PREFIXES.put("eco", "ECO");
+        EMBEDDED_PREFIXES.put("cl", "CL");
+        EMBEDDED_PREFIXES.put("doid", "DOID");
+        EMBEDDED_PREFIXES.put("uberon", "UBERON");
+    }
+
+    private static final Map<String, String> PRECOMPILED = new HashMap<>();
+    static {
+        for (String prefix : KNOWN_PREFIXES) {
+            PRECOMPILED.put(prefix, normalize(prefix));
+        }
+    }
+
+    private static final MiriamResolver INSTANCE = new MiriamResolver();
+
+    private final ConcurrentMap<String, String> cache = new ConcurrentHashMap<>();
+
+    /**
+     * The result of resolving an annotation resource.
+     */
+    public static final class Resolved {
+        private final String db;
+        private final String id;
+
+        Resolved(String db, String id) {
+            this.db = db;
+            this.id = id;
+        }
+
+        public String getDb() {
+            return db;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return db + ":" + id;
+        }
+    }
+
+    public static MiriamResolver getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Resolves a MIRIAM URN, identifiers.org or bioregistry.io resource.
+     *
+     * @param resource annotation resource
+     * @return db and id, or null if the resource is not recognized
+     */
+    public Resolved resolve(String resource) {
+        if(resource == null) {
+            return null;
+        }
+        if(resource.regionMatches(true, 0, URN_MIRIAM, 0, URN_MIRIAM.length())) {
+            // urn:miriam:prefix:id
+            int start = URN_MIRIAM.length();
+            int colon = resource.indexOf(':', start);
+            return (colon < 0) ? null : resolved(resource.substring(start, colon), resource, colon + 1, false);
+        }
+        int start = resource.indexOf(IDENTIFIERS_ORG);
+        if(start >= 0) {
+            start += IDENTIFIERS_ORG.length();
+            int slash = resource.indexOf('/', start);
+            int colon = resource.indexOf(':', start);
+            if(slash > 0 && (colon < 0 || slash < colon)) {
+                // old (namespace/id) style
+                return resolved(resource.substring(start, slash), resource, slash + 1, false);
+            }
+            return (colon < 0) ? null : resolved(resource.substring(start, colon), resource, colon + 1, true);
+        }
+        start = resource.indexOf(BIOREGISTRY_IO);
+        if(start >= 0) {
+            start += BIOREGISTRY_IO.length();
+            if(resource.startsWith(BIOREGISTRY_REFERENCE, start)) {
+                start += BIOREGISTRY_REFERENCE.length();
+            }
+            int colon = resource.indexOf(':', start);
+            return (colon < 0) ? null : resolved(resource.substring(start, colon), resource, colon + 1, true);
+        }
+        return null;
+    }
+
+    private Resolved resolved(String prefix, String resource, int idStart, boolean compact) {
+        String db = db(prefix);
+        String id = decode(resource, idStart, resource.length());
+        if(compact) {
+            // e.g. identifiers.org/CHEBI:15589 -> chebi, CHEBI:15589
+            String embedded = EMBEDDED_PREFIXES.get(db);
+            if(embedded != null && !id.startsWith(embedded + ":")) {
+                id = embedded + ":" + id;
+            }
+        }
+        return (id.isEmpty()) ? null : new Resolved(db, id);
+    }
+
+    /**
+     * Gets the database name for the prefix (e.g. obo.go -> go, ec-code -> ec code).
+     *
+     * @param prefix MIRIAM/identifiers.org/bioregistry prefix
+     * @return xref db name
+     */
+    public String db(String prefix) {
+        String db = PRECOMPILED.get(prefix);
+        if(db == null) {
+            db = cache.get(prefix);
+            if(db == null) {
+                db = normalize(prefix);
+                if(cache.size() < MAX_CACHED_PREFIXES) {
+                    cache.put(prefix, db);
+                }
+            }
+        }
+        return db;
+    }
+
+    /*
+     * The converter's original db naming rules
+     * (biomodels.db -> biomodels database; ec-code -> ec code; obo.go -> go).
+     */
+    private static String normalize(String prefix) {
+        return prefix.toLowerCase(Locale.ROOT)
+                .replace(".", " ")
+                .replace("-", " ")
+                .replace(" db", " database")
+                .replace("obo ", "");
+    }
+
+    /**
+     * Percent-decodes (UTF-8) the substring; if there are no escapes, that is just a substring.
+     *
+     * @param s string
+     * @param from start index
+     * @param to end index (exclusive)
+     * @return decoded string
+     */
+    static String decode(String s, int from, int to) {
+        int percent = s.indexOf('%', from);
+        if(percent < 0 || percent >= to) {
+            return s.substring(from, to);
+        }
+        StringBuilder sb = new StringBuilder(to - from);
+        sb.append(s, from, percent);
+        byte[] bytes = null;
+        int n = 0;
+        for (int i = percent; i < to; i++) {
+            char c = s.charAt(i);
+            int hi, lo;
+            if(c == '%' && i + 2 < to
+                    && (hi = Character.digit(s.charAt(i + 1), 16)) >= 0
+                    && (lo = Character.digit(s.charAt(i + 2), 16)) >= 0) {
+                if(bytes == null) {
+                    bytes = new byte[(to - i) / 3];
+                }
+                bytes[n++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else {
+                if(n > 0) {
+                    sb.append(new String(bytes, 0, n, StandardCharsets.UTF_8));
+                    n = 0;
+                }
+                sb.append(c);
+            }
+        }
+        if(n > 0) {
+            sb.append(new String(bytes, 0, n, StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+}
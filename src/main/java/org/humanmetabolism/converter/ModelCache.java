@@ -0,0 +1,253 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * On-disk cache of the converted BioPAX models (see {@link SbmlToBiopaxConverter#setCache(ModelCache)}),
+ * keyed by the SHA-256 of the SBML file content, the conversion settings and the converter version.
+ * The models are stored in the Java serialization form, which is much faster to read than to convert the SBML.
+ *
+ * The cache can be used by several processes at once: an entry is written to a temporary file
+ * and atomically renamed, and the least recently used entries are evicted (under a file lock,
+ * and a lock per directory within this JVM - file locks are per process) when the cache grows larger than the limit.
+ */
+public class ModelCache {
+    private static Logger log = LoggerFactory.getLogger(ModelCache.class);
+    private static final String EXTENSION = ".model";
+    private static final String LOCK_FILE = ".lock";
+    // change when the stored form changes
+    private static final String FORMAT = "1";
+    private static final String VERSION = version();
+    // cache directory (real path) to its in-JVM eviction lock
+    private static final ConcurrentMap<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path dir;
+    private final long maxBytes;
+    private final Object evictionLock;
+
+    /**
+     * @param dir cache directory (created if needed)
+     * @param maxBytes the cache size limit (bytes)
+     * @throws IOException when cannot create the directory
+     */
+    public ModelCache(Path dir, long maxBytes) throws IOException {
+        if(maxBytes <= 0) {
+            throw new IllegalArgumentException("cache size limit must be positive: " + maxBytes);
+        }
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxBytes;
+        this.evictionLock = LOCKS.computeIfAbsent(this.dir.toRealPath(), d -> new Object());
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * Makes the cache key of the conversion.
+     *
+     * @param sbmlFile input SBML file
+     * @param settings conversion settings the result depends on
+     * @return key (hex)
+     * @throws IOException when cannot read the file
+     */
+    public String key(Path sbmlFile, String settings) throws IOException {
+        return key(sbmlFile, settings, VERSION);
+    }
+
+    static String key(Path sbmlFile, String settings, String version) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update((FORMAT + "\t" + version + "\t" + settings + "\n").getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream inputStream = Files.newInputStream(sbmlFile)) {
+            int n;
+            while ((n = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the cached model.
+     *
+     * @param key cache key
+     * @return model or null (not in the cache, or not readable anymore)
+     */
+    public Model get(String key) {
+        Path path = entry(key);
+        try (ObjectInputStream inputStream = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            Model model = (Model) inputStream.readObject();
+            // the last use time, for the LRU eviction
+            touch(path);
+            return model;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (InvalidClassException | StreamCorruptedException | ClassNotFoundException | ClassCastException e) {
+            log.warn("Dropping the unreadable cache entry " + path + ": " + e);
+            delete(path);
+            return null;
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            log.warn("Cannot read the cache entry " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the model (replaces the entry if there is one) and evicts the least recently used entries
+     * if the cache is too large now. Errors (including the serialization ones) are logged and ignored,
+     * and the partial entry is removed (a cache is optional).
+     *
+     * @param key cache key
+     * @param model BioPAX model
+     */
+    public void put(String key, Model model) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, key, ".tmp");
+            try (ObjectOutputStream outputStream = new ObjectOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                outputStream.writeObject(model);
+            }
+            // readers either see the complete entry or none
+            Files.move(tmp, entry(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+            evict();
+        } catch (IOException | RuntimeException e) { // (incl. NotSerializableException)
+            log.warn("Cannot store the model in the cache " + dir + ": " + e);
+        } catch (StackOverflowError e) { // (a deep object graph)
+            log.warn("Cannot store the model in the cache " + dir + ": too deep to serialize (" + e + ")");
+        } finally {
+            if(tmp != null) {
+                delete(tmp);
+            }
+        }
+    }
+
+    /*
+     * Removes the least recently used entries until the cache fits the limit
+     * (one process at a time; another process reading an entry being removed is fine on POSIX systems).
+     */
+    void evict() throws IOException {
+        // (a file lock is held by the whole process - the threads and other instances here wait for each other first)
+        synchronized (evictionLock) {
+            evictLocked();
+        }
+    }
+
+    private void evictLocked() throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(dir.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.lock()) {
+            List<Path> entries = new ArrayList<>();
+            List<BasicFileAttributes> attributes = new ArrayList<>();
+            long size = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+                for (Path path : stream) {
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                        entries.add(path);
+                        attributes.add(attrs);
+                        size += attrs.size();
+                    } catch (NoSuchFileException e) {
+                        // (just removed)
+                    }
+                }
+            }
+            if(size <= maxBytes) {
+                return;
+            }
+            List<Integer> order = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+            for (int i : order) {
+                if(size <= maxBytes) {
+                    break;
+                }
+                delete(entries.get(i));
+                size -= attributes.get(i).size();
+                log.info("Evicted the cache entry " + entries.get(i).getFileName());
+            }
+        }
+    }
+
+    Path entry(String key) {
+        return dir.resolve(key + EXTENSION);
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // not important (e.g. just evicted)
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("Cannot delete " + path + ": " + e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE has it
+        }
+    }
+
+    /*
+     * The converter version (from the jar manifest), and the size and time of the jar or classes directory,
+     * so that a rebuilt SNAPSHOT does not use the older builds' entries.
+     */
+    private static String version() {
+        String version = ModelCache.class.getPackage().getImplementationVersion();
+        try {
+            Path location = Paths.get(ModelCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            BasicFileAttributes attrs = Files.readAttributes(location, BasicFileAttributes.class);
+            return version + "/" + attrs.size() + "/" + attrs.lastModifiedTime().toMillis();
+        } catch (Exception e) { //  no code source, not a file, etc.
+            return String.valueOf(version);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+/**
+ * A step of the post-processing of the converted BioPAX model (see {@link PostProcessingPipeline}):
+ * it visits every model object during a single, shared traversal, and then completes its work.
+ */
+public interface ModelPostProcessor {
+
+    /**
+     * Visits an object of the model; must not add/remove objects to/from the model
+     * (collect what's needed and do that in {@link #complete(Model)} instead).
+     *
+     * @param element BioPAX object
+     */
+    void visit(BioPAXElement element);
+
+    /**
+     * Called once after all the model objects were visited.
+     *
+     * @param model BioPAX model
+     */
+    default void complete(Model model) {
+    }
+}
@@ -0,0 +1,322 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.level3.RelationshipXref;
+import org.biopax.paxtools.model.level3.UnificationXref;
+import org.biopax.paxtools.model.level3.Xref;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits the conversion output (but the interactions) into units - the objects made of the same few SBML elements:
+ * a species' entity and the entity reference it creates; a compartment's vocabulary;
+ * the complexes that share gene symbols, with their components.
+ * A unit's signature covers everything its objects are made of, so that an incremental conversion can
+ * tell which of the previous output's objects are still the same without converting them (see
+ * {@link SbmlToBiopaxConverter#setIncrementalBase(ReactionIndex, java.nio.file.Path)}).
+ *
+ * The units are worked out from the SBML alone, replaying the decisions of the conversion
+ * that depend on other species: which entity reference a species gets (the first one bound to its xrefs,
+ * in the order the species are used by the reactions - see {@link SbmlToBiopaxUtils#convertSpeciesToSPE}),
+ * and which protein references the complex components are (see {@link ComplexResolver}).
+ * Xrefs do not belong to units: these are the same for the same URI, and are in the output if anything refers to them.
+ */
+final class OutputUnits {
+    // xrefs
+    static final String NONE = "-";
+    // the data source, organism and pathway (always converted)
+    static final String GLOBAL = "G";
+    // an object the units do not account for (the output can't be updated then)
+    static final String UNKNOWN = "?";
+    // prefix of a reaction's interactions unit
+    static final String REACTION = "R:";
+    private static final String SPECIES = "S:";
+    private static final String COMPARTMENT = "C:";
+    private static final String COMPLEXES = "X:";
+
+    private final UriFactory uriFactory;
+    private final Map<String, SbmlSpecies> species;
+    private final Map<String, String> speciesHashes;
+    private final Map<String, SbmlElement> compartments;
+
+    // species in the order of first use, and the species whose entity reference each (but complexes) gets
+    private final Set<String> used = new LinkedHashSet<>();
+    private final Map<String, String> creators = new HashMap<>();
+    private final Map<XrefKey, String> boundKeys = new HashMap<>();
+    private final Map<String, Set<XrefKey>> proteinKeys = new HashMap<>();
+    private final Map<String, String> compartmentSpecies = new LinkedHashMap<>();
+
+    // made by complete()
+    private final Map<String, String> signatures = new LinkedHashMap<>();
+    private final Map<String, List<String>> objects = new HashMap<>();
+    private final Map<String, String> units = new HashMap<>();
+    private final Map<String, Collection<String>> unitSpecies = new HashMap<>();
+    private final Map<String, List<String>> unitComplexes = new HashMap<>();
+
+    /**
+     * @param xmlBase xml:base of the conversion
+     * @param species SBML species by id (filled while reading)
+     * @param speciesHashes species content hashes by id
+     * @param compartments SBML compartments by id
+     */
+    OutputUnits(String xmlBase, Map<String, SbmlSpecies> species, Map<String, String> speciesHashes,
+                Map<String, SbmlElement> compartments) {
+        // (a pool of its own - these URIs are not the model's)
+        this.uriFactory = new UriFactory(xmlBase, new StringPool());
+        this.species = species;
+        this.speciesHashes = speciesHashes;
+        this.compartments = compartments;
+    }
+
+    /**
+     * Registers the use of the species by a reaction (as the conversion does - modifiers, reactants, products).
+     *
+     * @param speciesId SBML species id
+     */
+    void use(String speciesId) {
+        if(!used.add(speciesId)) {
+            return;
+        }
+        SbmlSpecies s = species.get(speciesId);
+        if(s == null) {
+            return; // (the conversion fails)
+        }
+        if(compartments.get(s.getCompartment()) != null) {
+            compartmentSpecies.putIfAbsent(s.getCompartment(), speciesId);
+        }
+        if(s.getSboTerm() == 297) {
+            return; // complexes have no entity reference
+        }
+        // the entity reference bound to the first of its xrefs, or its own one
+        Set<XrefKey> keys = SbmlToBiopaxUtils.xrefKeys(UnificationXref.class, s, false);
+        String creator = null;
+        for (XrefKey key : keys) {
+            creator = boundKeys.get(key);
+            if(creator != null) {
+                break;
+            }
+        }
+        if(creator == null) {
+            creator = speciesId;
+            for (XrefKey key : keys) {
+                boundKeys.put(key, speciesId);
+            }
+            if(s.getSboTerm() != 247) {
+                proteinKeys.put(speciesId, keys);
+            }
+        }
+        creators.put(speciesId, creator);
+    }
+
+    /**
+     * Makes the units of the species used so far (when all the reactions are read).
+     */
+    void complete() {
+        // the protein references by xref (db, id) and by gene symbol, like the complex resolver finds them
+        Map<XrefKey, String> byXref = new HashMap<>();
+        Map<String, String> bySymbol = new HashMap<>();
+        List<String> complexIds = new ArrayList<>();
+        for (String speciesId : used) {
+            SbmlSpecies s = species.get(speciesId);
+            if(s == null) {
+                continue;
+            }
+            if(s.getSboTerm() == 297) {
+                complexIds.add(speciesId);
+                continue;
+            }
+            String creator = creators.get(speciesId);
+            List<String> unitObjects = new ArrayList<>(2);
+            unitObjects.add(uriFactory.element(speciesId));
+            if(creator.equals(speciesId)) {
+                unitObjects.add(uriFactory.reference(speciesId));
+            }
+            for (XrefKey key : proteinKeys.getOrDefault(speciesId, Collections.emptySet())) {
+                XrefKey untyped = new XrefKey(Xref.class, key.db, key.id);
+                byXref.putIfAbsent(untyped, speciesId);
+                if(ComplexResolver.isSymbol(untyped)) {
+                    bySymbol.putIfAbsent(untyped.id, speciesId);
+                }
+            }
+            ReactionIndex.Hasher hasher = new ReactionIndex.Hasher();
+            hasher.add(speciesHashes.get(speciesId));
+            hasher.add(uriFactory.reference(creator));
+            add(SPECIES + speciesId, hasher.hex(), unitObjects, Collections.singletonList(speciesId));
+        }
+
+        for (Map.Entry<String, String> entry : compartmentSpecies.entrySet()) {
+            add(COMPARTMENT + entry.getKey(), ReactionIndex.hash(compartments.get(entry.getKey())),
+                    Collections.singletonList(uriFactory.element(entry.getKey())),
+                    Collections.singletonList(entry.getValue()));
+        }
+
+        completeComplexes(complexIds, byXref, bySymbol);
+    }
+
+    /*
+     * Resolves the complexes' components like the complex resolver does, and groups the complexes
+     * that share a symbol (those share the symbol's protein, which location is the last complex's one).
+     */
+    private void completeComplexes(List<String> complexIds, Map<XrefKey, String> byXref, Map<String, String> bySymbol) {
+        complexIds.sort(Comparator.comparing(uriFactory::element));
+        int n = complexIds.size();
+        List<List<String>> matched = new ArrayList<>(n);
+        List<Set<String>> symbols = new ArrayList<>(n);
+        int[] parent = new int[n];
+        Map<String, Integer> symbolComplex = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            SbmlSpecies complex = species.get(complexIds.get(i));
+            Set<String> names = ComplexResolver.symbols(SbmlToBiopaxUtils.displayName(complex));
+            List<String> proteins = new ArrayList<>();
+            for (XrefKey key : SbmlToBiopaxUtils.xrefKeys(RelationshipXref.class, complex, false)) {
+                String protein = byXref.get(new XrefKey(Xref.class, key.db, key.id));
+                if(protein != null) {
+                    proteins.add(protein);
+                    names.remove(SbmlToBiopaxUtils.displayName(species.get(protein)));
+                }
+            }
+            matched.add(proteins);
+            symbols.add(names);
+            for (String name : names) {
+                Integer other = symbolComplex.putIfAbsent(name, i);
+                if(other != null) {
+                    parent[find(parent, i)] = find(parent, other);
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            groups.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(i);
+        }
+        for (List<Integer> group : groups.values()) {
+            ReactionIndex.Hasher hasher = new ReactionIndex.Hasher();
+            Set<String> unitObjects = new LinkedHashSet<>();
+            Set<String> groupSpecies = new LinkedHashSet<>();
+            List<String> complexUris = new ArrayList<>();
+            for (int i : group) {
+                String complexId = complexIds.get(i);
+                String complexUri = uriFactory.element(complexId);
+                hasher.add(complexId);
+                hasher.add(speciesHashes.get(complexId));
+                unitObjects.add(complexUri);
+                groupSpecies.add(complexId);
+                complexUris.add(complexUri);
+                hasher.add("xrefs");
+                for (String protein : matched.get(i)) {
+                    hasher.add(protein);
+                    hasher.add(speciesHashes.get(protein));
+                    unitObjects.add(uriFactory.component(complexUri, uriFactory.reference(protein)));
+                    groupSpecies.add(protein);
+                }
+                hasher.add("symbols");
+                for (String name : symbols.get(i)) {
+                    String protein = bySymbol.get(name);
+                    hasher.add(name);
+                    hasher.add(protein);
+                    unitObjects.add(uriFactory.symbolProtein(name));
+                    if(protein != null) {
+                        hasher.add(speciesHashes.get(protein));
+                        groupSpecies.add(protein);
+                    } else {
+                        unitObjects.add(uriFactory.symbolReference(name));
+                    }
+                }
+            }
+            String unit = COMPLEXES + complexIds.get(group.get(0));
+            add(unit, hasher.hex(), new ArrayList<>(unitObjects), groupSpecies);
+            unitComplexes.put(unit, complexUris);
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private void add(String unit, String signature, List<String> unitObjects, Collection<String> speciesIds) {
+        signatures.put(unit, signature);
+        objects.put(unit, unitObjects);
+        for (String uri : unitObjects) {
+            units.put(uri, unit);
+        }
+        unitSpecies.put(unit, speciesIds);
+    }
+
+    /**
+     * @return unit to signature (after {@link #complete()})
+     */
+    Map<String, String> getSignatures() {
+        return Collections.unmodifiableMap(signatures);
+    }
+
+    /**
+     * @param uri object URI
+     * @return the object's unit, or null (not in a unit)
+     */
+    String getUnit(String uri) {
+        return units.get(uri);
+    }
+
+    /**
+     * @param unit unit
+     * @return URIs of the unit's objects
+     */
+    List<String> getObjects(String unit) {
+        return objects.getOrDefault(unit, Collections.emptyList());
+    }
+
+    /**
+     * Gets the species to convert, in the order of first use, to make the objects of the units
+     * exactly as the whole model conversion does: the units' species, and the species which entity references
+     * these get (so that the references are bound to the same xrefs when these species are converted).
+     *
+     * @param someUnits units
+     * @param otherSpecies other species to convert (e.g. participants of the changed reactions)
+     * @return species ids
+     */
+    List<String> getSpeciesToConvert(Collection<String> someUnits, Collection<String> otherSpecies) {
+        Set<String> needed = new HashSet<>(otherSpecies);
+        for (String unit : someUnits) {
+            needed.addAll(unitSpecies.getOrDefault(unit, Collections.emptyList()));
+        }
+        for (String speciesId : new ArrayList<>(needed)) {
+            String creator = creators.get(speciesId);
+            if(creator != null) {
+                needed.add(creator);
+            }
+        }
+        List<String> speciesIds = new ArrayList<>(needed.size());
+        for (String speciesId : used) {
+            if(needed.contains(speciesId)) {
+                speciesIds.add(speciesId);
+            }
+        }
+        return speciesIds;
+    }
+
+    /**
+     * @param someUnits units
+     * @return URIs of the complexes in these units
+     */
+    Set<String> getComplexes(Collection<String> someUnits) {
+        Set<String> complexUris = new HashSet<>();
+        for (String unit : someUnits) {
+            complexUris.addAll(unitComplexes.getOrDefault(unit, Collections.emptyList()));
+        }
+        return complexUris;
+    }
+}
@@ -0,0 +1,405 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes BioPAX L3 RDF/XML (readable by Paxtools SimpleIOHandler) one element at a time,
+ * so that the interactions can be written as soon as they are converted
+ * (see {@link SbmlToBiopaxConverter#setCompletedElementConsumer(java.util.function.Consumer)}),
+ * and the rest of the model (entities, references, vocabularies, xrefs, etc.) - at the end.
+ * The elements are rendered (UTF-8) into a byte buffer, which is written to the file channel
+ * when full - directly, or through gzip. Elements already rendered in a previous output
+ * can be copied from there instead (see {@link #copy(String, FileChannel, long, long)}).
+ * The document is complete only when {@link #finish()} is called; closing the writer without that
+ * (after a failure) leaves the output file as it was before.
+ */
+public class OwlStreamWriter implements Closeable {
+    static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    static final String XSD_NS = "http://www.w3.org/2001/XMLSchema#";
+    static final String BIOPAX_NS = "http://www.biopax.org/release/biopax-level3.owl#";
+    private static final String FOOTER = "</rdf:RDF>\n";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final EditorMap editorMap = SimpleEditorMap.L3;
+    private final WritableByteChannel channel;
+    private final ByteSink sink = new ByteSink(BUFFER_SIZE + BUFFER_SIZE / 4);
+    private final Set<String> written = new HashSet<>();
+    // the output file and the temporary one being written (or null - writing to a stream)
+    private final Path path;
+    private final Path tmp;
+    private boolean closed;
+    // (uncompressed) bytes written to the channel so far
+    private long flushed;
+    // the element ranges in the output order, when recorded
+    private Map<String, long[]> ranges;
+    // the bytes to copy (adjacent ranges are copied at once); the buffer is empty while there are any
+    private FileChannel copySource;
+    private long copyOffset;
+    private long copyLength;
+
+    /**
+     * Starts writing the file: the RDF/XML goes to a temporary file in the same directory,
+     * which replaces the file only when {@link #finish()} is called.
+     *
+     * @param path output file
+     * @param gzip whether to gzip the output
+     * @param xmlBase xml:base for the document (can be null)
+     * @throws IOException when cannot write
+     */
+    public OwlStreamWriter(Path path, boolean gzip, String xmlBase) throws IOException {
+        this.path = path;
+        this.tmp = path.resolveSibling("." + path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        FileChannel fileChannel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            this.channel = gzip ? Channels.newChannel(new GZIPOutputStream(
+                    Channels.newOutputStream(fileChannel), BUFFER_SIZE)) : fileChannel;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(fileChannel);
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        writeHeader(xmlBase);
+    }
+
+    /**
+     * Starts writing to the stream.
+     *
+     * @param outputStream output
+     * @param gzip whether to gzip the output
+     * @param xmlBase xml:base for the document (can be null)
+     * @throws IOException when cannot write
+     */
+    public OwlStreamWriter(OutputStream outputStream, boolean gzip, String xmlBase) throws IOException {
+        this.path = null;
+        this.tmp = null;
+        this.channel = Channels.newChannel(gzip ? new GZIPOutputStream(outputStream, BUFFER_SIZE) : outputStream);
+        writeHeader(xmlBase);
+    }
+
+    private void writeHeader(String xmlBase) {
+        sink.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rdf:RDF\n");
+        sink.append(" xmlns:rdf=\"" + RDF_NS + "\"\n");
+        sink.append(" xmlns:rdfs=\"http://www.w3.org/2000/01/rdf-schema#\"\n");
+        sink.append(" xmlns:owl=\"http://www.w3.org/2002/07/owl#\"\n");
+        sink.append(" xmlns:xsd=\"" + XSD_NS + "\"\n");
+        sink.append(" xmlns:bp=\"" + BIOPAX_NS + "\"");
+        if(xmlBase != null && !xmlBase.isEmpty()) {
+            sink.append("\n xml:base=\"");
+            escape(xmlBase);
+            sink.append('"');
+        }
+        sink.append(">\n<owl:Ontology rdf:about=\"\">\n");
+        sink.append(" <owl:imports rdf:resource=\"" + BIOPAX_NS + "\" />\n</owl:Ontology>\n\n");
+    }
+
+    /**
+     * Whether to record the range (offset and length in the uncompressed output) of every element
+     * written from now on (see {@link #getRanges()}).
+     *
+     * @param recordingRanges true/false
+     */
+    public void setRecordingRanges(boolean recordingRanges) {
+        this.ranges = recordingRanges ? new LinkedHashMap<>() : null;
+    }
+
+    public boolean isRecordingRanges() {
+        return ranges != null;
+    }
+
+    /**
+     * @return element URI to its {offset, length} in the uncompressed output, in the output order
+     * (empty unless recording)
+     */
+    public Map<String, long[]> getRanges() {
+        return (ranges == null) ? Collections.emptyMap() : Collections.unmodifiableMap(ranges);
+    }
+
+    /**
+     * @return number of the (uncompressed) bytes written so far
+     */
+    public long getPosition() {
+        return flushed + copyLength + sink.size();
+    }
+
+    /**
+     * Writes the element (once; repeated calls are ignored).
+     * The caller must make sure the element won't change anymore.
+     *
+     * @param element BioPAX element
+     */
+    public void write(BioPAXElement element) {
+        if(!written.add(element.getUri())) {
+            return;
+        }
+        try {
+            if(copyLength > 0) {
+                transfer();
+            }
+            long start = getPosition();
+            String type = "bp:" + element.getModelInterface().getSimpleName();
+            sink.append('<').append(type).append(" rdf:about=\"");
+            escape(element.getUri());
+            sink.append("\">\n");
+            for (PropertyEditor editor : editorMap.getEditorsOf(element)) {
+                Set<?> values = editor.getValueFromBean(element);
+                if(values == null || values.isEmpty()) {
+                    continue;
+                }
+                if(values.size() == 1) {
+                    writeProperty(editor.getProperty(), values.iterator().next());
+                } else {
+                    // sorted, so that the same model is always written the same way
+                    List<Object> sorted = new ArrayList<>(values);
+                    sorted.sort(Comparator.comparing(OwlStreamWriter::sortKey));
+                    for (Object value : sorted) {
+                        writeProperty(editor.getProperty(), value);
+                    }
+                }
+            }
+            sink.append("</").append(type).append(">\n\n");
+            if(ranges != null) {
+                ranges.put(element.getUri(), new long[]{start, getPosition() - start});
+            }
+            if(sink.size() >= BUFFER_SIZE) {
+                flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copies the element as it was written to another (uncompressed) output of this writer,
+     * e.g. the previous conversion result (once; repeated calls are ignored).
+     *
+     * @param uri element URI
+     * @param source the other output
+     * @param offset the element's offset there
+     * @param length the element's length there
+     * @throws IOException when cannot read or write
+     */
+    public void copy(String uri, FileChannel source, long offset, long length) throws IOException {
+        if(!written.add(uri)) {
+            return;
+        }
+        if(ranges != null) {
+            ranges.put(uri, new long[]{getPosition(), length});
+        }
+        if(copyLength > 0 && (copySource != source || copyOffset + copyLength != offset)) {
+            transfer();
+        }
+        if(sink.size() > 0) {
+            flush();
+        }
+        if(copyLength == 0) {
+            copySource = source;
+            copyOffset = offset;
+        }
+        copyLength += length;
+    }
+
+    /*
+     * Copies the pending bytes from the source channel.
+     */
+    private void transfer() throws IOException {
+        long position = copyOffset;
+        long end = copyOffset + copyLength;
+        while (position < end) {
+            long n = copySource.transferTo(position, end - position, channel);
+            if(n <= 0) {
+                throw new EOFException("The previous output ends at " + position + " (expected " + end + ")");
+            }
+            position += n;
+        }
+        flushed += copyLength;
+        copySource = null;
+        copyLength = 0;
+    }
+
+    /**
+     * Writes all the model elements that have not been written yet.
+     *
+     * @param model BioPAX model
+     */
+    public void writeRemaining(Model model) {
+        List<BioPAXElement> remaining = new ArrayList<>();
+        for (BioPAXElement element : model.getObjects()) {
+            if(!written.contains(element.getUri())) {
+                remaining.add(element);
+            }
+        }
+        // in the URI order (does not depend on the model's internal order)
+        remaining.sort(Comparator.comparing(BioPAXElement::getUri));
+        for (BioPAXElement element : remaining) {
+            write(element);
+        }
+    }
+
+    static String sortKey(Object value) {
+        return (value instanceof BioPAXElement) ? ((BioPAXElement) value).getUri() : String.valueOf(value);
+    }
+
+    public int getWrittenCount() {
+        return written.size();
+    }
+
+    private void writeProperty(String property, Object value) {
+        if(isUnknown(value)) {
+            return;
+        }
+        sink.append(" <bp:").append(property);
+        if(value instanceof BioPAXElement) {
+            sink.append(" rdf:resource=\"");
+            escape(((BioPAXElement) value).getUri());
+            sink.append("\" />\n");
+        } else {
+            sink.append(" rdf:datatype=\"").append(XSD_NS).append(datatype(value)).append("\">");
+            escape(value.toString());
+            sink.append("</bp:").append(property).append(">\n");
+        }
+    }
+
+    /*
+     * Writes the buffered bytes to the channel.
+     */
+    private void flush() throws IOException {
+        ByteBuffer buffer = sink.toByteBuffer();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        flushed += sink.size();
+        sink.clear();
+    }
+
+    /*
+     * Paxtools uses these values for 'not set' numeric properties.
+     */
+    static boolean isUnknown(Object value) {
+        return value == null
+                || (value instanceof Float && (((Float) value).isNaN() || (Float) value == Float.MIN_VALUE))
+                || (value instanceof Double && (((Double) value).isNaN() || (Double) value == Double.MIN_VALUE))
+                || (value instanceof Integer && (Integer) value == Integer.MIN_VALUE);
+    }
+
+    static String datatype(Object value) {
+        if(value instanceof Float) {
+            return "float";
+        } else if(value instanceof Double) {
+            return "double";
+        } else if(value instanceof Integer) {
+            return "int";
+        } else if(value instanceof Boolean) {
+            return "boolean";
+        }
+        return "string"; // strings and enums
+    }
+
+    private void escape(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&':
+                    sink.append("&amp;");
+                    break;
+                case '<':
+                    sink.append("&lt;");
+                    break;
+                case '>':
+                    sink.append("&gt;");
+                    break;
+                case '"':
+                    sink.append("&quot;");
+                    break;
+                default:
+                    sink.append(c);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Writes the RDF/XML footer and closes the output; the output file gets replaced now.
+     *
+     * @throws IOException when cannot write
+     */
+    public void finish() throws IOException {
+        if(closed) {
+            throw new IllegalStateException("Already closed");
+        }
+        closed = true;
+        try {
+            if(copyLength > 0) {
+                transfer();
+            }
+            sink.append(FOOTER);
+            flush();
+            channel.close();
+            if(tmp != null) {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel);
+            if(tmp != null) {
+                Files.deleteIfExists(tmp);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the output, if not finished (e.g. the conversion failed): without the footer,
+     * so that the document is not complete, and the output file is left as it was.
+     *
+     * @throws IOException when cannot close
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            if(tmp != null) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static void closeQuietly(WritableByteChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already failed
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs several post-processing steps in one traversal of the model
+ * (instead of a separate getObjects scan per step), then completes the steps in order.
+ * With the metrics, each step's time (its visits and completion) is also a phase of its own,
+ * "postprocess." + the step's class name (time only - the steps share the traversal).
+ */
+public class PostProcessingPipeline {
+    private final List<ModelPostProcessor> steps;
+    private ConversionMetrics metrics;
+
+    public PostProcessingPipeline(ModelPostProcessor... steps) {
+        this.steps = new ArrayList<>(Arrays.asList(steps));
+    }
+
+    public PostProcessingPipeline add(ModelPostProcessor step) {
+        steps.add(step);
+        return this;
+    }
+
+    /**
+     * @param metrics metrics to add the steps' times to, or null (default)
+     * @return this pipeline
+     */
+    public PostProcessingPipeline setMetrics(ConversionMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public void run(Model model) {
+        if(metrics != null) {
+            runTimed(model);
+            return;
+        }
+        for (BioPAXElement element : model.getObjects()) {
+            for (ModelPostProcessor step : steps) {
+                step.visit(element);
+            }
+        }
+        for (ModelPostProcessor step : steps) {
+            step.complete(model);
+        }
+    }
+
+    /*
+     * (one clock reading per step and element - between the steps)
+     */
+    private void runTimed(Model model) {
+        long[] nanos = new long[steps.size()];
+        for (BioPAXElement element : model.getObjects()) {
+            long time = System.nanoTime();
+            for (int i = 0; i < nanos.length; i++) {
+                steps.get(i).visit(element);
+                long now = System.nanoTime();
+                nanos[i] += now - time;
+                time = now;
+            }
+        }
+        for (int i = 0; i < nanos.length; i++) {
+            ModelPostProcessor step = steps.get(i);
+            long start = System.nanoTime();
+            step.complete(model);
+            nanos[i] += System.nanoTime() - start;
+            metrics.addTime("postprocess." + step.getClass().getSimpleName(), nanos[i], 1);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.controller.EditorMap;
+import org.biopax.paxtools.controller.PropertyEditor;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Provenance;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the BioPAX model as N-Triples, N-Quads or JSON Lines - one triple (or one object) per line,
+ * so that the file can be cut with split and loaded in parallel.
+ *
+ * The elements (in the URI order) are rendered in chunks, on several threads, into pre-sized byte buffers,
+ * which are then written to the file channel in order, i.e. the output is the same for any number of threads.
+ * The literals are typed as in the RDF/XML output (see {@link OwlStreamWriter}), and the relative URIs
+ * are resolved against the model's xml:base (as the RDF/XML readers do).
+ */
+public class RdfLinesWriter {
+    private static final String RDF_TYPE = OwlStreamWriter.RDF_NS + "type";
+    private static final int CHUNK_SIZE = 512; // elements
+    private static final int BYTES_PER_ELEMENT = 1024; // initial estimate
+
+    public enum Format {
+        /** N-Triples (.nt) */
+        NTRIPLES,
+        /** N-Quads (.nq) - the triples in the model's (data source) graph */
+        NQUADS,
+        /** JSON Lines (.jsonl) - a JSON-LD style object per BioPAX element */
+        JSONL
+    }
+
+    private final EditorMap editorMap = SimpleEditorMap.L3;
+    private final Format format;
+    private final int threads;
+    private String graph;
+
+    /**
+     * @param format output format
+     * @param threads number of threads to render the chunks
+     */
+    public RdfLinesWriter(Format format, int threads) {
+        this.format = format;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param graph graph URI for the N-Quads, or null (default - the model's data source URI)
+     */
+    public void setGraph(String graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Writes the model to the file (overwrites).
+     *
+     * @param model BioPAX model (must not change while writing)
+     * @param path output file
+     * @param gzip whether to gzip the output
+     * @return number of bytes (uncompressed)
+     * @throws IOException when cannot write
+     */
+    public long write(Model model, Path path, boolean gzip) throws IOException {
+        if(gzip) {
+            try (WritableByteChannel channel = Channels.newChannel(new GZIPOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(path), 1 << 16), 1 << 16))) {
+                return write(model, channel);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return write(model, channel);
+        }
+    }
+
+    /**
+     * Writes the model to the channel (which is not closed).
+     *
+     * @param model BioPAX model (must not change while writing)
+     * @param channel output
+     * @return number of bytes
+     * @throws IOException when cannot write
+     */
+    public long write(Model model, WritableByteChannel channel) throws IOException {
+        List<BioPAXElement> elements = new ArrayList<>(model.getObjects());
+        elements.sort(Comparator.comparing(BioPAXElement::getUri));
+        String base = model.getXmlBase();
+        String graphUri = (format == Format.NQUADS) ? resolve(base, graphUri(model)) : null;
+
+        long bytes = 0;
+        ExecutorService executor = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            // a few chunks ahead of the one being written (bounded memory)
+            Deque<Future<ByteBuffer>> window = new ArrayDeque<>();
+            for (int from = 0; from < elements.size(); from += CHUNK_SIZE) {
+                List<BioPAXElement> chunk = elements.subList(from, Math.min(from + CHUNK_SIZE, elements.size()));
+                if(executor == null) {
+                    bytes += transfer(render(chunk, base, graphUri), channel);
+                    continue;
+                }
+                window.add(executor.submit(() -> render(chunk, base, graphUri)));
+                if(window.size() >= 2 * threads) {
+                    bytes += transfer(window.poll().get(), channel);
+                }
+            }
+            while (!window.isEmpty()) {
+                bytes += transfer(window.poll().get(), channel);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            if(executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        return bytes;
+    }
+
+    private String graphUri(Model model) {
+        if(graph != null) {
+            return graph;
+        }
+        String uri = null;
+        for (Provenance provenance : model.getObjects(Provenance.class)) {
+            if(uri == null || provenance.getUri().compareTo(uri) < 0) {
+                uri = provenance.getUri();
+            }
+        }
+        return (uri != null) ? uri : model.getXmlBase();
+    }
+
+    private static long transfer(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        long n = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return n;
+    }
+
+    ByteBuffer render(List<BioPAXElement> chunk, String base, String graphUri) {
+        ByteSink sink = new ByteSink(chunk.size() * BYTES_PER_ELEMENT);
+        for (BioPAXElement element : chunk) {
+            if(format == Format.JSONL) {
+                renderJson(element, base, sink);
+            } else {
+                renderTriples(element, base, graphUri, sink);
+            }
+        }
+        return sink.toByteBuffer();
+    }
+
+    private void renderTriples(BioPAXElement element, String base, String graphUri, ByteSink sink) {
+        String subject = absolute(base, element.getUri());
+        triple(subject, RDF_TYPE, sink);
+        iri(OwlStreamWriter.BIOPAX_NS + element.getModelInterface().getSimpleName(), sink);
+        end(graphUri, sink);
+        for (PropertyEditor editor : editorMap.getEditorsOf(element)) {
+            for (Object value : values(editor, element)) {
+                triple(subject, OwlStreamWriter.BIOPAX_NS + editor.getProperty(), sink);
+                if(value instanceof BioPAXElement) {
+                    iri(absolute(base, ((BioPAXElement) value).getUri()), sink);
+                } else {
+                    sink.append('"');
+                    escapeLiteral(value.toString(), sink);
+                    sink.append("\"^^<").append(OwlStreamWriter.XSD_NS).append(OwlStreamWriter.datatype(value))
+                            .append('>');
+                }
+                end(graphUri, sink);
+            }
+        }
+    }
+
+    private static void triple(String subject, String predicate, ByteSink sink) {
+        iri(subject, sink);
+        sink.append(' ');
+        iri(predicate, sink);
+        sink.append(' ');
+    }
+
+    private static void end(String graphUri, ByteSink sink) {
+        if(graphUri != null) {
+            sink.append(' ');
+            iri(graphUri, sink);
+        }
+        sink.append(" .\n");
+    }
+
+    private void renderJson(BioPAXElement element, String base, ByteSink sink) {
+        sink.append("{\"@id\":");
+        jsonString(resolve(base, element.getUri()), sink);
+        sink.append(",\"@type\":\"bp:").append(element.getModelInterface().getSimpleName()).append('"');
+        for (PropertyEditor editor : editorMap.getEditorsOf(element)) {
+            List<Object> values = values(editor, element);
+            if(values.isEmpty()) {
+                continue;
+            }
+            sink.append(",\"bp:").append(editor.getProperty()).append("\":");
+            if(values.size() > 1 || editor.isMultipleCardinality()) {
+                sink.append('[');
+                for (int i = 0; i < values.size(); i++) {
+                    if(i > 0) {
+                        sink.append(',');
+                    }
+                    jsonValue(values.get(i), base, sink);
+                }
+                sink.append(']');
+            } else {
+                jsonValue(values.get(0), base, sink);
+            }
+        }
+        sink.append("}\n");
+    }
+
+    private static void jsonValue(Object value, String base, ByteSink sink) {
+        if(value instanceof BioPAXElement) {
+            sink.append("{\"@id\":");
+            jsonString(resolve(base, ((BioPAXElement) value).getUri()), sink);
+            sink.append('}');
+        } else if(value instanceof Number || value instanceof Boolean) {
+            sink.append(value.toString());
+        } else {
+            jsonString(value.toString(), sink);
+        }
+    }
+
+    /*
+     * The (known) values of the property, sorted as in the RDF/XML output.
+     */
+    private static List<Object> values(PropertyEditor editor, BioPAXElement element) {
+        Set<?> values = editor.getValueFromBean(element);
+        if(values == null || values.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        List<Object> list = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if(!OwlStreamWriter.isUnknown(value)) {
+                list.add(value);
+            }
+        }
+        if(list.size() > 1) {
+            list.sort(Comparator.comparing(OwlStreamWriter::sortKey));
+        }
+        return list;
+    }
+
+    /*
+     * The absolute URI for N-Triples/N-Quads (which do not allow relative IRIs).
+     */
+    private static String absolute(String base, String uri) {
+        String resolved = resolve(base, uri);
+        if(!isAbsolute(resolved)) {
+            throw new IllegalStateException("Relative URI " + uri + " and no xml:base to resolve it against");
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolves the URI against the xml:base, like an RDF/XML parser does with the rdf:about/resource values
+     * of the RDF/XML output (RFC 3986, section 5.2; the converter's URIs have no dot segments to remove).
+     *
+     * @param base xml:base (absolute), or null
+     * @param uri absolute or relative URI
+     * @return absolute URI (or the URI as is, if there is no base)
+     */
+    static String resolve(String base, String uri) {
+        if(base == null || base.isEmpty() || isAbsolute(uri)) {
+            return uri;
+        }
+        int fragment = base.indexOf('#');
+        if(fragment >= 0) {
+            base = base.substring(0, fragment);
+        }
+        if(uri.isEmpty() || uri.charAt(0) == '#') {
+            return base + uri;
+        }
+        int query = base.indexOf('?');
+        if(query >= 0) {
+            base = base.substring(0, query);
+        }
+        if(uri.charAt(0) == '?') {
+            return base + uri;
+        }
+        int scheme = base.indexOf(':');
+        if(uri.startsWith("//")) {
+            return base.substring(0, scheme + 1) + uri;
+        }
+        boolean authority = base.startsWith("//", scheme + 1);
+        int pathStart = scheme + 1;
+        if(authority) {
+            pathStart = base.indexOf('/', scheme + 3);
+            if(pathStart < 0) {
+                pathStart = base.length();
+            }
+        }
+        if(uri.charAt(0) == '/') {
+            return base.substring(0, pathStart) + uri;
+        }
+        int slash = base.lastIndexOf('/');
+        if(slash >= pathStart) {
+            return base.substring(0, slash + 1) + uri;
+        }
+        // empty base path (or one without a '/', e.g. "reconx:" or "urn:x")
+        return base.substring(0, pathStart) + (authority ? "/" : "") + uri;
+    }
+
+    /*
+     * Whether the URI starts with a scheme (ALPHA *( ALPHA / DIGIT / "+" / "-" / "." ) ":").
+     */
+    static boolean isAbsolute(String uri) {
+        if(uri.isEmpty() || !isAsciiLetter(uri.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if(c == ':') {
+                return true;
+            }
+            if(!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /*
+     * IRIREF: the characters not allowed there are \\u-escaped.
+     */
+    private static void iri(String uri, ByteSink sink) {
+        sink.append('<');
+        for (int i = 0; i < uri.length(); i++) {
+            char c = uri.charAt(i);
+            if(c <= 0x20 || c == '<' || c == '>' || c == '"' || c == '{' || c == '}'
+                    || c == '|' || c == '^' || c == '`' || c == '\\') {
+                unicodeEscape(c, sink);
+            } else {
+                sink.append(c);
+            }
+        }
+        sink.append('>');
+    }
+
+    private static void escapeLiteral(String s, ByteSink sink) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sink.append("\\\"");
+                    break;
+                case '\\':
+                    sink.append("\\\\");
+                    break;
+                case '\n':
+                    sink.append("\\n");
+                    break;
+                case '\r':
+                    sink.append("\\r");
+                    break;
+                case '\t':
+                    sink.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        unicodeEscape(c, sink);
+                    } else {
+                        sink.append(c);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static void jsonString(String s, ByteSink sink) {
+        sink.append('"');
+        escapeLiteral(s, sink); // the same escapes are valid in JSON
+        sink.append('"');
+    }
+
+    private static void unicodeEscape(char c, ByteSink sink) {
+        sink.append("\\u");
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            sink.append(Character.forDigit((c >> shift) & 0xf, 16));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.humanmetabolism.converter;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the SBML reactions to convert (see {@link SbmlToBiopaxConverter#setReactionFilter(ReactionFilter)}),
+ * by reaction id (a list and/or a regular expression), SBO term, compartment
+ * (of any reactant or product) or the SUBSYSTEM notes field.
+ *
+ * A reaction is selected when it meets every criterion that is set,
+ * i.e. any of the values of each criterion; nothing set - all the reactions.
+ * Only the species, compartments, xrefs, etc. used by the selected reactions are then created.
+ */
+public class ReactionFilter {
+    private final Set<String> ids = new TreeSet<>();
+    private Pattern idPattern;
+    private final Set<Integer> sboTerms = new TreeSet<>();
+    private final Set<String> compartments = new TreeSet<>();
+    private final Set<String> subsystems = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    public ReactionFilter addId(String id) {
+        ids.add(id);
+        return this;
+    }
+
+    /**
+     * @param regex regular expression the whole reaction id must match
+     *              (the reactions in the id list are also selected)
+     * @return this filter
+     */
+    public ReactionFilter setIdPattern(String regex) {
+        this.idPattern = (regex != null) ? Pattern.compile(regex) : null;
+        return this;
+    }
+
+    public ReactionFilter addSboTerm(int sboTerm) {
+        sboTerms.add(sboTerm);
+        return this;
+    }
+
+    /**
+     * @param compartment SBML compartment id
+     * @return this filter
+     */
+    public ReactionFilter addCompartment(String compartment) {
+        compartments.add(compartment);
+        return this;
+    }
+
+    /**
+     * @param subsystem SUBSYSTEM notes field value (case-insensitive)
+     * @return this filter
+     */
+    public ReactionFilter addSubsystem(String subsystem) {
+        subsystems.add(subsystem.trim());
+        return this;
+    }
+
+    /**
+     * @return true when no criteria are set (all the reactions are selected)
+     */
+    public boolean isEmpty() {
+        return ids.isEmpty() && idPattern == null && sboTerms.isEmpty()
+                && compartments.isEmpty() && subsystems.isEmpty();
+    }
+
+    /**
+     * Whether to convert the reaction.
+     *
+     * @param reaction SBML reaction
+     * @param species SBML species by id (to find the compartments)
+     * @return true/false
+     */
+    public boolean accept(SbmlReaction reaction, Map<String, SbmlSpecies> species) {
+        if((!ids.isEmpty() || idPattern != null) && !ids.contains(reaction.getId())
+                && (idPattern == null || reaction.getId() == null || !idPattern.matcher(reaction.getId()).matches())) {
+            return false;
+        }
+        if(!sboTerms.isEmpty() && !sboTerms.contains(reaction.getSboTerm())) {
+            return false;
+        }
+        if(!subsystems.isEmpty()) {
+            String subsystem = reaction.getNotesField("SUBSYSTEM");
+            if(subsystem == null || !subsystems.contains(subsystem)) {
+                return false;
+            }
+        }
+        return compartments.isEmpty() || inCompartments(reaction, species);
+    }
+
+    private boolean inCompartments(SbmlReaction reaction, Map<String, SbmlSpecies> species) {
+        for (String id : reaction.getReactants()) {
+            if(inCompartments(species.get(id))) {
+                return true;
+            }
+        }
+        for (String id : reaction.getProducts()) {
+            if(inCompartments(species.get(id))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inCompartments(SbmlSpecies species) {
+        return species != null && compartments.contains(species.getCompartment());
+    }
+
+    /**
+     * @return the criteria (the same for equal filters), e.g. for the incremental conversion settings
+     */
+    @Override
+    public String toString() {
+        return "ids=" + ids + " idPattern=" + ((idPattern != null) ? idPattern.pattern() : "")
+                + " sbo=" + sboTerms + " compartments=" + compartments + " subsystems=" + subsystems;
+    }
+}
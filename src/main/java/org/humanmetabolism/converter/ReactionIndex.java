@@ -0,0 +1,354 @@
+package org.humanmetabolism.converter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content hashes of the SBML species and reactions of a conversion, the URIs of the
+ * BioPAX interactions produced for each reaction, and where each object is in the RDF/XML output
+ * (its range, the output unit it belongs to, and the xrefs it refers to) - a sidecar file of the output,
+ * used to only convert the added and modified reactions and species next time (see
+ * {@link SbmlToBiopaxConverter#setIncrementalBase(ReactionIndex, Path)}).
+ *
+ * A species hash covers its name, SBO term, notes, annotations and compartment;
+ * a reaction hash - its own properties, and the hashes of its reactants, products and modifiers' species;
+ * a unit signature - everything the unit's objects are made of (see {@link OutputUnits}).
+ * The hashes do not depend on the JVM or the order of elements in the SBML file.
+ */
+public class ReactionIndex {
+    private static final String HEADER = "#reconx-index\t2\t";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String settings;
+    private String modelId;
+    private long outputSize = -1;
+    private final Map<String, String> species = new LinkedHashMap<>();
+    private final Map<String, Entry> reactions = new LinkedHashMap<>();
+    private final Map<String, String> units = new LinkedHashMap<>();
+    private final Map<String, Block> objects = new LinkedHashMap<>();
+
+    /**
+     * @param settings conversion settings the BioPAX output depends on (e.g. xml:base);
+     *                 an index is reusable only for the same settings
+     */
+    public ReactionIndex(String settings) {
+        this.settings = settings;
+    }
+
+    public String getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return SBML model id (the BioPAX data source is made of it), or null
+     */
+    public String getModelId() {
+        return modelId;
+    }
+
+    public void setModelId(String modelId) {
+        this.modelId = modelId;
+    }
+
+    /**
+     * @return size of the output file (to tell if it is still the one indexed), or -1 if unknown
+     */
+    public long getOutputSize() {
+        return outputSize;
+    }
+
+    public void setOutputSize(long outputSize) {
+        this.outputSize = outputSize;
+    }
+
+    /**
+     * A reaction's hash and the URIs of the interactions (the Conversion and Controls) made of it.
+     */
+    public static final class Entry {
+        private final String hash;
+        private final List<String> uris;
+
+        Entry(String hash, List<String> uris) {
+            this.hash = hash;
+            this.uris = Collections.unmodifiableList(uris);
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public List<String> getUris() {
+            return uris;
+        }
+    }
+
+    public void putSpecies(String id, String hash) {
+        species.put(id, hash);
+    }
+
+    public String getSpeciesHash(String id) {
+        return species.get(id);
+    }
+
+    public void putReaction(String id, String hash, List<String> uris) {
+        reactions.put(id, new Entry(hash, uris));
+    }
+
+    public Entry getReaction(String id) {
+        return reactions.get(id);
+    }
+
+    public Map<String, Entry> getReactions() {
+        return Collections.unmodifiableMap(reactions);
+    }
+
+    /**
+     * Where an object is in the (uncompressed) output, the unit it belongs to, and the xrefs it refers to.
+     */
+    public static final class Block {
+        private final String unit;
+        private final long offset;
+        private final long length;
+        private final List<String> xrefs;
+
+        Block(String unit, long offset, long length, List<String> xrefs) {
+            this.unit = unit;
+            this.offset = offset;
+            this.length = length;
+            this.xrefs = Collections.unmodifiableList(xrefs);
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public List<String> getXrefs() {
+            return xrefs;
+        }
+    }
+
+    public void putUnit(String unit, String signature) {
+        units.put(unit, signature);
+    }
+
+    public String getSignature(String unit) {
+        return units.get(unit);
+    }
+
+    public void putObject(String uri, String unit, long offset, long length, List<String> xrefs) {
+        objects.put(uri, new Block(unit, offset, length, xrefs));
+    }
+
+    public Block getObject(String uri) {
+        return objects.get(uri);
+    }
+
+    /**
+     * @return object URI to its block, in the output order
+     */
+    public Map<String, Block> getObjects() {
+        return Collections.unmodifiableMap(objects);
+    }
+
+    /**
+     * Reads the index file.
+     *
+     * @param path index file
+     * @return index
+     * @throws IOException when cannot read or it's not an index file (of this version)
+     */
+    public static ReactionIndex read(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if(line == null || !line.startsWith(HEADER)) {
+                throw new IOException("Not a reaction index file (of this version): " + path);
+            }
+            ReactionIndex index = new ReactionIndex(line.substring(HEADER.length()));
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split("\t");
+                if(columns[0].equals("S") && columns.length == 3) {
+                    index.putSpecies(columns[1], columns[2]);
+                } else if(columns[0].equals("R") && columns.length >= 3) {
+                    index.putReaction(columns[1], columns[2],
+                            Arrays.asList(Arrays.copyOfRange(columns, 3, columns.length)));
+                } else if(columns[0].equals("U") && columns.length == 3) {
+                    index.putUnit(columns[1], columns[2]);
+                } else if(columns[0].equals("O") && columns.length >= 5) {
+                    index.putObject(columns[1], columns[2], Long.parseLong(columns[3]), Long.parseLong(columns[4]),
+                            Arrays.asList(Arrays.copyOfRange(columns, 5, columns.length)));
+                } else if(columns[0].equals("M") && columns.length == 3) {
+                    index.setModelId(columns[1].isEmpty() ? null : columns[1]);
+                    index.setOutputSize(Long.parseLong(columns[2]));
+                }
+            }
+            return index;
+        } catch (NumberFormatException e) {
+            throw new IOException("Broken reaction index file: " + path, e);
+        }
+    }
+
+    public void write(Path path) throws IOException {
+        // (to a temporary file first, so that a failed write does not leave a partial index)
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + settings + "\n");
+            writer.write("M\t" + ((modelId != null) ? modelId : "") + "\t" + outputSize + "\n");
+            for (Map.Entry<String, String> entry : species.entrySet()) {
+                writer.write("S\t" + entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            for (Map.Entry<String, Entry> entry : reactions.entrySet()) {
+                writer.write("R\t" + entry.getKey() + "\t" + entry.getValue().getHash());
+                for (String uri : entry.getValue().getUris()) {
+                    writer.write("\t" + uri);
+                }
+                writer.write("\n");
+            }
+            for (Map.Entry<String, String> entry : units.entrySet()) {
+                writer.write("U\t" + entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            for (Map.Entry<String, Block> entry : objects.entrySet()) {
+                Block block = entry.getValue();
+                writer.write("O\t" + entry.getKey() + "\t" + block.getUnit()
+                        + "\t" + block.getOffset() + "\t" + block.getLength());
+                for (String xref : block.getXrefs()) {
+                    writer.write("\t" + xref);
+                }
+                writer.write("\n");
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Content hash of an SBML element (e.g. a compartment).
+     *
+     * @param element SBML element
+     * @return hash (hex)
+     */
+    public static String hash(SbmlElement element) {
+        Hasher hasher = new Hasher();
+        hasher.element(element);
+        return hasher.hex();
+    }
+
+    /**
+     * Content hash of the species.
+     *
+     * @param species SBML species
+     * @param compartment its compartment or null
+     * @return hash (hex)
+     */
+    public static String hash(SbmlSpecies species, SbmlElement compartment) {
+        Hasher hasher = new Hasher();
+        hasher.element(species);
+        if(compartment != null) {
+            hasher.element(compartment);
+        }
+        return hasher.hex();
+    }
+
+    /**
+     * Content hash of the reaction.
+     *
+     * @param reaction SBML reaction
+     * @param speciesHashes species id to hash
+     * @return hash (hex)
+     */
+    public static String hash(SbmlReaction reaction, Map<String, String> speciesHashes) {
+        Hasher hasher = new Hasher();
+        hasher.element(reaction);
+        hasher.add(String.valueOf(reaction.isReversible()));
+        hasher.add("reactants");
+        for (String reactant : reaction.getReactants()) {
+            hasher.add(speciesHashes.get(reactant));
+        }
+        hasher.add("products");
+        for (String product : reaction.getProducts()) {
+            hasher.add(speciesHashes.get(product));
+        }
+        hasher.add("modifiers");
+        for (SbmlModifier modifier : reaction.getModifiers()) {
+            hasher.element(modifier);
+            hasher.add(speciesHashes.get(modifier.getSpecies()));
+        }
+        return hasher.hex();
+    }
+
+    /*
+     * SHA-256 over the length-prefixed strings (so that different field splits can't collide).
+     */
+    static final class Hasher {
+        private final MessageDigest digest;
+
+        Hasher() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // every JRE has it
+            }
+        }
+
+        void add(String s) {
+            if(s == null) {
+                digest.update((byte) 0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            digest.update((byte) 1);
+            digest.update((byte) (bytes.length >>> 24));
+            digest.update((byte) (bytes.length >>> 16));
+            digest.update((byte) (bytes.length >>> 8));
+            digest.update((byte) bytes.length);
+            digest.update(bytes);
+        }
+
+        void element(SbmlElement element) {
+            add(element.getId());
+            add(element.getName());
+            add(String.valueOf(element.getSboTerm()));
+            add(element.getNotes());
+            for (SbmlCvTerm cvTerm : element.getCvTerms()) {
+                add("cv");
+                for (String resource : cvTerm.getResources()) {
+                    add(resource);
+                }
+            }
+            if(element instanceof SbmlSpecies) {
+                add(((SbmlSpecies) element).getCompartment());
+            }
+        }
+
+        String hex() {
+            byte[] bytes = digest.digest();
+            char[] chars = new char[32]; // 128 bits is plenty
+            for (int i = 0; i < 16; i++) {
+                chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+                chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+            }
+            return new String(chars);
+        }
+    }
+}
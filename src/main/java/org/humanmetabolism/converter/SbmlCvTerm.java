@@ -0,0 +1,30 @@
+package org.humanmetabolism.converter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A controlled vocabulary term (RDF annotation) of an SBML element;
+ * i.e., the list of MIRIAM resources (URNs/URLs) under a single bqbiol/bqmodel qualifier.
+ */
+public class SbmlCvTerm {
+    private final List<String> resources = new ArrayList<>(1);
+
+    public List<String> getResources() {
+        return resources;
+    }
+
+    public void addResource(String resource) {
+        resources.add(resource);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SbmlCvTerm && resources.equals(((SbmlCvTerm) o).resources);
+    }
+
+    @Override
+    public int hashCode() {
+        return resources.hashCode();
+    }
+}
@@ -0,0 +1,107 @@
+package org.humanmetabolism.converter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compact, JSBML-independent snapshot of a named SBML element,
+ * holding only what the converter actually uses:
+ * id, name, SBO term, the notes text and the MIRIAM annotations (CV terms).
+ *
+ * Both the in-memory (JSBML) and the streaming (StAX) front-ends produce these,
+ * so the rest of the conversion does not depend on how the SBML was read.
+ */
+public class SbmlElement {
+    private final String id;
+    private final String name;
+    private final int sboTerm;
+    private String notes;
+    private List<String> notesParagraphs = Collections.emptyList();
+    private List<SbmlCvTerm> cvTerms = Collections.emptyList();
+
+    public SbmlElement(String id, String name, int sboTerm) {
+        this.id = id;
+        this.name = name;
+        this.sboTerm = sboTerm;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the name or null when it is not set
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the SBO term number or -1 when it is not set
+     */
+    public int getSboTerm() {
+        return sboTerm;
+    }
+
+    /**
+     * @return plain text of the notes (markup stripped) or null
+     */
+    public String getNotes() {
+        if(notes == null && !notesParagraphs.isEmpty()) {
+            notes = String.join(" ", notesParagraphs);
+        }
+        return notes;
+    }
+
+    public void setNotes(String notes) {
+        this.notes = notes;
+        this.notesParagraphs = Collections.emptyList();
+    }
+
+    /**
+     * @return paragraphs of the structured (e.g. "SUBSYSTEM: ...") notes, or empty list
+     */
+    public List<String> getNotesParagraphs() {
+        return notesParagraphs;
+    }
+
+    public void setNotesParagraphs(List<String> notesParagraphs) {
+        this.notesParagraphs = notesParagraphs;
+        this.notes = null;
+    }
+
+    /**
+     * Gets the value of a structured notes field, e.g. "SUBSYSTEM" or "EC Number".
+     *
+     * @param key field name (case-insensitive)
+     * @return the first such field's value (trimmed) or null
+     */
+    public String getNotesField(String key) {
+        for (String paragraph : notesParagraphs) {
+            if(paragraph.length() > key.length() && paragraph.regionMatches(true, 0, key, 0, key.length())) {
+                int colon = SbmlNotes.keyEnd(paragraph, 0, paragraph.length());
+                if(colon >= 0 && paragraph.substring(0, colon).trim().length() == key.length()) {
+                    return paragraph.substring(colon + 1).trim();
+                }
+            }
+        }
+        return null;
+    }
+
+    public List<SbmlCvTerm> getCvTerms() {
+        return cvTerms;
+    }
+
+    public void addCvTerm(SbmlCvTerm cvTerm) {
+        if(cvTerms.isEmpty()) {
+            cvTerms = new ArrayList<>(2);
+        }
+        cvTerms.add(cvTerm);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + ":" + id;
+    }
+}
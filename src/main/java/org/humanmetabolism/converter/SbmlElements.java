@@ -0,0 +1,68 @@
+package org.humanmetabolism.converter;
+
+import org.sbml.jsbml.*;
+
+/**
+ * Makes {@link SbmlElement} snapshots of the JSBML objects
+ * (used by the in-memory conversion and by the JSBML-based utility methods).
+ */
+public final class SbmlElements {
+
+    private SbmlElements() {
+    }
+
+    public static SbmlElement element(AbstractNamedSBase sBase) {
+        return fill(new SbmlElement(sBase.getId(), name(sBase), sBase.getSBOTerm()), sBase);
+    }
+
+    public static SbmlSpecies species(Species species) {
+        return fill(new SbmlSpecies(species.getId(), name(species), species.getSBOTerm(),
+                species.getCompartment()), species);
+    }
+
+    public static SbmlReaction reaction(Reaction reaction) {
+        SbmlReaction sbmlReaction = fill(new SbmlReaction(reaction.getId(), name(reaction),
+                reaction.getSBOTerm(), reaction.getReversible()), reaction);
+        for (SpeciesReference reactantRef : reaction.getListOfReactants()) {
+            sbmlReaction.getReactants().add(reactantRef.getSpecies());
+        }
+        for (SpeciesReference productRef : reaction.getListOfProducts()) {
+            sbmlReaction.getProducts().add(productRef.getSpecies());
+        }
+        for (ModifierSpeciesReference modifierSpeciesReference : reaction.getListOfModifiers()) {
+            sbmlReaction.getModifiers().add(modifier(reaction, modifierSpeciesReference));
+        }
+        return sbmlReaction;
+    }
+
+    public static SbmlModifier modifier(ModifierSpeciesReference modifierSpeciesReference) {
+        // the parent of a modifier is the listOfModifiers, and its parent is the reaction
+        SBase listOf = modifierSpeciesReference.getParentSBMLObject();
+        SBase parent = (listOf != null) ? listOf.getParentSBMLObject() : null;
+        return modifier((parent instanceof Reaction) ? (Reaction) parent : null, modifierSpeciesReference);
+    }
+
+    private static SbmlModifier modifier(Reaction reaction, ModifierSpeciesReference modifierSpeciesReference) {
+        return fill(new SbmlModifier(modifierSpeciesReference.getId(), name(modifierSpeciesReference),
+                modifierSpeciesReference.getSBOTerm(), (reaction != null) ? reaction.getId() : null,
+                modifierSpeciesReference.getSpecies()), modifierSpeciesReference);
+    }
+
+    private static String name(AbstractNamedSBase sBase) {
+        return sBase.isSetName() ? sBase.getName() : null;
+    }
+
+    private static <T extends SbmlElement> T fill(T element, AbstractSBase sBase) {
+        if(sBase.isSetNotes()) {
+            SbmlNotes.read(sBase.getNotes(), element);
+        }
+        for (CVTerm cvTerm : sBase.getAnnotation().getListOfCVTerms()) {
+            SbmlCvTerm sbmlCvTerm = new SbmlCvTerm();
+            for (String resource : cvTerm.getResources()) {
+                sbmlCvTerm.addResource(resource);
+            }
+            element.addCvTerm(sbmlCvTerm);
+        }
+        return element;
+    }
+}
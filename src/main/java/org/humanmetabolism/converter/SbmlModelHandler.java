@@ -0,0 +1,18 @@
+package org.humanmetabolism.converter;
+
+/**
+ * Receives the SBML model parts in document order:
+ * the model itself first, then compartments, species and reactions, and finally - the end.
+ */
+interface SbmlModelHandler {
+
+    void startModel(SbmlElement model);
+
+    void compartment(SbmlElement compartment);
+
+    void species(SbmlSpecies species);
+
+    void reaction(SbmlReaction reaction);
+
+    void endModel();
+}
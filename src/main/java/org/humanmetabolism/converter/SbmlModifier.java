@@ -0,0 +1,43 @@
+package org.humanmetabolism.converter;
+
+import java.util.Objects;
+
+/**
+ * SBML modifier species reference snapshot (see {@link SbmlElement}).
+ * These usually have neither id nor name; hence, the hash code is based on the
+ * parent reaction id and the referenced species, which is enough to tell them apart.
+ */
+public class SbmlModifier extends SbmlElement {
+    private final String reaction;
+    private final String species;
+
+    public SbmlModifier(String id, String name, int sboTerm, String reaction, String species) {
+        super(id, name, sboTerm);
+        this.reaction = reaction;
+        this.species = species;
+    }
+
+    public String getReaction() {
+        return reaction;
+    }
+
+    public String getSpecies() {
+        return species;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof SbmlModifier)) {
+            return false;
+        }
+        SbmlModifier that = (SbmlModifier) o;
+        return getSboTerm() == that.getSboTerm()
+                && Objects.equals(reaction, that.reaction)
+                && Objects.equals(species, that.species);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(reaction, species, getSboTerm());
+    }
+}
@@ -0,0 +1,206 @@
+package org.humanmetabolism.converter;
+
+import org.sbml.jsbml.xml.XMLNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the plain text of SBML notes (XHTML) in one pass:
+ * markup is dropped, element boundaries become a single space,
+ * whitespace runs are collapsed and the result is trimmed.
+ *
+ * The same rules are used for the JSBML notes tree and for the raw StAX text events,
+ * so that both the in-memory and the streaming conversion produce the same comments.
+ *
+ * Recon style structured notes - paragraphs like "GENE_ASSOCIATION: ...", "SUBSYSTEM: ...",
+ * "EC Number: ..." - are kept as separate paragraphs (see {@link SbmlElement#getNotesField(String)});
+ * only the paragraph offsets are tracked while building the text, so that costs nothing extra
+ * for the notes without such fields.
+ */
+public class SbmlNotes {
+    // XHTML elements that separate the paragraphs
+    private static final Set<String> BLOCKS = new HashSet<>(Arrays.asList(
+            "p", "div", "br", "li", "ul", "ol", "tr", "td", "th", "table",
+            "h1", "h2", "h3", "h4", "h5", "h6", "body", "html", "pre", "blockquote"));
+    private static final int MAX_KEY_LENGTH = 48;
+
+    private static final ThreadLocal<SbmlNotes> BUILDER = ThreadLocal.withInitial(SbmlNotes::new);
+
+    private final StringBuilder text = new StringBuilder(256);
+    private boolean space = true; //pending whitespace (or start of text)
+    private int[] paragraphEnds = new int[16];
+    private int paragraphs;
+
+    /**
+     * Gets the plain text of the JSBML notes tree.
+     *
+     * @param notes notes XML node or null
+     * @return text or null when there is no text at all
+     */
+    public static String text(XMLNode notes) {
+        if(notes == null) {
+            return null;
+        }
+        SbmlNotes sbmlNotes = BUILDER.get();
+        sbmlNotes.append(notes);
+        return sbmlNotes.build();
+    }
+
+    /**
+     * Sets the notes of the element from the JSBML notes tree (a reused, per-thread buffer).
+     *
+     * @param notes notes XML node or null
+     * @param element SBML element snapshot
+     */
+    public static void read(XMLNode notes, SbmlElement element) {
+        if(notes != null) {
+            SbmlNotes sbmlNotes = BUILDER.get();
+            sbmlNotes.append(notes);
+            sbmlNotes.build(element);
+        }
+    }
+
+    private void append(XMLNode node) {
+        if(node.isText()) {
+            append(node.getCharacters());
+        } else {
+            boundary(node.getName());
+            for (int i = 0; i < node.getChildCount(); i++) {
+                append(node.getChildAt(i));
+            }
+            boundary(node.getName());
+        }
+    }
+
+    public void append(String s) {
+        if(s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                append(s.charAt(i));
+            }
+        }
+    }
+
+    public void append(char[] chars, int start, int length) {
+        for (int i = start; i < start + length; i++) {
+            append(chars[i]);
+        }
+    }
+
+    private void append(char c) {
+        if(Character.isWhitespace(c)) {
+            space = true;
+        } else {
+            if(space && text.length() > 0) {
+                text.append(' ');
+            }
+            space = false;
+            text.append(c);
+        }
+    }
+
+    /**
+     * Marks an element start/end (which separates words).
+     */
+    public void boundary() {
+        space = true;
+    }
+
+    /**
+     * Marks an element start/end (which separates words, and paragraphs - for block elements).
+     *
+     * @param element XHTML element local name
+     */
+    public void boundary(String element) {
+        space = true;
+        if(element != null && BLOCKS.contains(element)) {
+            int end = text.length();
+            if(end > ((paragraphs == 0) ? 0 : paragraphEnds[paragraphs - 1])) {
+                if(paragraphs == paragraphEnds.length) {
+                    paragraphEnds = Arrays.copyOf(paragraphEnds, paragraphs * 2);
+                }
+                paragraphEnds[paragraphs++] = end;
+            }
+        }
+    }
+
+    /**
+     * @return the text collected so far, or null if empty; the builder is then reset
+     */
+    public String build() {
+        String s = (text.length() == 0) ? null : text.toString();
+        reset();
+        return s;
+    }
+
+    /**
+     * Sets the text collected so far as the element's notes - as paragraphs, if any of these
+     * is a "key: value" field, or as a single text; the builder is then reset.
+     *
+     * @param element SBML element snapshot
+     */
+    public void build(SbmlElement element) {
+        if(text.length() > 0) {
+            boundary("p"); // the rest
+            boolean structured = false;
+            for (int i = 0; i < paragraphs && !structured; i++) {
+                structured = keyEnd(text, paragraphStart(i), paragraphEnds[i]) >= 0;
+            }
+            if(structured) {
+                List<String> list = new ArrayList<>(paragraphs);
+                for (int i = 0; i < paragraphs; i++) {
+                    list.add(text.substring(paragraphStart(i), paragraphEnds[i]));
+                }
+                element.setNotesParagraphs(list);
+            } else {
+                element.setNotes(text.toString());
+            }
+        }
+        reset();
+    }
+
+    private int paragraphStart(int i) {
+        if(i == 0) {
+            return 0;
+        }
+        int start = paragraphEnds[i - 1];
+        // skip the separating space
+        return (start < text.length() && text.charAt(start) == ' ') ? start + 1 : start;
+    }
+
+    private void reset() {
+        text.setLength(0);
+        space = true;
+        paragraphs = 0;
+    }
+
+    /**
+     * Finds the end of the field name of a "key: value" paragraph (e.g. "EC Number: 1.1.1.1"),
+     * where the key starts with a letter and has only letters, digits, spaces, '_' and '-'.
+     *
+     * @param s text
+     * @param start paragraph start
+     * @param end paragraph end (exclusive)
+     * @return index of the colon, or -1 if that's not a field
+     */
+    static int keyEnd(CharSequence s, int start, int end) {
+        if(start >= end || !Character.isLetter(s.charAt(start))) {
+            return -1;
+        }
+        int limit = Math.min(end, start + MAX_KEY_LENGTH);
+        for (int i = start + 1; i < limit; i++) {
+            char c = s.charAt(i);
+            if(c == ':') {
+                // not a URL (e.g. "see http://...")
+                return (i + 1 < end && s.charAt(i + 1) == '/') ? -1 : i;
+            }
+            if(!Character.isLetterOrDigit(c) && c != ' ' && c != '_' && c != '-') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
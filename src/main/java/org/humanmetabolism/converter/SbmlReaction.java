@@ -0,0 +1,42 @@
+package org.humanmetabolism.converter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SBML reaction snapshot (see {@link SbmlElement}):
+ * reversibility, reactant/product species ids and the modifiers.
+ */
+public class SbmlReaction extends SbmlElement {
+    private final boolean reversible;
+    private final List<String> reactants = new ArrayList<>(4);
+    private final List<String> products = new ArrayList<>(4);
+    private final List<SbmlModifier> modifiers = new ArrayList<>(1);
+
+    public SbmlReaction(String id, String name, int sboTerm, boolean reversible) {
+        super(id, name, sboTerm);
+        this.reversible = reversible;
+    }
+
+    public boolean isReversible() {
+        return reversible;
+    }
+
+    /**
+     * @return ids of the reactant species
+     */
+    public List<String> getReactants() {
+        return reactants;
+    }
+
+    /**
+     * @return ids of the product species
+     */
+    public List<String> getProducts() {
+        return products;
+    }
+
+    public List<SbmlModifier> getModifiers() {
+        return modifiers;
+    }
+}
@@ -0,0 +1,17 @@
+package org.humanmetabolism.converter;
+
+/**
+ * SBML species snapshot (see {@link SbmlElement}) plus the compartment id.
+ */
+public class SbmlSpecies extends SbmlElement {
+    private final String compartment;
+
+    public SbmlSpecies(String id, String name, int sboTerm, String compartment) {
+        super(id, name, sboTerm);
+        this.compartment = compartment;
+    }
+
+    public String getCompartment() {
+        return compartment;
+    }
+}
@@ -0,0 +1,280 @@
+package org.humanmetabolism.converter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * Reads an SBML document with a StAX cursor and passes the model parts,
+ * one by one, to a {@link SbmlModelHandler}, without building the JSBML tree.
+ * Only the elements and attributes the converter uses are read; everything else
+ * (units, parameters, kinetic laws, etc.) is skipped.
+ */
+class SbmlStreamReader {
+    private static Logger log = LoggerFactory.getLogger(SbmlStreamReader.class);
+
+    private static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String BQBIOL_NS = "http://biomodels.net/biology-qualifiers/";
+    private static final String BQMODEL_NS = "http://biomodels.net/model-qualifiers/";
+
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final SbmlModelHandler handler;
+    private final SbmlNotes notes = new SbmlNotes();
+    private final StringPool pool;
+    private boolean modelStarted;
+
+    SbmlStreamReader(SbmlModelHandler handler) {
+        this(handler, new StringPool());
+    }
+
+    /**
+     * @param handler receives the model parts
+     * @param pool to deduplicate the ids, names and annotation resources (e.g. species ids in reactions)
+     */
+    SbmlStreamReader(SbmlModelHandler handler, StringPool pool) {
+        this.handler = handler;
+        this.pool = pool;
+    }
+
+    void read(InputStream inputStream) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(inputStream);
+        try {
+            while (reader.hasNext()) {
+                if(reader.next() == XMLStreamConstants.START_ELEMENT && "model".equals(reader.getLocalName())) {
+                    readModel(reader);
+                    return;
+                }
+            }
+            throw new XMLStreamException("No SBML model element found");
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readModel(XMLStreamReader reader) throws XMLStreamException {
+        SbmlElement model = new SbmlElement(attribute(reader, "id"), attribute(reader, "name"), sboTerm(reader));
+        modelStarted = false;
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if(reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "notes":
+                    readNotes(reader, model);
+                    break;
+                case "annotation":
+                    readAnnotation(reader, model);
+                    break;
+                case "listOfCompartments":
+                    startModel(model);
+                    while (nextChild(reader, "compartment")) {
+                        handler.compartment(readBody(reader,
+                                new SbmlElement(attribute(reader, "id"), attribute(reader, "name"), sboTerm(reader))));
+                    }
+                    break;
+                case "listOfSpecies":
+                    startModel(model);
+                    while (nextChild(reader, "species")) {
+                        handler.species(readBody(reader, new SbmlSpecies(attribute(reader, "id"),
+                                attribute(reader, "name"), sboTerm(reader), attribute(reader, "compartment"))));
+                    }
+                    break;
+                case "listOfReactions":
+                    startModel(model);
+                    while (nextChild(reader, "reaction")) {
+                        handler.reaction(readReaction(reader));
+                    }
+                    break;
+                default:
+                    skip(reader);
+                    break;
+            }
+        }
+        startModel(model);
+        handler.endModel();
+    }
+
+    private void startModel(SbmlElement model) {
+        if(!modelStarted) {
+            modelStarted = true;
+            handler.startModel(model);
+        }
+    }
+
+    private SbmlReaction readReaction(XMLStreamReader reader) throws XMLStreamException {
+        // SBML default is reversible=true
+        SbmlReaction reaction = new SbmlReaction(attribute(reader, "id"), attribute(reader, "name"),
+                sboTerm(reader), !"false".equals(attribute(reader, "reversible")));
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if(reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "notes":
+                    readNotes(reader, reaction);
+                    break;
+                case "annotation":
+                    readAnnotation(reader, reaction);
+                    break;
+                case "listOfReactants":
+                    while (nextChild(reader, "speciesReference")) {
+                        reaction.getReactants().add(attribute(reader, "species"));
+                        skip(reader);
+                    }
+                    break;
+                case "listOfProducts":
+                    while (nextChild(reader, "speciesReference")) {
+                        reaction.getProducts().add(attribute(reader, "species"));
+                        skip(reader);
+                    }
+                    break;
+                case "listOfModifiers":
+                    while (nextChild(reader, "modifierSpeciesReference")) {
+                        reaction.getModifiers().add(readBody(reader, new SbmlModifier(attribute(reader, "id"),
+                                attribute(reader, "name"), sboTerm(reader), reaction.getId(),
+                                attribute(reader, "species"))));
+                    }
+                    break;
+                default:
+                    skip(reader);
+                    break;
+            }
+        }
+        return reaction;
+    }
+
+    /*
+     * Reads the notes and annotation of the current element, skipping other children,
+     * up to (and including) its end tag.
+     */
+    private <T extends SbmlElement> T readBody(XMLStreamReader reader, T element) throws XMLStreamException {
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if(reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if("notes".equals(reader.getLocalName())) {
+                readNotes(reader, element);
+            } else if("annotation".equals(reader.getLocalName())) {
+                readAnnotation(reader, element);
+            } else {
+                skip(reader);
+            }
+        }
+        return element;
+    }
+
+    /*
+     * Moves the cursor to the next child element with the given name (skipping other ones);
+     * returns false at the end tag of the parent (list) element.
+     */
+    private boolean nextChild(XMLStreamReader reader, String name) throws XMLStreamException {
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if(reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                if(name.equals(reader.getLocalName())) {
+                    return true;
+                }
+                skip(reader);
+            }
+        }
+        return false;
+    }
+
+    private void readNotes(XMLStreamReader reader, SbmlElement element) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    notes.boundary(reader.getLocalName());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    notes.boundary(reader.getLocalName());
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    notes.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                default:
+                    break;
+            }
+        }
+        notes.build(element);
+    }
+
+    /*
+     * Collects MIRIAM resources: each bqbiol:* or bqmodel:* element is a CV term,
+     * and the rdf:li/@rdf:resource values inside are its resources.
+     */
+    private void readAnnotation(XMLStreamReader reader, SbmlElement element) throws XMLStreamException {
+        SbmlCvTerm cvTerm = null;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if(event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String ns = reader.getNamespaceURI();
+                if(BQBIOL_NS.equals(ns) || BQMODEL_NS.equals(ns)) {
+                    cvTerm = new SbmlCvTerm();
+                    element.addCvTerm(cvTerm);
+                } else if(cvTerm != null && RDF_NS.equals(ns) && "li".equals(reader.getLocalName())) {
+                    String resource = reader.getAttributeValue(RDF_NS, "resource");
+                    if(resource != null) {
+                        cvTerm.addResource(pool.get(resource));
+                    }
+                }
+            } else if(event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                String ns = reader.getNamespaceURI();
+                if(BQBIOL_NS.equals(ns) || BQMODEL_NS.equals(ns)) {
+                    cvTerm = null;
+                }
+            }
+        }
+    }
+
+    /*
+     * Skips the current element (the cursor is at its start tag) with all its content.
+     */
+    private void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if(event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if(event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return (value == null || value.isEmpty()) ? null : pool.get(value);
+    }
+
+    private static int sboTerm(XMLStreamReader reader) {
+        // e.g. sboTerm="SBO:0000176"
+        String sbo = reader.getAttributeValue(null, "sboTerm");
+        if(sbo != null && !sbo.isEmpty()) {
+            try {
+                return Integer.parseInt(sbo.substring(sbo.indexOf(':') + 1));
+            } catch (NumberFormatException e) {
+                log.warn("Cannot parse the SBO term: " + sbo);
+            }
+        }
+        return -1;
+    }
+}
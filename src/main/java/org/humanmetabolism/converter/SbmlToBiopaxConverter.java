@@ -1,5 +1,6 @@
 package org.humanmetabolism.converter;
 
+import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.Model;
 import org.biopax.paxtools.model.level3.*;
 import org.sbml.jsbml.*;
@@ -10,11 +11,41 @@ import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class SbmlToBiopaxConverter {
     private static Logger log = LoggerFactory.getLogger(SbmlToBiopaxConverter.class);
+    // reactions are prepared in parallel and then linked in batches of this size (per thread)
+    private static final int BATCH_SIZE_PER_THREAD = 256;
     private final SbmlToBiopaxUtils sbmlToBiopaxUtils = new SbmlToBiopaxUtils();
     private boolean makePathway = false;
+    private boolean streaming = false;
+    private int parallelism = 1;
+    private CountingCache<String, PhysicalEntity> speciesCache;
+    private Consumer<BioPAXElement> completedElementConsumer;
+    private ConversionMetrics metrics;
+    private ReactionIndex previousIndex;
+    private Path previousOutput;
+    private ReactionIndex reactionIndex;
+    private IncrementalOutput output;
+    private ReactionFilter reactionFilter;
+    private ModelCache cache;
 
     public void biopaxModelXmlBase(String xmlBase) {
         sbmlToBiopaxUtils.setXmlBase(xmlBase);
@@ -32,12 +63,227 @@ public class SbmlToBiopaxConverter {
         this.makePathway = makePathway;
     }
 
+    /**
+     * Whether to read the SBML file/stream with a StAX cursor and convert each reaction
+     * as soon as it is parsed, instead of loading the whole JSBML document first.
+     * Only compact species and compartment descriptors are kept in memory then.
+     * The result is the same as of the in-memory conversion.
+     *
+     * @return true/false
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Number of threads to convert reactions with (default: 1).
+     * When greater than one, the reactions' BioPAX objects are created concurrently
+     * (each URI - exactly once) by a fork-join pool, and then linked in the SBML order,
+     * so that the result does not depend on the number of threads.
+     *
+     * @return number of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+    public void setParallelism(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the callback that gets the BioPAX objects that are complete
+     * and won't change anymore during the conversion, i.e. each Conversion and its Controls,
+     * as soon as the SBML reaction is converted, e.g. to write them out right away
+     * (see {@link OwlStreamWriter}). The rest of the model is only complete when the conversion ends.
+     *
+     * @param completedElementConsumer callback or null
+     */
+    public void setCompletedElementConsumer(Consumer<BioPAXElement> completedElementConsumer) {
+        this.completedElementConsumer = completedElementConsumer;
+    }
+
+    /**
+     * Gets the species conversion cache (with hit/miss counters) of the last conversion:
+     * a species is converted once, when first used as a reactant, product or modifier.
+     *
+     * @return cache or null (if there was no conversion yet)
+     */
+    public CountingCache<String, PhysicalEntity> getSpeciesCache() {
+        return speciesCache;
+    }
+
+    /**
+     * Sets the metrics to collect the next conversions' phase times, allocations and counts to
+     * (the phases are: parse, provenance, reactions, species, postprocess;
+     * and the time of each post-processing step - postprocess.ComplexResolver, etc.)
+     *
+     * @param metrics metrics or null (default - no instrumentation)
+     */
+    public void setMetrics(ConversionMetrics metrics) {
+        this.metrics = metrics;
+        sbmlToBiopaxUtils.setMetrics(metrics);
+    }
+
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the previous output file and its index, to only convert what has changed next time:
+     * the added and modified reactions, and the output units (see {@link OutputUnits}) which signatures differ,
+     * i.e. the species, compartments and complexes these are made of. The conversion result is then only
+     * the changes; {@link #writeRemaining(OwlStreamWriter)} copies the rest from the previous output,
+     * so that the output is the same as of converting everything.
+     * The base is ignored if it was made with other settings (xml:base, pathway, filter) or of another model,
+     * if the file is not the one indexed (see {@link ReactionIndex#getOutputSize()}), and with an integrity checker;
+     * it is used once, by the next conversion.
+     *
+     * @param previousIndex the previous output's index (see {@link #getReactionIndex()}), or null
+     * @param previousOutput the previous output (RDF/XML written by {@link OwlStreamWriter}), or null
+     */
+    public void setIncrementalBase(ReactionIndex previousIndex, Path previousOutput) {
+        this.previousIndex = previousIndex;
+        this.previousOutput = previousOutput;
+    }
+
+    /**
+     * Writes the last conversion result but the interactions the completed element consumer got
+     * (see {@link OwlStreamWriter#writeRemaining(Model)}); after an incremental conversion - the whole output:
+     * the unchanged objects are copied from the previous output, and the converted ones are merged in.
+     * If the writer records the ranges, the objects' ranges and units are added to the reaction index
+     * (for the next incremental conversion).
+     *
+     * @param owlWriter writer
+     * @throws IOException when cannot read the previous output or write
+     */
+    public void writeRemaining(OwlStreamWriter owlWriter) throws IOException {
+        if(output == null) {
+            throw new IllegalStateException("Nothing converted yet");
+        }
+        output.write(owlWriter);
+    }
+
+    /**
+     * Gets the species and reaction content hashes of the last conversion,
+     * and the interactions made of each reaction (save it to convert the next version incrementally).
+     *
+     * @return index or null (if there was no conversion yet)
+     */
+    public ReactionIndex getReactionIndex() {
+        return reactionIndex;
+    }
+
+    /**
+     * Sets the filter that selects the SBML reactions to convert; the rest of the reactions are skipped
+     * before any of their BioPAX objects is created, so that the result only contains
+     * the selected reactions and the species, locations, xrefs, etc. these use.
+     *
+     * @param reactionFilter filter, or null (default - all the reactions)
+     */
+    public void setReactionFilter(ReactionFilter reactionFilter) {
+        this.reactionFilter = reactionFilter;
+    }
+
+    public ReactionFilter getReactionFilter() {
+        return reactionFilter;
+    }
+
+    /**
+     * Sets the structural integrity checker (see {@link IntegrityChecker}) that records the issues
+     * as the objects are created and post-processed; in the strict mode, the conversion fails on the first one.
+     * The model cache is not used while checking (a cached model would not be checked).
+     *
+     * @param integrityChecker checker or null (default - no checks)
+     */
+    public void setIntegrityChecker(IntegrityChecker integrityChecker) {
+        sbmlToBiopaxUtils.setIntegrityChecker(integrityChecker);
+    }
+
+    public IntegrityChecker getIntegrityChecker() {
+        return sbmlToBiopaxUtils.getIntegrityChecker();
+    }
+
+    /**
+     * Sets the on-disk cache of the converted models: converting a file with the same content
+     * and settings again then returns the cached model instead (without parsing the SBML).
+     * Only the file conversions use the cache, and not when there is an incremental base or an integrity checker.
+     * On a cache hit, the completed element consumer is not called, and there is no reaction index.
+     *
+     * @param cache cache or null (default - no cache)
+     */
+    public void setCache(ModelCache cache) {
+        this.cache = cache;
+    }
+
+    public ModelCache getCache() {
+        return cache;
+    }
+
+    private String settings() {
+        String settings = "xmlBase=" + sbmlToBiopaxUtils.getXmlBase() + " pathway=" + makePathway;
+        return (reactionFilter == null || reactionFilter.isEmpty()) ? settings
+                : settings + " filter=" + reactionFilter;
+    }
+
     public Model convert(InputStream sbmlInputStream) throws XMLStreamException {
-        return convert(SBMLReader.read(sbmlInputStream));
+        if(streaming) {
+            // the other phases happen while parsing
+            try (ModelBuilder modelBuilder = new ModelBuilder();
+                 ConversionMetrics.Timer timer = ConversionMetrics.time(metrics, "parse")) {
+                new SbmlStreamReader(modelBuilder, modelBuilder.getStringPool()).read(sbmlInputStream);
+                return modelBuilder.getModel();
+            }
+        }
+        SBMLDocument sbmlDocument;
+        try (ConversionMetrics.Timer timer = ConversionMetrics.time(metrics, "parse")) {
+            sbmlDocument = SBMLReader.read(sbmlInputStream);
+        }
+        return convert(sbmlDocument);
     }
 
     public Model convert(File sbmlFile) throws XMLStreamException, IOException {
-        return convert(SBMLReader.read(sbmlFile));
+        if(cache == null || previousIndex != null || getIntegrityChecker() != null) {
+            return convertFile(sbmlFile);
+        }
+        String key;
+        Model bpModel;
+        try (ConversionMetrics.Timer timer = ConversionMetrics.time(metrics, "cache")) {
+            key = cache.key(sbmlFile.toPath(), settings());
+            bpModel = cache.get(key);
+        }
+        if(bpModel != null) {
+            log.info("Using the cached model " + key + " (" + cache.getDir() + ")");
+            reactionIndex = null;
+            output = new IncrementalOutput(bpModel, null, null, Collections.emptySet());
+            if(metrics != null) {
+                metrics.set("cacheHit", true);
+                metrics.countObjects(bpModel);
+            }
+            return bpModel;
+        }
+        bpModel = convertFile(sbmlFile);
+        try (ConversionMetrics.Timer timer = ConversionMetrics.time(metrics, "cache")) {
+            cache.put(key, bpModel);
+        }
+        if(metrics != null) {
+            metrics.set("cacheHit", false);
+        }
+        return bpModel;
+    }
+
+    /*
+     * (the file can be compressed - see InputFiles)
+     */
+    private Model convertFile(File sbmlFile) throws XMLStreamException, IOException {
+        try (InputStream inputStream = InputFiles.open(sbmlFile.toPath())) {
+            return convert(inputStream);
+        }
     }
 
     public Model convert(SBMLDocument sbmlDocument) {
@@ -45,75 +291,440 @@ public class SbmlToBiopaxConverter {
     }
 
     private Model convert(org.sbml.jsbml.Model sbmlModel) {
-        Model bpModel = sbmlToBiopaxUtils.createModel();
+        try (ModelBuilder modelBuilder = new ModelBuilder()) {
+            modelBuilder.startModel(SbmlElements.element(sbmlModel));
+            for (Compartment compartment : sbmlModel.getListOfCompartments()) {
+                modelBuilder.compartment(SbmlElements.element(compartment));
+            }
+            for (SbmlSpecies species : modelBuilder.map(sbmlModel.getListOfSpecies(), SbmlElements::species)) {
+                modelBuilder.species(species);
+            }
+            ListOf<Reaction> sbmlReactions = sbmlModel.getListOfReactions();
+            log.info("There are " + sbmlReactions.size() + " reactions in the SBML model. ");
+            for (SbmlReaction reaction : modelBuilder.map(sbmlReactions, SbmlElements::reaction)) {
+                modelBuilder.reaction(reaction);
+            }
+            modelBuilder.endModel();
+            return modelBuilder.getModel();
+        }
+    }
+
+    /*
+     * Builds the BioPAX model from the SBML model parts, whichever way these were read.
+     */
+    private class ModelBuilder implements SbmlModelHandler, AutoCloseable {
+        private final Map<String, SbmlElement> compartments = new HashMap<>();
+        private final Map<String, SbmlSpecies> speciesMap = new HashMap<>();
+        private final ForkJoinPool pool;
+        private final List<SbmlReaction> batch = new ArrayList<>();
+        private final CountingCache<String, PhysicalEntity> speciesCache = new CountingCache<>("species");
+        private final Set<String> preparedSpecies = ConcurrentHashMap.newKeySet();
+        private final StringPool stringPool = new StringPool();
+        private final Map<String, String> speciesHashes = new HashMap<>();
+        private final Map<String, String> reactionHashes = new HashMap<>();
+        private final ReactionIndex index = new ReactionIndex(settings());
+        // the previous index and output, when converting the changes only, or null
+        private ReactionIndex base;
+        private final Path previousOutput;
+        private OutputUnits units;
+        // the data source, organism and pathway URIs
+        private final Set<String> globals = new LinkedHashSet<>();
+        // (incremental) the accepted reactions, the changed ones, and the units to convert
+        private final List<String> reactionIds = new ArrayList<>();
+        private final List<SbmlReaction> changed = new ArrayList<>();
+        private final Set<String> changedUnits = new LinkedHashSet<>();
+        private Model bpModel;
+        private Pathway pathway;
+        private int reactions;
+        private int reused;
+        private int skipped;
+        // the whole reactions loop is one phase; the species conversions (many, short) are summed up here
+        private ConversionMetrics.Timer reactionsTimer;
+        private long speciesNanos;
+        private int speciesConverted;
+
+        ModelBuilder() {
+            pool = (parallelism > 1) ? new ForkJoinPool(parallelism, this::newWorker, null, false) : null;
+            SbmlToBiopaxConverter.this.speciesCache = speciesCache;
+            SbmlToBiopaxConverter.this.reactionIndex = index;
+            SbmlToBiopaxConverter.this.output = null;
+            previousOutput = SbmlToBiopaxConverter.this.previousOutput;
+            base = usableBase(previousIndex);
+            previousIndex = null;
+            SbmlToBiopaxConverter.this.previousOutput = null;
+        }
+
+        /*
+         * The previous index, if the previous output can be updated, or null.
+         */
+        private ReactionIndex usableBase(ReactionIndex previous) {
+            if(previous == null) {
+                return null;
+            }
+            String reason = null;
+            try {
+                if(!previous.getSettings().equals(settings())) {
+                    reason = "converted with other settings";
+                } else if(getIntegrityChecker() != null) {
+                    reason = "the integrity checks need the whole model";
+                } else if(previousOutput == null || !Files.isRegularFile(previousOutput)
+                        || Files.size(previousOutput) != previous.getOutputSize()) {
+                    reason = "the output is not the one indexed";
+                } else if(previous.getObjects().values().stream()
+                        .anyMatch(block -> OutputUnits.UNKNOWN.equals(block.getUnit()))) {
+                    reason = "the output has objects the index does not account for";
+                }
+            } catch (IOException e) {
+                reason = e.toString();
+            }
+            if(reason != null) {
+                log.warn("Not updating the previous output (" + reason + "); converting everything");
+                return null;
+            }
+            return previous;
+        }
+
+        /*
+         * A pool worker, which allocations count as this conversion's.
+         */
+        private ForkJoinWorkerThread newWorker(ForkJoinPool forkJoinPool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            if(metrics != null) {
+                metrics.addThread(thread);
+            }
+            return thread;
+        }
+
+        /*
+         * Maps the items in parallel (when enabled), keeping the order.
+         */
+        <S, T> List<T> map(List<S> items, Function<S, T> function) {
+            if(pool == null) {
+                return items.stream().map(function).collect(Collectors.toList());
+            }
+            return pool.submit(() -> items.parallelStream().map(function).collect(Collectors.toList())).join();
+        }
+
+        Model getModel() {
+            return bpModel;
+        }
+
+        StringPool getStringPool() {
+            return stringPool;
+        }
+
+        @Override
+        public void startModel(SbmlElement sbmlModel) {
+            try (ConversionMetrics.Timer timer = ConversionMetrics.time(metrics, "provenance")) {
+                createModel(sbmlModel);
+            }
+        }
+
+        private void createModel(SbmlElement sbmlModel) {
+            bpModel = sbmlToBiopaxUtils.createModel(stringPool);
+            index.setModelId(sbmlModel.getId());
+            if(base != null && !Objects.equals(base.getModelId(), sbmlModel.getId())) {
+                log.warn("Not updating the previous output (of another model); converting everything");
+                base = null;
+            }
+            units = new OutputUnits(sbmlToBiopaxUtils.getXmlBase(), speciesMap, speciesHashes, compartments);
+            // the data source and organism are then set to the new objects as these are created
+            globals.add(sbmlToBiopaxUtils.convertProvenance(bpModel, sbmlModel).getUri());
+            globals.add(sbmlToBiopaxUtils.createOrganism(bpModel).getUri());
+            // create a Pathway that corresponds to this SBML model (optional)
+            if(makePathway) {
+                pathway = sbmlToBiopaxUtils.convertPathway(bpModel, sbmlModel);
+                globals.add(pathway.getUri());
+            }
+        }
+
+        @Override
+        public void compartment(SbmlElement compartment) {
+            compartments.put(compartment.getId(), compartment);
+        }
+
+        @Override
+        public void species(SbmlSpecies species) {
+            speciesMap.put(species.getId(), species);
+            String hash = ReactionIndex.hash(species, compartments.get(species.getCompartment()));
+            speciesHashes.put(species.getId(), hash);
+            index.putSpecies(species.getId(), hash);
+        }
+
+        @Override
+        public void reaction(SbmlReaction reaction) {
+            if(reactionsTimer == null) {
+                reactionsTimer = ConversionMetrics.time(metrics, "reactions");
+            }
+            if(reactionFilter != null && !reactionFilter.accept(reaction, speciesMap)) {
+                skipped++;
+                return;
+            }
+            reactions++;
+            // (in the order the conversion uses the species)
+            for (SbmlModifier modifier : reaction.getModifiers()) {
+                units.use(modifier.getSpecies());
+            }
+            for (String reactant : reaction.getReactants()) {
+                units.use(reactant);
+            }
+            for (String product : reaction.getProducts()) {
+                units.use(product);
+            }
+            String hash = ReactionIndex.hash(reaction, speciesHashes);
+            if(base != null) {
+                reuseOrDefer(reaction, hash);
+                return;
+            }
+            reactionHashes.put(reaction.getId(), hash);
+            if(pool == null) {
+                convertReaction(reaction);
+            } else {
+                batch.add(reaction);
+                if(batch.size() >= BATCH_SIZE_PER_THREAD * parallelism) {
+                    convertBatch();
+                }
+            }
+        }
+
+        /*
+         * Keeps the previous interactions of the reaction if it has not changed (these are copied
+         * from the previous output), or converts it at the end (when the units to convert are known).
+         */
+        private void reuseOrDefer(SbmlReaction reaction, String hash) {
+            reactionIds.add(reaction.getId());
+            ReactionIndex.Entry entry = base.getReaction(reaction.getId());
+            if(entry != null && entry.getHash().equals(hash)) {
+                index.putReaction(reaction.getId(), hash, entry.getUris());
+                if(makePathway) {
+                    for (String uri : entry.getUris()) {
+                        sbmlToBiopaxUtils.addPathwayComponent(pathway, uri);
+                    }
+                }
+                reused++;
+            } else {
+                reactionHashes.put(reaction.getId(), hash);
+                changed.add(reaction);
+            }
+        }
+
+        /*
+         * Converts the changed units' species (and those these depend on) in the order of first use,
+         * and then the changed reactions.
+         */
+        private void convertChanges() {
+            Map<String, String> signatures = units.getSignatures();
+            for (Map.Entry<String, String> entry : signatures.entrySet()) {
+                if(!entry.getValue().equals(base.getSignature(entry.getKey()))) {
+                    changedUnits.add(entry.getKey());
+                }
+            }
+            Set<String> participants = new HashSet<>();
+            for (SbmlReaction reaction : changed) {
+                for (SbmlModifier modifier : reaction.getModifiers()) {
+                    participants.add(modifier.getSpecies());
+                }
+                participants.addAll(reaction.getReactants());
+                participants.addAll(reaction.getProducts());
+            }
+            for (String speciesId : units.getSpeciesToConvert(changedUnits, participants)) {
+                convertSpecies(speciesId);
+            }
+            for (SbmlReaction reaction : changed) {
+                convertReaction(reaction);
+            }
+            log.info("Reused " + reused + " unchanged reactions; converting " + changedUnits.size()
+                    + " of " + signatures.size() + " output units");
+        }
+
+        /*
+         * Creates the batch reactions' objects in parallel and then links them one reaction after another.
+         */
+        private void convertBatch() {
+            BiopaxElementRegistry registry = sbmlToBiopaxUtils.registry(bpModel);
+            registry.setDeferred(true);
+            try {
+                pool.submit(() -> batch.parallelStream().forEach(this::prepareReaction)).join();
+            } finally {
+                registry.setDeferred(false);
+            }
+            for (SbmlReaction reaction : batch) {
+                convertReaction(reaction);
+            }
+            batch.clear();
+        }
 
-        final Provenance provenance = sbmlToBiopaxUtils.convertProvenance(bpModel, sbmlModel);
+        private void prepareReaction(SbmlReaction reaction) {
+            sbmlToBiopaxUtils.prepareReaction(bpModel, reaction);
+            for (SbmlModifier modifierSpeciesReference : reaction.getModifiers()) {
+                sbmlToBiopaxUtils.prepareModifier(bpModel, modifierSpeciesReference);
+                prepareSpecies(modifierSpeciesReference.getSpecies());
+            }
+            for (String reactant : reaction.getReactants()) {
+                prepareSpecies(reactant);
+            }
+            for (String product : reaction.getProducts()) {
+                prepareSpecies(product);
+            }
+        }
 
-        // create a Pathway that corresponds to this SBML model (optional)
-        Pathway pathway = null;
-        if(makePathway)
-            pathway = sbmlToBiopaxUtils.convertPathway(bpModel, sbmlModel);
+        private void prepareSpecies(String speciesId) {
+            // once per species (cf. the species cache)
+            if(!preparedSpecies.add(speciesId)) {
+                return;
+            }
+            SbmlSpecies species = getSpecies(speciesId);
+            sbmlToBiopaxUtils.prepareSpecies(bpModel, species, compartments.get(species.getCompartment()));
+        }
 
-        // Reactions -> Conversions [start]
-        ListOf<Reaction> sbmlReactions = sbmlModel.getListOfReactions();
-        log.info("There are " + sbmlReactions.size() + " reactions in the SBML model. ");
-        // iterate over reactions and convert them one by one.
-        for (Reaction reaction : sbmlReactions) {
+        private void convertReaction(SbmlReaction reaction) {
             log.trace("Working on reaction conversion: " + reaction.getName());
             Conversion conversion = sbmlToBiopaxUtils.convertReaction(bpModel, reaction);
             if(makePathway) pathway.addPathwayComponent(conversion);
 
             // Modifiers -> Control reactions [start]
-            ListOf<ModifierSpeciesReference> listOfModifiers = reaction.getListOfModifiers();
-            log.debug("- There are " + listOfModifiers.size() + " modifiers to this reaction. " +
+            log.debug("- There are " + reaction.getModifiers().size() + " modifiers to this reaction. " +
                     "Converting them to controls to this reaction.");
-
-            for (ModifierSpeciesReference modifierSpeciesReference : listOfModifiers) {
+            List<Control> controls = new ArrayList<>(reaction.getModifiers().size());
+            for (SbmlModifier modifierSpeciesReference : reaction.getModifiers()) {
                 Control control = sbmlToBiopaxUtils.convertModifier(bpModel, modifierSpeciesReference);
                 if(makePathway) pathway.addPathwayComponent(control);
                 control.addControlled(conversion);
-                Species species = sbmlModel.getSpecies(modifierSpeciesReference.getSpecies());
-                Controller controller = sbmlToBiopaxUtils.convertSpecies(bpModel, species);
+                Controller controller = convertSpecies(modifierSpeciesReference.getSpecies());
                 control.addController(controller);
+                controls.add(control);
             }
             // Modifiers -> Controls [end]
 
             // Reactants -> Left Participants [start]
-            ListOf<SpeciesReference> listOfReactants = reaction.getListOfReactants();
-            log.debug("- There are " + listOfReactants.size() + " reactants to this reaction. " +
+            log.debug("- There are " + reaction.getReactants().size() + " reactants to this reaction. " +
                     "Adding them to the reaction as left participants.");
-            for (SpeciesReference reactantRef : listOfReactants) {
-                Species species = sbmlModel.getSpecies(reactantRef.getSpecies());
-                PhysicalEntity physicalEntity = sbmlToBiopaxUtils.convertSpecies(bpModel, species);
-                conversion.addLeft(physicalEntity);
+            for (String reactant : reaction.getReactants()) {
+                conversion.addLeft(convertSpecies(reactant));
             }
             // Reactants -> Left Participants [end]
 
             // Products -> Right Participants [start]
-            ListOf<SpeciesReference> listOfProducts = reaction.getListOfProducts();
-            log.debug("- There are " + listOfProducts.size() + " products to this reaction. " +
+            log.debug("- There are " + reaction.getProducts().size() + " products to this reaction. " +
                     "Adding them to the reaction as right participants.");
-            for (SpeciesReference productRef : listOfProducts) {
-                Species species = sbmlModel.getSpecies(productRef.getSpecies());
-                PhysicalEntity physicalEntity = sbmlToBiopaxUtils.convertSpecies(bpModel, species);
-                conversion.addRight(physicalEntity);
+            for (String product : reaction.getProducts()) {
+                conversion.addRight(convertSpecies(product));
             }
             // Products -> Right Participants [end]
+
+            if(sbmlToBiopaxUtils.getIntegrityChecker() != null) {
+                sbmlToBiopaxUtils.getIntegrityChecker().checkReaction(conversion, controls);
+            }
+
+            List<String> uris = new ArrayList<>(controls.size() + 1);
+            uris.add(conversion.getUri());
+            for (Control control : controls) {
+                uris.add(control.getUri());
+            }
+            index.putReaction(reaction.getId(), reactionHashes.remove(reaction.getId()), uris);
+
+            if(completedElementConsumer != null && base == null) {
+                // these won't change anymore (the data source was set on creation)
+                completedElementConsumer.accept(conversion);
+                for (Control control : controls) {
+                    completedElementConsumer.accept(control);
+                }
+            }
+        }
+
+        /*
+         * Converts each species only once; the same object is then reused
+         * for all the reactions where the species is a reactant, product or modifier.
+         */
+        private PhysicalEntity convertSpecies(String speciesId) {
+            return speciesCache.get(speciesId, id -> {
+                SbmlSpecies species = getSpecies(id);
+                long start = System.nanoTime();
+                try {
+                    return sbmlToBiopaxUtils.convertSpecies(bpModel, species,
+                            compartments.get(species.getCompartment()));
+                } finally {
+                    speciesNanos += System.nanoTime() - start;
+                    speciesConverted++;
+                }
+            });
         }
-        // Reactions -> Conversions [end]
 
-        // The process above leaves some of the complexes empty. We need to fix this.
-        sbmlToBiopaxUtils.fillComplexes(bpModel);
+        private SbmlSpecies getSpecies(String speciesId) {
+            SbmlSpecies species = speciesMap.get(speciesId);
+            if(species == null) {
+                throw new IllegalArgumentException("Undefined SBML species: " + speciesId);
+            }
+            return species;
+        }
 
-        // Let's assign organism to where applicable
-        sbmlToBiopaxUtils.assignOrganism(bpModel);
+        @Override
+        public void endModel() {
+            if(!batch.isEmpty()) {
+                convertBatch();
+            }
+            units.complete();
+            if(base != null) {
+                convertChanges();
+            }
+            if(reactionsTimer != null) {
+                reactionsTimer.close();
+                reactionsTimer = null;
+            }
+            if(metrics != null && speciesConverted > 0) {
+                metrics.addTime("species", speciesNanos, speciesConverted);
+            }
+            log.info("Converted " + (reactions - reused) + " reactions; " + speciesCache + "; " + stringPool);
+            if(skipped > 0) {
+                log.info("Skipped " + skipped + " reactions not selected by the filter: " + reactionFilter);
+            }
 
-        // assign the Provenance to all the Entities in the model
-        for(Entity e : bpModel.getObjects(Entity.class)) {
-            e.addDataSource(provenance);
+            // fill the complexes, set the organism and data source where still missing - in one pass
+            // (over the converted changes only, when incremental)
+            try (ConversionMetrics.Timer timer = ConversionMetrics.time(metrics, "postprocess")) {
+                sbmlToBiopaxUtils.postProcess(bpModel, pool,
+                        (base != null) ? units.getComplexes(changedUnits) : null);
+            }
+            output = (base != null)
+                    ? new IncrementalOutput(bpModel, index, units, globals, base, previousOutput, reactionIds, changedUnits)
+                    : new IncrementalOutput(bpModel, index, units, globals);
+
+            if(metrics != null) {
+                collectMetrics();
+            }
         }
 
-        return bpModel;
-    }
+        private void collectMetrics() {
+            metrics.set("reactions", reactions);
+            metrics.set("reactionsReused", reused);
+            metrics.set("reactionsSkipped", skipped);
+            metrics.set("species", speciesMap.size());
+            metrics.set("speciesCacheHits", speciesCache.getHits());
+            metrics.set("speciesCacheMisses", speciesCache.getMisses());
+            XrefRegistry xrefRegistry = sbmlToBiopaxUtils.xrefRegistry(bpModel);
+            metrics.set("xrefRequests", xrefRegistry.getRequestCount());
+            metrics.set("xrefsDistinct", xrefRegistry.size());
+            ComplexResolver complexResolver = sbmlToBiopaxUtils.getComplexResolver();
+            metrics.set("complexes", complexResolver.getComplexCount());
+            metrics.set("complexComponentsByXref", complexResolver.getMatchedCount());
+            metrics.set("complexComponentsBySymbol", complexResolver.getSymbolMatchedCount());
+            metrics.set("complexComponentsSymbolFallback", complexResolver.getSymbolCreatedCount());
+            metrics.set("stringPoolRequests", stringPool.getRequests());
+            metrics.set("stringPoolDuplicates", stringPool.getHits());
+            metrics.set("stringPoolSavedBytes", stringPool.getSavedBytes());
+            metrics.set("parallelism", parallelism);
+            metrics.set("streaming", streaming);
+            metrics.countObjects(bpModel);
+            if(sbmlToBiopaxUtils.getIntegrityChecker() != null) {
+                sbmlToBiopaxUtils.getIntegrityChecker().addTo(metrics);
+            }
+        }
 
+        @Override
+        public void close() {
+            if(pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
 }
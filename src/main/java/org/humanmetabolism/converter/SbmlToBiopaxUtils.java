@@ -1,6 +1,7 @@
 package org.humanmetabolism.converter;
 
 import org.apache.commons.lang3.StringUtils;
+import org.biopax.paxtools.model.BioPAXElement;
 import org.biopax.paxtools.model.BioPAXFactory;
 import org.biopax.paxtools.model.BioPAXLevel;
 import org.biopax.paxtools.model.Model;
@@ -9,16 +10,22 @@ import org.sbml.jsbml.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.stream.XMLStreamException;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class SbmlToBiopaxUtils {
     private static Logger log = LoggerFactory.getLogger(SbmlToBiopaxUtils.class);
 
     private BioPAXFactory bioPAXFactory;
     private String xmlBase;
+    private volatile BiopaxElementRegistry registry;
+    private volatile XrefRegistry xrefRegistry;
+    private volatile Provenance dataSource;
+    private volatile BioSource organism;
+    private ComplexResolver complexResolver;
+    private IntegrityChecker integrityChecker;
+    private ConversionMetrics metrics;
+    private volatile UriFactory uriFactory = new UriFactory("", new StringPool());
 
     public SbmlToBiopaxUtils() {
         this.xmlBase = "";
@@ -31,13 +38,50 @@ public class SbmlToBiopaxUtils {
 
     public void setXmlBase(String xmlBase) {
         this.xmlBase = (StringUtils.isBlank(xmlBase)) ? "" : xmlBase;
+        this.uriFactory = new UriFactory(this.xmlBase, uriFactory.getPool());
     }
 
     public String completeId(String partialId) {
-        return getXmlBase() + partialId;
+        return uriFactory.uri(partialId);
+    }
+
+    /**
+     * Sets the checker to record the structural issues of the new objects with
+     * (when converting species, and when post-processing the model).
+     *
+     * @param integrityChecker checker or null (default - no checks)
+     */
+    public void setIntegrityChecker(IntegrityChecker integrityChecker) {
+        this.integrityChecker = integrityChecker;
+    }
+
+    public IntegrityChecker getIntegrityChecker() {
+        return integrityChecker;
+    }
+
+    /**
+     * Sets the metrics to add the post-processing steps' times to (see {@link PostProcessingPipeline}).
+     *
+     * @param metrics metrics or null (default)
+     */
+    public void setMetrics(ConversionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the URI factory (and string pool) of the current conversion.
+     *
+     * @return URI factory
+     */
+    public UriFactory getUriFactory() {
+        return uriFactory;
     }
 
     public Pathway convertPathway(Model bpModel, org.sbml.jsbml.Model sbmlModel) {
+        return convertPathway(bpModel, SbmlElements.element(sbmlModel));
+    }
+
+    public Pathway convertPathway(Model bpModel, SbmlElement sbmlModel) {
         Pathway pathway = createBPEfromSBMLE(bpModel, Pathway.class, sbmlModel);
         for (Xref xref : generateXrefsForSBase(bpModel, RelationshipXref.class, sbmlModel)) {
             pathway.addXref(xref);
@@ -45,31 +89,174 @@ public class SbmlToBiopaxUtils {
         return pathway;
     }
 
+    /**
+     * Adds an interaction that is not in the model (e.g. one kept in the previous output) to the pathway,
+     * as a placeholder with the URI.
+     *
+     * @param pathway pathway
+     * @param uri interaction URI
+     */
+    public void addPathwayComponent(Pathway pathway, String uri) {
+        pathway.addPathwayComponent(bioPAXFactory.create(Interaction.class, uri));
+    }
+
     public Provenance convertProvenance(Model bpModel, org.sbml.jsbml.Model sbmlModel) {
+        return convertProvenance(bpModel, SbmlElements.element(sbmlModel));
+    }
+
+    public Provenance convertProvenance(Model bpModel, SbmlElement sbmlModel) {
         Provenance p = createBPEfromSBMLE(bpModel, Provenance.class, sbmlModel,
                 "bioregistry.io/biomodels.db:" + sbmlModel.getId());
         for (Xref xref : generateXrefsForSBase(bpModel, RelationshipXref.class, sbmlModel)) {
             p.addXref(xref);
         }
-        final UnificationXref x = bpModel.addNew(UnificationXref.class,"biomodels.db:" + sbmlModel.getId());
-        x.setDb("biomodels.db");
-        x.setId(sbmlModel.getId());
+        final UnificationXref x = registry(bpModel).getOrCreate(UnificationXref.class,
+                "biomodels.db:" + sbmlModel.getId(), u -> {
+                    u.setDb("biomodels.db");
+                    u.setId(sbmlModel.getId());
+                });
         p.addXref(x);
 
+        // from now on, set as the data source of every new Entity
+        dataSource = p;
+
         return p;
     }
 
+    /**
+     * Creates the organism (BioSource), which from now on is also set
+     * to every new sequence entity reference, gene and pathway.
+     *
+     * @param bpModel BioPAX model
+     * @return Homo sapiens
+     */
+    public BioSource createOrganism(Model bpModel) {
+        // Since this is RECON2, everything is human
+        BioSource bioSource = registry(bpModel).getOrCreate(BioSource.class, "bioregistry.io/ncbitaxon:9606", b -> {
+            b.setDisplayName("Homo sapiens");
+            b.setStandardName("Homo sapiens");
+        });
+        if(bioSource.getXref().isEmpty()) {
+            bioSource.addXref(xrefRegistry(bpModel).getOrCreate(UnificationXref.class, "ncbitaxon", "9606"));
+        }
+        organism = bioSource;
+        return bioSource;
+    }
+
     public Model createModel() {
+        return createModel(new StringPool());
+    }
+
+    /**
+     * Creates a new BioPAX model for a conversion.
+     *
+     * @param pool strings pool for the conversion (e.g. also used when reading the SBML)
+     * @return new model
+     */
+    public Model createModel(StringPool pool) {
+        uriFactory = new UriFactory(getXmlBase(), pool);
         Model model = bioPAXFactory.createModel();
         // This could change, would be great to make this configurable
         model.setXmlBase(getXmlBase());
+        registry = new BiopaxElementRegistry(bioPAXFactory, model);
+        registry.setAttachListener(this::setDefaults);
+        dataSource = null;
+        organism = null;
         return model;
     }
 
+    /*
+     * Sets the data source and organism to a new object
+     * (so that there is no need in extra passes over the whole model later).
+     */
+    private void setDefaults(BioPAXElement element) {
+        Provenance provenance = dataSource;
+        if(provenance != null && element instanceof Entity) {
+            ((Entity) element).addDataSource(provenance);
+        }
+        BioSource bioSource = organism;
+        if(bioSource != null) {
+            if(element instanceof SequenceEntityReference) {
+                ((SequenceEntityReference) element).setOrganism(bioSource);
+            } else if(element instanceof Gene) {
+                ((Gene) element).setOrganism(bioSource);
+            } else if(element instanceof Pathway) {
+                ((Pathway) element).setOrganism(bioSource);
+            }
+        }
+    }
+
+    /**
+     * Gets the thread-safe get-or-create registry of the model's elements
+     * (a new one unless the model was made by {@link #createModel()} or seen before).
+     *
+     * @param bpModel BioPAX model
+     * @return registry
+     */
+    public BiopaxElementRegistry registry(Model bpModel) {
+        BiopaxElementRegistry r = registry;
+        if(r == null || r.getModel() != bpModel) {
+            synchronized (this) {
+                r = registry;
+                if(r == null || r.getModel() != bpModel) {
+                    r = new BiopaxElementRegistry(bioPAXFactory, bpModel);
+                    registry = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Gets the canonical xrefs registry of the model.
+     *
+     * @param bpModel BioPAX model
+     * @return xref registry
+     */
+    public XrefRegistry xrefRegistry(Model bpModel) {
+        XrefRegistry r = xrefRegistry;
+        if(r == null || r.getModel() != bpModel) {
+            synchronized (this) {
+                r = xrefRegistry;
+                if(r == null || r.getModel() != bpModel) {
+                    r = new XrefRegistry(registry(bpModel), getXmlBase());
+                    xrefRegistry = r;
+                }
+            }
+        }
+        return r;
+    }
+
     public Conversion convertReaction(Model bpModel, Reaction reaction) {
+        return convertReaction(bpModel, SbmlElements.reaction(reaction));
+    }
+
+    public Conversion convertReaction(Model bpModel, SbmlReaction reaction) {
+        Conversion conversion = createConversion(bpModel, reaction);
+        for (Xref xref : generateXrefsForSBase(bpModel, RelationshipXref.class, reaction)) {
+            conversion.addXref(xref);
+        }
+
+        return conversion;
+    }
+
+    /**
+     * Creates (registers) the reaction's Conversion and xrefs without linking them
+     * to other objects, which is safe to call concurrently (for different reactions)
+     * before {@link #convertReaction(Model, SbmlReaction)} is called for the same reaction.
+     *
+     * @param bpModel BioPAX model
+     * @param reaction SBML reaction
+     */
+    public void prepareReaction(Model bpModel, SbmlReaction reaction) {
+        createConversion(bpModel, reaction);
+        generateXrefsForSBase(bpModel, RelationshipXref.class, reaction);
+    }
+
+    private Conversion createConversion(Model bpModel, SbmlReaction reaction) {
         Class<? extends Conversion> rxnClass;
         // Extend this switch with further SBO terms as needed
-        switch (reaction.getSBOTerm()) {
+        switch (reaction.getSboTerm()) {
             case 185: // Transport reaction
                 rxnClass = Transport.class;
                 break;
@@ -81,32 +268,90 @@ public class SbmlToBiopaxUtils {
 
         Conversion conversion = createBPEfromSBMLE(bpModel, rxnClass, reaction);
         conversion.setConversionDirection(
-                reaction.getReversible()
+                reaction.isReversible()
                         ? ConversionDirectionType.REVERSIBLE
                         : ConversionDirectionType.LEFT_TO_RIGHT
         );
-
-        for (Xref xref : generateXrefsForSBase(bpModel, RelationshipXref.class, reaction)) {
-            conversion.addXref(xref);
+        if(conversion instanceof BiochemicalReaction) {
+            for (String ec : ecNumbers(reaction.getNotesField("EC Number"))) {
+                ((BiochemicalReaction) conversion).addECNumber(ec);
+            }
         }
 
         return conversion;
     }
 
-    public void setNames(AbstractNamedSBase namedSBase, Named named) {
-        String name = namedSBase.getName();
-        if(name == null || name.toLowerCase().equals("null")) {
-            name = "N/A";
+    /*
+     * Gets the EC numbers (like 1.1.1.1 or 3.4.-.-) from the Recon notes field value,
+     * e.g. "1.1.1.1 or 1.1.1.2", "1.1.1.1; 1.1.1.2", "EC:1.1.1.1".
+     */
+    static List<String> ecNumbers(String value) {
+        if(value == null) {
+            return Collections.emptyList();
+        }
+        List<String> ecNumbers = new ArrayList<>(1);
+        for (String token : value.split("[\\s,;]+")) {
+            if(token.regionMatches(true, 0, "EC:", 0, 3)) {
+                token = token.substring(3);
+            }
+            if(isEcNumber(token)) {
+                ecNumbers.add(token);
+            }
+        }
+        return ecNumbers;
+    }
+
+    // four dot-separated parts, each - a number, '-', or 'n' and a number (e.g. 3.6.1.n1)
+    private static boolean isEcNumber(String s) {
+        String[] parts = s.split("\\.", -1);
+        if(parts.length != 4 || !Character.isDigit(s.charAt(0))) {
+            return false;
+        }
+        for (String part : parts) {
+            if(part.equals("-")) {
+                continue;
+            }
+            int from = part.startsWith("n") ? 1 : 0;
+            if(part.length() == from) {
+                return false;
+            }
+            for (int i = from; i < part.length(); i++) {
+                if(!Character.isDigit(part.charAt(i))) {
+                    return false;
+                }
+            }
         }
+        return true;
+    }
+
+    public void setNames(AbstractNamedSBase namedSBase, Named named) {
+        setNames(SbmlElements.element(namedSBase), named);
+    }
+
+    public void setNames(SbmlElement namedSBase, Named named) {
+        // one instance for all the objects with this name
+        String name = uriFactory.name(displayName(namedSBase));
         named.setStandardName(name);
         named.setDisplayName(name);
         named.getName().add(name);
     }
 
+    /*
+     * The name of the element's BioPAX object ("N/A" if it has none).
+     */
+    static String displayName(SbmlElement namedSBase) {
+        String name = namedSBase.getName();
+        return (name == null || name.toLowerCase().equals("null")) ? "N/A" : name;
+    }
+
     public Control convertModifier(Model bpModel, ModifierSpeciesReference modifierSpeciesReference) {
+        return convertModifier(bpModel, SbmlElements.modifier(modifierSpeciesReference));
+    }
+
+    public Control convertModifier(Model bpModel, SbmlModifier modifierSpeciesReference) {
         // Interesting enough, these reference objects don't have an ID associated with them
-        // That is why we are using hashcodes to generate unique BioPAX ID.
-        String id = completeId("control_" + modifierSpeciesReference.hashCode());
+        // That is why the BioPAX ID is made of the reaction and species IDs.
+        String id = uriFactory.control(modifierSpeciesReference.getReaction(), modifierSpeciesReference.getSpecies());
         Control control = createBPEfromSBMLE(bpModel, Control.class, modifierSpeciesReference, id);
         control.setControlType(ControlType.ACTIVATION);
         return control;
@@ -115,22 +360,28 @@ public class SbmlToBiopaxUtils {
     public <T extends SimplePhysicalEntity, S extends EntityReference> T convertSpeciesToSPE(
         Model bpModel, Class<T> entityClass, Class<S> refClass, Species species)
     {
+        return convertSpeciesToSPE(bpModel, entityClass, refClass, SbmlElements.species(species));
+    }
+
+    public <T extends SimplePhysicalEntity, S extends EntityReference> T convertSpeciesToSPE(
+        Model bpModel, Class<T> entityClass, Class<S> refClass, SbmlSpecies species)
+    {
+        XrefRegistry xrefRegistry = xrefRegistry(bpModel);
         Set<Xref> xrefs = generateXrefsForSBase(bpModel, UnificationXref.class, species);
-        HashSet<XReferrable> ers = new HashSet<>();
+        Set<EntityReference> ers = new LinkedHashSet<>();
         for (Xref xref : xrefs) {
-            for (XReferrable xReferrable : xref.getXrefOf()) {
-                // Only add the entity references
-                if(xReferrable instanceof EntityReference) {
-                    ers.add(xReferrable);
-                }
-            }
+            // entity references that already have this unification xref
+            ers.addAll(xrefRegistry.getEntityReferences(xref));
         }
 
         S reference;
         if(ers.isEmpty()) {
-            reference = createBPEfromSBMLE(bpModel, refClass, species, completeId("ref_" + species.getId()));
+            reference = createBPEfromSBMLE(bpModel, refClass, species, uriFactory.reference(species.getId()));
             for (Xref xref : xrefs) {
-                reference.addXref(xref);
+                xrefRegistry.bind(reference, xref);
+            }
+            if(integrityChecker != null) {
+                integrityChecker.checkReference(reference, xrefs);
             }
         } else if(ers.size() == 1) { // There shouldn't be more than one
             reference = (S) ers.iterator().next();
@@ -151,65 +402,95 @@ public class SbmlToBiopaxUtils {
         // Clean-up non-used xrefs
         for (Xref xref : xrefs) {
             if(xref.getXrefOf().isEmpty()) {
-                bpModel.remove(xref);
+                xrefRegistry.remove(xref);
             }
         }
 
         return entity;
     }
 
-    private <T extends Xref> T resourceToXref(Class<T> xrefClass, String xrefId, String resource) {
-        // Sample miriam resource: urn:miriam:chebi:CHEBI%3A15589
-        String[] tokens = resource.split(":");
-        T xref = bioPAXFactory.create(xrefClass, xrefId);
-        // biomodels.db -> biomodels; ec-code -> ec code
-        String dataBase = tokens[2]
-                .replace(".", " ")
-                .replace("-", " ")
-                .replace(" db", " database")
-                .replace("obo ", "")
-        ;
-        xref.setDb(dataBase);
-        String idToken = tokens[3];
-        try {
-            URI uri = new URI(idToken);
-            xref.setId(uri.getPath());
-        } catch (URISyntaxException e) {
-            log.warn("Problem parsing the URI,  " + idToken + ":" + e.getLocalizedMessage());
-            xref.setId(idToken);
-        }
-
-        return xref;
+    public <T extends Named> T createBPEfromSBMLE(Model bpModel, Class<T> aClass, AbstractNamedSBase abstractNamedSBase) {
+        return createBPEfromSBMLE(bpModel, aClass, SbmlElements.element(abstractNamedSBase));
     }
 
-    public <T extends Named> T createBPEfromSBMLE(Model bpModel, Class<T> aClass, AbstractNamedSBase abstractNamedSBase) {
-        return createBPEfromSBMLE(bpModel, aClass, abstractNamedSBase, completeId(abstractNamedSBase.getId()));
+    public <T extends Named> T createBPEfromSBMLE(Model bpModel, Class<T> aClass, AbstractNamedSBase abstractNamedSBase, String uri) {
+        return createBPEfromSBMLE(bpModel, aClass, SbmlElements.element(abstractNamedSBase), uri);
     }
 
+    public <T extends Named> T createBPEfromSBMLE(Model bpModel, Class<T> aClass, SbmlElement abstractNamedSBase) {
+        return createBPEfromSBMLE(bpModel, aClass, abstractNamedSBase, uriFactory.element(abstractNamedSBase.getId()));
+    }
 
-    public <T extends Named> T createBPEfromSBMLE(Model bpModel, Class<T> aClass, AbstractNamedSBase abstractNamedSBase, String uri) {
-        T entity = (T) bpModel.getByID(uri);
-        if(entity == null) {
-            entity = bpModel.addNew(aClass, uri);
+    public <T extends Named> T createBPEfromSBMLE(Model bpModel, Class<T> aClass, SbmlElement abstractNamedSBase, String uri) {
+        return registry(bpModel).getOrCreate(aClass, uri, entity -> {
             setNames(abstractNamedSBase, entity);
             setComments(abstractNamedSBase, entity);
-        }
-        return entity;
+        });
     }
 
-    private <T extends Named> void setComments(AbstractNamedSBase abstractNamedSBase, T entity) {
-        try {
-            // Strip out html tags
-            entity.addComment(abstractNamedSBase.getNotesString().replaceAll("\\<[^>]*>",""));
-        } catch (XMLStreamException e) {
-            log.warn("Problem parsing the notes XML: " + e.getLocalizedMessage());
+    private <T extends Named> void setComments(SbmlElement abstractNamedSBase, T entity) {
+        // notes text, html tags already stripped; structured notes - a comment per field
+        if(!abstractNamedSBase.getNotesParagraphs().isEmpty()) {
+            for (String paragraph : abstractNamedSBase.getNotesParagraphs()) {
+                entity.addComment(paragraph);
+            }
+        } else if(abstractNamedSBase.getNotes() != null) {
+            entity.addComment(abstractNamedSBase.getNotes());
         }
     }
 
     public PhysicalEntity convertSpecies(Model bpModel, Species species) {
+        return convertSpecies(bpModel, SbmlElements.species(species),
+                SbmlElements.element(species.getCompartmentInstance()));
+    }
+
+    /**
+     * Creates (registers) the species' entity, xrefs and location vocabulary without linking them
+     * to other objects, which is safe to call concurrently before
+     * {@link #convertSpecies(Model, SbmlSpecies, SbmlElement)} is called for the same species.
+     *
+     * @param bpModel BioPAX model
+     * @param species SBML species
+     * @param compartment SBML compartment of the species or null
+     */
+    public void prepareSpecies(Model bpModel, SbmlSpecies species, SbmlElement compartment) {
+        switch (species.getSboTerm()) {
+            case 297: // Complex
+                createBPEfromSBMLE(bpModel, Complex.class, species);
+                generateXrefsForSBase(bpModel, RelationshipXref.class, species);
+                break;
+            case 247: // Simple chemical
+                createBPEfromSBMLE(bpModel, SmallMolecule.class, species);
+                generateXrefsForSBase(bpModel, UnificationXref.class, species);
+                break;
+            case 252: // Polypeptide chain ~ Protein
+            default:
+                createBPEfromSBMLE(bpModel, Protein.class, species);
+                generateXrefsForSBase(bpModel, UnificationXref.class, species);
+                break;
+        }
+
+        if(compartment != null) {
+            createCompartmentVocabulary(bpModel, compartment);
+            generateXrefsForSBase(bpModel, UnificationXref.class, compartment);
+        }
+    }
+
+    /**
+     * Creates (registers) the modifier's Control without linking it to other objects
+     * (see {@link #prepareReaction(Model, SbmlReaction)}).
+     *
+     * @param bpModel BioPAX model
+     * @param modifierSpeciesReference SBML modifier
+     */
+    public void prepareModifier(Model bpModel, SbmlModifier modifierSpeciesReference) {
+        convertModifier(bpModel, modifierSpeciesReference);
+    }
+
+    public PhysicalEntity convertSpecies(Model bpModel, SbmlSpecies species, SbmlElement compartment) {
         PhysicalEntity physicalEntity;
 
-        switch (species.getSBOTerm()) {
+        switch (species.getSboTerm()) {
             case 297: // Complex
                 physicalEntity = createComplexFromSpecies(bpModel, species);
                 break;
@@ -222,18 +503,22 @@ public class SbmlToBiopaxUtils {
                 break;
         }
 
-        CellularLocationVocabulary cellularLocationVocabulary = createCompartment(bpModel, species.getCompartmentInstance());
-        physicalEntity.setCellularLocation(cellularLocationVocabulary);
+        if(compartment != null) {
+            CellularLocationVocabulary cellularLocationVocabulary = createCompartment(bpModel, compartment);
+            physicalEntity.setCellularLocation(cellularLocationVocabulary);
+        }
 
         return physicalEntity;
     }
 
     public CellularLocationVocabulary createCompartment(Model bpModel, Compartment compartment) {
-        String id = completeId(compartment.getId());
-        CellularLocationVocabulary cellularLocationVocabulary = (CellularLocationVocabulary) bpModel.getByID(id);
-        if(cellularLocationVocabulary == null) {
-            cellularLocationVocabulary = bpModel.addNew(CellularLocationVocabulary.class, id);
-            cellularLocationVocabulary.addTerm(compartment.getName());
+        return createCompartment(bpModel, SbmlElements.element(compartment));
+    }
+
+    public CellularLocationVocabulary createCompartment(Model bpModel, SbmlElement compartment) {
+        CellularLocationVocabulary cellularLocationVocabulary = createCompartmentVocabulary(bpModel, compartment);
+        // xrefs are linked once (the vocabulary might have been created in advance, without them)
+        if(cellularLocationVocabulary.getXref().isEmpty()) {
             for (Xref xref : generateXrefsForSBase(bpModel, UnificationXref.class, compartment)) {
                 cellularLocationVocabulary.addXref(xref);
             }
@@ -242,7 +527,13 @@ public class SbmlToBiopaxUtils {
         return cellularLocationVocabulary;
     }
 
-    private Complex createComplexFromSpecies(Model bpModel, Species species) {
+    private CellularLocationVocabulary createCompartmentVocabulary(Model bpModel, SbmlElement compartment) {
+        return registry(bpModel).getOrCreate(CellularLocationVocabulary.class, uriFactory.element(compartment.getId()),
+                cellularLocationVocabulary -> cellularLocationVocabulary.addTerm(
+                        (compartment.getName() != null) ? compartment.getName() : compartment.getId()));
+    }
+
+    private Complex createComplexFromSpecies(Model bpModel, SbmlSpecies species) {
         Complex complex = createBPEfromSBMLE(bpModel, Complex.class, species);
         for (Xref xref : generateXrefsForSBase(bpModel, RelationshipXref.class, species)) {
             complex.addXref(xref);
@@ -251,122 +542,142 @@ public class SbmlToBiopaxUtils {
         return complex;
     }
 
-    private <T extends Xref> Set<Xref> generateXrefsForSBase(Model bpModel, Class<T> xrefClass, AbstractSBase sBase) {
-        Annotation annotation = sBase.getAnnotation();
-        HashSet<Xref> xrefs = new HashSet<Xref>();
+    <T extends Xref> Set<Xref> generateXrefsForSBase(Model bpModel, Class<T> xrefClass, SbmlElement sBase) {
+        Set<Xref> xrefs = new LinkedHashSet<Xref>();
+        XrefRegistry xrefRegistry = xrefRegistry(bpModel);
+        for (XrefKey key : xrefKeys(xrefClass, sBase, true)) {
+            // the same (type, db, id) is always the same xref object
+            xrefs.add(xrefRegistry.getOrCreate(key.type.asSubclass(Xref.class), key.db, key.id));
+        }
 
-        for (CVTerm cvTerm : annotation.getListOfCVTerms()) {
+        return xrefs;
+    }
+
+    /*
+     * The (type, db, id) of the xrefs generated for the element's MIRIAM annotations, in the order of these.
+     */
+    static Set<XrefKey> xrefKeys(Class<? extends Xref> xrefClass, SbmlElement sBase, boolean warn) {
+        Set<XrefKey> keys = new LinkedHashSet<>();
+        for (SbmlCvTerm cvTerm : sBase.getCvTerms()) {
             for (String resource : cvTerm.getResources()) {
-                String xrefId = completeId(xrefClass.getSimpleName().toLowerCase() + "_" + cvTerm.hashCode());
-                // Let's not replicate xrefs if possible
-                Xref xref = (Xref) bpModel.getByID(xrefId);
-                if(xref == null) {
-                    if(resource.toLowerCase().contains("pubmed")) {
-                        xref = resourceToXref(PublicationXref.class, xrefId, resource);
-                    } else {
-                        xref = resourceToXref(xrefClass, xrefId, resource);
+                // Sample miriam resource: urn:miriam:chebi:CHEBI%3A15589
+                MiriamResolver.Resolved resolved = MiriamResolver.getInstance().resolve(resource);
+                if(resolved == null) {
+                    if(warn) {
+                        log.warn("Unrecognized annotation resource (skipped): " + resource);
                     }
-                    bpModel.add(xref);
+                    continue;
                 }
-                xrefs.add(xref);
+                Class<? extends Xref> aClass = ("pubmed".equals(resolved.getDb()))
+                        ? PublicationXref.class : xrefClass;
+                keys.add(new XrefKey(aClass, resolved.getDb(), resolved.getId()));
             }
         }
-
-        return xrefs;
+        return keys;
     }
 
     public void fillComplexes(Model bpModel) {
-        HashMap<String, ProteinReference> xrefToProtein = new HashMap<>();
-        // Now let's use xrefs to find the complex components
-        // First, find the protein refs and map them with their xrefs
-        for (ProteinReference proteinRef : bpModel.getObjects(ProteinReference.class)) {
-            for (Xref xref : proteinRef.getXref()) {
-                xrefToProtein.put(xref.toString(), proteinRef);
-            }
+        PostProcessingPipeline pipeline = new PostProcessingPipeline(complexResolver(bpModel, null));
+        if(integrityChecker != null) {
+            pipeline.add(integrityChecker);
         }
+        pipeline.run(bpModel);
+    }
 
-        // Now let's go to the complexes and see what xrefs they have
-        Set<Complex> complexes = new HashSet<>(bpModel.getObjects(Complex.class));
-        for (Complex complex : complexes) {
-            HashSet<String> names = new HashSet<>(Arrays.asList(complex.getDisplayName().split(":")));
-
-            // Let's try to capture proteins from the model first
-            HashSet<Protein> components = new HashSet<>();
-            for (Xref xref : complex.getXref()) {
-                ProteinReference proteinRef = xrefToProtein.get(xref.toString());
-                if(proteinRef != null) {
-                    String cProteinId = completeId(complex.getUri() + "_" + proteinRef.getUri());
-                    if(!bpModel.containsID(cProteinId)) {
-                        Protein protein = bpModel.addNew(Protein.class, cProteinId);
-                        protein.setDisplayName(proteinRef.getDisplayName());
-                        protein.setStandardName(proteinRef.getStandardName());
-                        protein.setEntityReference(proteinRef);
-                        components.add(protein);
-                        names.remove(protein.getDisplayName());
-                    }
-                }
-            }
+    public void assignOrganism(Model bpModel) {
+        createOrganism(bpModel);
+        new PostProcessingPipeline(new OrganismAssigner()).run(bpModel);
+    }
 
-            // These are the ones we were not able to capture from the model
-            // Let's create proteins for them
-            for (String name : names) {
-                final String nameBasedURI = completeId("protein_" + name);
-                Protein protein = (Protein) bpModel.getByID(nameBasedURI);
-                if(protein == null) {
-                    protein = bpModel.addNew(Protein.class, nameBasedURI);
-                    protein.setDisplayName(name);
-                    protein.setStandardName(name);
-                }
+    /**
+     * Post-processes the converted model in a single traversal:
+     * fills the complexes and sets the organism and data source
+     * to those objects that do not have these yet (normally, these are set on creation).
+     *
+     * @param bpModel BioPAX model
+     */
+    public void postProcess(Model bpModel) {
+        postProcess(bpModel, null);
+    }
 
-                String refId = completeId("ref_" + nameBasedURI);
-                ProteinReference proteinReference = (ProteinReference) bpModel.getByID(refId);
-                if(proteinReference == null) {
-                    proteinReference = bpModel.addNew(ProteinReference.class, refId);
-                    proteinReference.setDisplayName(name);
-                    proteinReference.setStandardName(name);
-                }
+    /**
+     * Post-processes the converted model (see {@link #postProcess(Model)}),
+     * resolving the complex components in parallel.
+     *
+     * @param bpModel BioPAX model
+     * @param pool thread pool, or null (single-threaded)
+     */
+    public void postProcess(Model bpModel, ForkJoinPool pool) {
+        postProcess(bpModel, pool, null);
+    }
 
-                String u = completeId("symbol_" + name);
-                RelationshipXref rx = (RelationshipXref) bpModel.getByID(u);
-                if(rx == null) {
-                    rx = bpModel.addNew(RelationshipXref.class, u);
-                    rx.setDb("hgnc.symbol");
-                    rx.setId(name);
-                }
+    /**
+     * Post-processes the converted model (see {@link #postProcess(Model)}),
+     * filling only the given complexes (e.g. the changed ones, when converting incrementally).
+     *
+     * @param bpModel BioPAX model
+     * @param pool thread pool, or null (single-threaded)
+     * @param complexUris URIs of the complexes to fill, or null (all)
+     */
+    public void postProcess(Model bpModel, ForkJoinPool pool, Set<String> complexUris) {
+        if(organism == null) {
+            createOrganism(bpModel);
+        }
+        ComplexResolver resolver = complexResolver(bpModel, pool);
+        resolver.setComplexes(complexUris);
+        PostProcessingPipeline pipeline = new PostProcessingPipeline(
+                resolver, new OrganismAssigner(), new DataSourceAssigner());
+        if(integrityChecker != null) {
+            // after the complexes are filled
+            pipeline.add(integrityChecker);
+        }
+        pipeline.setMetrics(metrics).run(bpModel);
+    }
 
-                proteinReference.addXref(rx);
-                protein.setEntityReference(proteinReference);
-                components.add(protein);
-            }
+    /**
+     * Gets the complex components resolution counts of the last post-processing.
+     *
+     * @return resolver or null
+     */
+    public ComplexResolver getComplexResolver() {
+        return complexResolver;
+    }
 
-            // Now, add all these proteins as components
-            for (Protein component : components) {
-                complex.addComponent(component);
-                component.setCellularLocation(complex.getCellularLocation());
+    private ComplexResolver complexResolver(Model bpModel, ForkJoinPool pool) {
+        complexResolver = new ComplexResolver(registry(bpModel), xrefRegistry(bpModel), uriFactory, pool);
+        return complexResolver;
+    }
+
+    /*
+     * Sets the organism where it's missing.
+     */
+    private class OrganismAssigner implements ModelPostProcessor {
+        @Override
+        public void visit(BioPAXElement element) {
+            if(organism == null) {
+                return;
+            }
+            if(element instanceof SequenceEntityReference) {
+                if(((SequenceEntityReference) element).getOrganism() == null)
+                    ((SequenceEntityReference) element).setOrganism(organism);
+            } else if(element instanceof Gene) { //but, there are probably no Gene objects...
+                ((Gene) element).setOrganism(organism);
+            } else if(element instanceof Pathway) {
+                if(((Pathway) element).getOrganism() == null)
+                    ((Pathway) element).setOrganism(organism);
             }
         }
-
-        log.debug("Fixed " + complexes.size() + " complexes in the model.");
     }
 
-    public void assignOrganism(Model bpModel) {
-        // Since this is RECON2, everything is human
-        BioSource bioSource = bpModel.addNew(BioSource.class, "bioregistry.io/ncbitaxon:9606");
-        bioSource.setDisplayName("Homo sapiens");
-        bioSource.setStandardName("Homo sapiens");
-        UnificationXref unificationXref = bpModel.addNew(UnificationXref.class, "ncbitaxon:9606");
-        unificationXref.setDb("ncbitaxon");
-        unificationXref.setId("9606");
-        bioSource.addXref(unificationXref);
-
-        for (SequenceEntityReference ser : bpModel.getObjects(SequenceEntityReference.class)) {
-            ser.setOrganism(bioSource);
-        }
-        for (Gene g : bpModel.getObjects(Gene.class)) { //but, there are probably no Gene objects...
-            g.setOrganism(bioSource);
-        }
-        for (Pathway p : bpModel.getObjects(Pathway.class)) {
-            p.setOrganism(bioSource);
+    /*
+     * Assigns the Provenance to the Entities that do not have a data source yet.
+     */
+    private class DataSourceAssigner implements ModelPostProcessor {
+        @Override
+        public void visit(BioPAXElement element) {
+            if(dataSource != null && element instanceof Entity && ((Entity) element).getDataSource().isEmpty()) {
+                ((Entity) element).addDataSource(dataSource);
+            }
         }
     }
 
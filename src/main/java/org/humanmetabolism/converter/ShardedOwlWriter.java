@@ -0,0 +1,281 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.controller.Fetcher;
+import org.biopax.paxtools.controller.SimpleEditorMap;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.*;
+import org.biopax.paxtools.model.level3.Process;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the converted BioPAX model into partitions (shards) - by compartment, by subsystem
+ * or into N hash buckets of the reactions - and writes each shard to its own RDF/XML file,
+ * concurrently. A shard has its Conversions, their Controls and everything these refer to
+ * (participants, entity references, locations, xrefs, provenance, etc.), so each file
+ * is a valid BioPAX model that can be loaded on its own; the shared objects are in every shard that uses them.
+ * The objects not used by any interaction (e.g. the model pathway) go to the "other" shard.
+ * A manifest (tab-separated: name, file, interactions, objects) lists the shards.
+ */
+public class ShardedOwlWriter {
+    private static Logger log = LoggerFactory.getLogger(ShardedOwlWriter.class);
+    public static final String MANIFEST_FILE = "manifest.tsv";
+    static final String UNKNOWN = "unknown";
+    static final String OTHER = "other";
+
+    public enum Partitioning {
+        /** by the cellular locations of the participants (e.g. "cytosol", or "cytosol+mitochondrion" for transports) */
+        COMPARTMENT,
+        /** by the "SUBSYSTEM: ..." notes (comment) */
+        SUBSYSTEM,
+        /** into N buckets by the hash of the reaction URI */
+        HASH
+    }
+
+    private final Partitioning partitioning;
+    private final int buckets;
+    private final boolean gzip;
+    private final String xmlBase;
+    private final int threads;
+
+    /**
+     * @param partitioning how to partition the interactions
+     * @param buckets number of shards for the {@link Partitioning#HASH} partitioning
+     * @param gzip whether to gzip the shard files
+     * @param xmlBase xml:base of the files (can be null)
+     * @param threads number of shards to write at the same time
+     */
+    public ShardedOwlWriter(Partitioning partitioning, int buckets, boolean gzip, String xmlBase, int threads) {
+        if(partitioning == Partitioning.HASH && buckets < 1) {
+            throw new IllegalArgumentException("number of buckets must be positive: " + buckets);
+        }
+        this.partitioning = partitioning;
+        this.buckets = buckets;
+        this.gzip = gzip;
+        this.xmlBase = xmlBase;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * A written shard.
+     */
+    public static final class Shard {
+        private final String name;
+        private final List<Interaction> interactions = new ArrayList<>();
+        private String file;
+        private int objects;
+
+        Shard(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return file name (in the output directory)
+         */
+        public String getFile() {
+            return file;
+        }
+
+        public int getInteractionCount() {
+            return interactions.size();
+        }
+
+        public int getObjectCount() {
+            return objects;
+        }
+    }
+
+    /**
+     * Writes the shards and manifest to the directory (created if needed).
+     *
+     * @param model converted BioPAX model (must not change while writing)
+     * @param dir output directory
+     * @return shards, in the manifest order
+     * @throws IOException when cannot write
+     */
+    public List<Shard> write(Model model, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        List<Shard> shards = partition(model);
+        Set<String> files = new HashSet<>();
+        for (Shard shard : shards) {
+            shard.file = fileName(shard.name, files);
+        }
+
+        Shard other = shards.get(shards.size() - 1);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, shards.size()));
+        try {
+            List<Future<Set<BioPAXElement>>> futures = new ArrayList<>(shards.size());
+            for (Shard shard : shards) {
+                if(shard != other) {
+                    futures.add(executor.submit(() -> writeShard(shard, closure(shard), dir)));
+                }
+            }
+            // everything that went to the shards
+            Set<String> used = new HashSet<>();
+            for (Future<Set<BioPAXElement>> future : futures) {
+                for (BioPAXElement element : future.get()) {
+                    used.add(element.getUri());
+                }
+            }
+            Set<BioPAXElement> rest = new HashSet<>();
+            for (BioPAXElement element : model.getObjects()) {
+                if(!used.contains(element.getUri())) {
+                    rest.add(element);
+                }
+            }
+            if(rest.isEmpty()) {
+                shards.remove(other);
+            } else {
+                writeShard(other, rest, dir);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        writeManifest(shards, dir.resolve(MANIFEST_FILE));
+        log.info("Written " + shards.size() + " shards (by " + partitioning + ") to " + dir);
+        return shards;
+    }
+
+    /*
+     * Groups the interactions by key, in the key order; the "other" (not used objects) shard is the last.
+     */
+    List<Shard> partition(Model model) {
+        Map<String, Shard> shards = new TreeMap<>();
+        for (Conversion conversion : model.getObjects(Conversion.class)) {
+            shards.computeIfAbsent(key(conversion), Shard::new).interactions.add(conversion);
+        }
+        for (Control control : model.getObjects(Control.class)) {
+            // with the (first) controlled conversion
+            String key = null;
+            for (Process process : control.getControlled()) {
+                if(process instanceof Conversion) {
+                    String k = key((Conversion) process);
+                    key = (key == null || k.compareTo(key) < 0) ? k : key;
+                }
+            }
+            shards.computeIfAbsent((key != null) ? key : UNKNOWN, Shard::new).interactions.add(control);
+        }
+        List<Shard> list = new ArrayList<>(shards.values());
+        list.add(new Shard(OTHER));
+        return list;
+    }
+
+    String key(Conversion conversion) {
+        switch (partitioning) {
+            case COMPARTMENT:
+                Set<String> locations = new TreeSet<>();
+                for (PhysicalEntity participant : conversion.getLeft()) {
+                    location(participant, locations);
+                }
+                for (PhysicalEntity participant : conversion.getRight()) {
+                    location(participant, locations);
+                }
+                return locations.isEmpty() ? UNKNOWN : String.join("+", locations);
+            case SUBSYSTEM:
+                for (String comment : conversion.getComment()) {
+                    if(comment.regionMatches(true, 0, "SUBSYSTEM:", 0, 10)) {
+                        String subsystem = comment.substring(10).trim();
+                        return subsystem.isEmpty() ? UNKNOWN : subsystem;
+                    }
+                }
+                return UNKNOWN;
+            case HASH:
+            default:
+                // String.hashCode is the same in any JVM
+                return String.format("bucket%0" + String.valueOf(buckets - 1).length() + "d",
+                        Math.floorMod(conversion.getUri().hashCode(), buckets));
+        }
+    }
+
+    private static void location(PhysicalEntity participant, Set<String> locations) {
+        CellularLocationVocabulary location = participant.getCellularLocation();
+        if(location != null && !location.getTerm().isEmpty()) {
+            locations.add(new TreeSet<>(location.getTerm()).first());
+        }
+    }
+
+    /*
+     * The shard's interactions and all the objects these refer to (each thread - own fetcher).
+     */
+    private static Set<BioPAXElement> closure(Shard shard) {
+        Fetcher fetcher = new Fetcher(SimpleEditorMap.L3);
+        Set<BioPAXElement> elements = new HashSet<>();
+        for (Interaction interaction : shard.interactions) {
+            if(elements.add(interaction)) {
+                elements.addAll(fetcher.fetch(interaction));
+            }
+        }
+        return elements;
+    }
+
+    private Set<BioPAXElement> writeShard(Shard shard, Set<BioPAXElement> elements, Path dir) throws IOException {
+        List<BioPAXElement> sorted = new ArrayList<>(elements);
+        sorted.sort(Comparator.comparing(BioPAXElement::getUri));
+        try (OwlStreamWriter writer = new OwlStreamWriter(dir.resolve(shard.file), gzip, xmlBase)) {
+            for (BioPAXElement element : sorted) {
+                writer.write(element);
+            }
+            writer.finish();
+        }
+        shard.objects = sorted.size();
+        log.debug("Written shard " + shard.name + ": " + shard.objects + " objects");
+        return elements;
+    }
+
+    /*
+     * A safe, unique file name for the shard.
+     */
+    private String fileName(String name, Set<String> files) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : name.toLowerCase(Locale.ROOT).toCharArray()) {
+            sb.append((Character.isLetterOrDigit(c) || c == '-' || c == '.') ? c : '_');
+        }
+        String base = (sb.length() > 100) ? sb.substring(0, 100) : sb.toString();
+        String extension = gzip ? ".owl.gz" : ".owl";
+        String file = base + extension;
+        for (int i = 2; !files.add(file); i++) {
+            file = base + "_" + i + extension;
+        }
+        return file;
+    }
+
+    private static void writeManifest(List<Shard> shards, Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("#shard\tfile\tinteractions\tobjects\n");
+            for (Shard shard : shards) {
+                writer.write(shard.name.replace('\t', ' ') + "\t" + shard.file + "\t"
+                        + shard.getInteractionCount() + "\t" + shard.objects + "\n");
+            }
+        }
+    }
+}
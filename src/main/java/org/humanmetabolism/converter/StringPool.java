@@ -0,0 +1,83 @@
+package org.humanmetabolism.converter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deduplicates the strings (ids, names, URIs, annotation resources) of a conversion run,
+ * so that equal strings share one instance, and estimates how much memory that saved.
+ * Thread-safe; lives as long as the conversion (unlike {@link String#intern()}).
+ */
+public class StringPool {
+    // object header + fields of a String, and the byte[] header (64-bit JVM, compressed oops)
+    private static final int STRING_OVERHEAD = 24 + 16;
+
+    private final ConcurrentMap<String, String> strings = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    /**
+     * Gets the pooled instance equal to the string.
+     *
+     * @param s string or null
+     * @return the same or an equal, pooled string (null for null)
+     */
+    public String get(String s) {
+        if(s == null) {
+            return null;
+        }
+        requests.increment();
+        String pooled = strings.putIfAbsent(s, s);
+        if(pooled == null) {
+            return s;
+        }
+        if(pooled != s) {
+            // the new instance can now be garbage collected
+            hits.increment();
+            savedBytes.add(size(s));
+        }
+        return pooled;
+    }
+
+    private static long size(String s) {
+        // compact (Latin-1) strings take a byte per char, others - two
+        long bytes = STRING_OVERHEAD + (isLatin1(s) ? s.length() : 2L * s.length());
+        return (bytes + 7) & ~7L;
+    }
+
+    private static boolean isLatin1(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if(s.charAt(i) > 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * @return estimated bytes of the duplicate strings that were replaced by the pooled ones
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "string pool: " + size() + " strings, " + getHits() + " duplicates of " + getRequests()
+                + " replaced (~" + (getSavedBytes() >> 10) + " KiB saved)";
+    }
+}
@@ -0,0 +1,100 @@
+package org.humanmetabolism.converter;
+
+/**
+ * Makes the URIs of the BioPAX objects from the SBML structure (ids of the species, reactions,
+ * modifiers, etc.), so that these are the same every time the same model is converted,
+ * and pools the URIs and names (see {@link StringPool}).
+ */
+public class UriFactory {
+    private final String xmlBase;
+    private final StringPool pool;
+
+    /**
+     * @param xmlBase URI prefix ("" for none)
+     * @param pool strings pool of the conversion
+     */
+    public UriFactory(String xmlBase, StringPool pool) {
+        this.xmlBase = (xmlBase == null) ? "" : xmlBase;
+        this.pool = pool;
+    }
+
+    public StringPool getPool() {
+        return pool;
+    }
+
+    public String getXmlBase() {
+        return xmlBase;
+    }
+
+    /**
+     * @param s string (e.g. a name)
+     * @return pooled string
+     */
+    public String name(String s) {
+        return pool.get(s);
+    }
+
+    /**
+     * @param localId local part
+     * @return xml:base + local id, pooled
+     */
+    public String uri(String localId) {
+        return pool.get(xmlBase + localId);
+    }
+
+    /**
+     * @param sbmlId SBML element id (species, reaction, compartment, model)
+     * @return URI of the corresponding BioPAX object
+     */
+    public String element(String sbmlId) {
+        return uri(sbmlId);
+    }
+
+    /**
+     * @param speciesId SBML species id
+     * @return URI of the species' entity reference
+     */
+    public String reference(String speciesId) {
+        return uri("ref_" + speciesId);
+    }
+
+    /**
+     * SBML modifiers do not have ids, so the Control URI is made of the reaction and modifier species ids.
+     *
+     * @param reactionId SBML reaction id
+     * @param speciesId modifier's species id
+     * @return URI of the Control
+     */
+    public String control(String reactionId, String speciesId) {
+        return uri("control_" + reactionId + "_" + speciesId);
+    }
+
+    /**
+     * @param complexUri complex URI
+     * @param referenceUri component's entity reference URI
+     * @return URI of the complex component (protein) for the reference
+     */
+    public String component(String complexUri, String referenceUri) {
+        return uri("component_" + local(complexUri) + "_" + local(referenceUri));
+    }
+
+    /**
+     * @param symbol gene symbol
+     * @return URI of the (complex component) protein named after the symbol
+     */
+    public String symbolProtein(String symbol) {
+        return uri("protein_" + symbol);
+    }
+
+    /**
+     * @param symbol gene symbol
+     * @return URI of the protein reference for the symbol
+     */
+    public String symbolReference(String symbol) {
+        return uri("ref_protein_" + symbol);
+    }
+
+    private String local(String uri) {
+        return (!xmlBase.isEmpty() && uri.startsWith(xmlBase)) ? uri.substring(xmlBase.length()) : uri;
+    }
+}
@@ -0,0 +1,53 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.level3.Xref;
+
+import java.util.Objects;
+
+/**
+ * The normalized (xref type, db, id) tuple that identifies an xref
+ * (db - trimmed, lower case; id - trimmed).
+ */
+final class XrefKey {
+    final Class<?> type;
+    final String db;
+    final String id;
+    private final int hash;
+
+    XrefKey(Class<?> type, String db, String id) {
+        this.type = type;
+        this.db = (db == null) ? "" : db.trim().toLowerCase();
+        this.id = (id == null) ? "" : id.trim();
+        this.hash = Objects.hash(type, this.db, this.id);
+    }
+
+    static XrefKey of(Xref xref) {
+        return new XrefKey(xref.getModelInterface(), xref.getDb(), xref.getId());
+    }
+
+    /*
+     * The (db, id) pair of any type of xref (e.g. to match a relationship xref to a unification xref).
+     */
+    static XrefKey untyped(Xref xref) {
+        return new XrefKey(Xref.class, xref.getDb(), xref.getId());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof XrefKey)) {
+            return false;
+        }
+        XrefKey that = (XrefKey) o;
+        return type == that.type && db.equals(that.db) && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return type.getSimpleName() + ":" + db + ":" + id;
+    }
+}
@@ -0,0 +1,111 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.EntityReference;
+import org.biopax.paxtools.model.level3.Xref;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canonical xrefs of a model, keyed by the normalized (xref type, db, id) tuple,
+ * and the entity references bound to each of them.
+ *
+ * Identical identifiers used by different SBML elements become one Xref object,
+ * and the entity references that share an xref are found with a single lookup
+ * (instead of walking the xrefOf property of every xref).
+ */
+public class XrefRegistry {
+    private final BiopaxElementRegistry elements;
+    private final String xmlBase;
+    private final ConcurrentMap<XrefKey, Xref> xrefs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<XrefKey, Set<EntityReference>> bindings = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+
+    public XrefRegistry(BiopaxElementRegistry elements, String xmlBase) {
+        this.elements = elements;
+        this.xmlBase = (xmlBase == null) ? "" : xmlBase;
+    }
+
+    public Model getModel() {
+        return elements.getModel();
+    }
+
+    /**
+     * Gets the canonical xref or creates a new one.
+     *
+     * @param xrefClass xref type
+     * @param db database name (normalized to lower case)
+     * @param id identifier
+     * @param <T> xref type
+     * @return canonical xref
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Xref> T getOrCreate(Class<T> xrefClass, String db, String id) {
+        requests.increment();
+        XrefKey key = new XrefKey(xrefClass, db, id);
+        Xref xref = xrefs.computeIfAbsent(key, k -> elements.getOrCreate(xrefClass, uri(k), x -> {
+            x.setDb(k.db);
+            x.setId(k.id);
+        }));
+        // a cached xref may have been created in the deferred mode and not added to the model yet
+        return (T) elements.attachPending(xref);
+    }
+
+    /**
+     * Adds the xref to the entity reference and remembers the binding.
+     *
+     * @param entityReference entity reference
+     * @param xref canonical xref
+     */
+    public void bind(EntityReference entityReference, Xref xref) {
+        entityReference.addXref(xref);
+        bindings.computeIfAbsent(XrefKey.of(xref), k -> new CopyOnWriteArraySet<>()).add(entityReference);
+    }
+
+    /**
+     * Gets the entity references bound to the xref.
+     *
+     * @param xref canonical xref
+     * @return entity references (in the binding order)
+     */
+    public Set<EntityReference> getEntityReferences(Xref xref) {
+        Set<EntityReference> entityReferences = bindings.get(XrefKey.of(xref));
+        return (entityReferences == null) ? Collections.emptySet() : Collections.unmodifiableSet(entityReferences);
+    }
+
+    /**
+     * Removes the (unused) xref from the registry and model.
+     *
+     * @param xref canonical xref
+     */
+    public void remove(Xref xref) {
+        XrefKey key = XrefKey.of(xref);
+        xrefs.remove(key);
+        bindings.remove(key);
+        elements.remove(xref);
+    }
+
+    public int size() {
+        return xrefs.size();
+    }
+
+    /**
+     * @return number of the xrefs requested so far (cf. the number of distinct ones, {@link #size()})
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    private String uri(XrefKey key) {
+        return xmlBase + key.type.getSimpleName().toLowerCase() + "_"
+                + URLEncoder.encode(key.db, StandardCharsets.UTF_8) + "_"
+                + URLEncoder.encode(key.id, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,257 @@
+package org.humanmetabolism.converter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates a synthetic SBML (L2V4) model shaped like Recon 2:
+ * compartments with GO annotations; metabolites (SBO:0000247) with ChEBI/KEGG/HMDB MIRIAM URNs and notes;
+ * proteins (SBO:0000252) with UniProt and HGNC symbol URNs; complexes (SBO:0000297) named
+ * by their subunit symbols (e.g. G12:G345) and annotated with some of their subunits' UniProt ids;
+ * biochemical (SBO:0000176) and transport (SBO:0000185) reactions with
+ * modifiers (proteins and complexes), PubMed/EC annotations and Recon-style notes.
+ * The output is the same for the same parameters and seed.
+ */
+public class SyntheticSbmlGenerator {
+    private static final String[] COMPARTMENTS = {"c", "m", "e", "n", "r", "x", "l", "g"};
+    private static final String[] COMPARTMENT_NAMES = {"cytoplasm", "mitochondria", "extracellular",
+            "nucleus", "endoplasmic reticulum", "peroxisome", "lysosome", "golgi apparatus"};
+    private static final String[] COMPARTMENT_GO = {"GO:0005737", "GO:0005739", "GO:0005576",
+            "GO:0005634", "GO:0005783", "GO:0005777", "GO:0005764", "GO:0005794"};
+
+    private int reactions = 1000;
+    private int metabolites = 600;
+    private int proteins = 100;
+    private int complexes = 30;
+    private int modifiersPerReaction = 1;
+    private int annotationsPerSpecies = 3;
+    private long seed = 42;
+
+    public SyntheticSbmlGenerator setReactions(int reactions) {
+        this.reactions = reactions;
+        return this;
+    }
+
+    public SyntheticSbmlGenerator setMetabolites(int metabolites) {
+        this.metabolites = metabolites;
+        return this;
+    }
+
+    public SyntheticSbmlGenerator setProteins(int proteins) {
+        this.proteins = proteins;
+        return this;
+    }
+
+    public SyntheticSbmlGenerator setComplexes(int complexes) {
+        this.complexes = complexes;
+        return this;
+    }
+
+    public SyntheticSbmlGenerator setModifiersPerReaction(int modifiersPerReaction) {
+        this.modifiersPerReaction = modifiersPerReaction;
+        return this;
+    }
+
+    /**
+     * @param annotationsPerSpecies number of MIRIAM resources per metabolite (1 to 3)
+     * @return this generator
+     */
+    public SyntheticSbmlGenerator setAnnotationsPerSpecies(int annotationsPerSpecies) {
+        this.annotationsPerSpecies = annotationsPerSpecies;
+        return this;
+    }
+
+    public SyntheticSbmlGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * A Recon 2 like model with the given number of reactions
+     * (species-to-reactions ratio, proteins and complexes are about as in Recon 2).
+     *
+     * @param reactions number of reactions
+     * @return generator
+     */
+    public static SyntheticSbmlGenerator reconLike(int reactions) {
+        return new SyntheticSbmlGenerator()
+                .setReactions(reactions)
+                .setMetabolites(Math.max(10, reactions * 6 / 10))
+                .setProteins(Math.max(5, reactions / 10))
+                .setComplexes(Math.max(2, reactions / 30));
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(reactions * 2048);
+        try (Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)) {
+            write(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    public void write(Writer w) throws IOException {
+        Random random = new Random(seed);
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        w.write("<sbml xmlns=\"http://www.sbml.org/sbml/level2/version4\" level=\"2\" version=\"4\">\n");
+        w.write("<model metaid=\"synthetic\" id=\"synthetic_recon\" name=\"Synthetic Recon-like model\">\n");
+        notes(w, "Generated for benchmarking");
+        annotation(w, "synthetic", "bqmodel:is", "urn:miriam:biomodels.db:MODEL0000000000");
+
+        w.write("<listOfCompartments>\n");
+        for (int i = 0; i < COMPARTMENTS.length; i++) {
+            w.write("<compartment metaid=\"C_" + COMPARTMENTS[i] + "\" id=\"" + COMPARTMENTS[i]
+                    + "\" name=\"" + COMPARTMENT_NAMES[i] + "\" size=\"1\">\n");
+            annotation(w, "C_" + COMPARTMENTS[i], "bqbiol:is", "urn:miriam:obo.go:" + escapeUrn(COMPARTMENT_GO[i]));
+            w.write("</compartment>\n");
+        }
+        w.write("</listOfCompartments>\n");
+
+        w.write("<listOfSpecies>\n");
+        for (int i = 0; i < metabolites; i++) {
+            String id = metabolite(i);
+            w.write("<species metaid=\"" + id + "\" id=\"" + id + "\" name=\"metabolite " + (i / COMPARTMENTS.length)
+                    + "\" compartment=\"" + compartment(i) + "\" sboTerm=\"SBO:0000247\">\n");
+            notes(w, "FORMULA: C" + (1 + i % 30) + "H" + (2 + i % 50) + "O" + (i % 7),
+                    "CHARGE: " + (i % 5 - 2));
+            // the same compound in different compartments - the same identifiers
+            int compound = i / COMPARTMENTS.length;
+            String[] resources = {
+                    "urn:miriam:chebi:CHEBI%3A" + (15000 + compound),
+                    "urn:miriam:kegg.compound:C" + String.format("%05d", compound),
+                    "urn:miriam:hmdb:HMDB" + String.format("%05d", compound)
+            };
+            annotation(w, id, "bqbiol:is", copyOf(resources, annotationsPerSpecies));
+            w.write("</species>\n");
+        }
+        for (int i = 0; i < proteins; i++) {
+            String id = protein(i);
+            w.write("<species metaid=\"" + id + "\" id=\"" + id + "\" name=\"" + symbol(i)
+                    + "\" compartment=\"" + compartment(i) + "\" sboTerm=\"SBO:0000252\">\n");
+            annotation(w, id, "bqbiol:is", uniprot(i), "urn:miriam:hgnc.symbol:" + symbol(i));
+            w.write("</species>\n");
+        }
+        for (int i = 0; i < complexes; i++) {
+            String id = "M_cpx" + i + "_" + compartment(i);
+            // two to four subunits, some of them are proteins of the model, others - just symbols
+            int subunits = 2 + random.nextInt(3);
+            StringBuilder name = new StringBuilder();
+            String[] resources = new String[subunits];
+            int n = 0;
+            for (int j = 0; j < subunits; j++) {
+                int gene = random.nextInt(proteins * 2);
+                if(name.length() > 0) {
+                    name.append(':');
+                }
+                name.append(symbol(gene));
+                if(gene < proteins) {
+                    resources[n++] = uniprot(gene);
+                }
+            }
+            w.write("<species metaid=\"" + id + "\" id=\"" + id + "\" name=\"" + name
+                    + "\" compartment=\"" + compartment(i) + "\" sboTerm=\"SBO:0000297\">\n");
+            annotation(w, id, "bqbiol:hasPart", copyOf(resources, n));
+            w.write("</species>\n");
+        }
+        w.write("</listOfSpecies>\n");
+
+        w.write("<listOfReactions>\n");
+        for (int i = 0; i < reactions; i++) {
+            String id = "R_r" + i;
+            boolean transport = i % 5 == 0;
+            w.write("<reaction metaid=\"" + id + "\" id=\"" + id + "\" name=\"reaction " + i + "\" reversible=\""
+                    + (i % 3 != 0) + "\" sboTerm=\"SBO:000" + (transport ? "0185" : "0176") + "\">\n");
+            notes(w, "GENE_ASSOCIATION: " + symbol(i % Math.max(1, proteins)),
+                    "SUBSYSTEM: subsystem " + (i % 80), "EC Number: 1.1.1." + (i % 300),
+                    "Confidence Level: " + (i % 5));
+            annotation(w, id, "bqbiol:isDescribedBy", "urn:miriam:pubmed:" + (10000000 + i));
+
+            w.write("<listOfReactants>\n");
+            int m = random.nextInt(metabolites);
+            reference(w, metabolite(m));
+            if(!transport) {
+                reference(w, metabolite(random.nextInt(metabolites)));
+            }
+            w.write("</listOfReactants>\n<listOfProducts>\n");
+            // transport: the same compound in another compartment
+            reference(w, transport ? metabolite((m + 1) % metabolites) : metabolite(random.nextInt(metabolites)));
+            w.write("</listOfProducts>\n");
+
+            if(modifiersPerReaction > 0 && proteins + complexes > 0) {
+                w.write("<listOfModifiers>\n");
+                for (int j = 0; j < modifiersPerReaction; j++) {
+                    int k = random.nextInt(proteins + complexes);
+                    String species = (k < proteins) ? protein(k)
+                            : "M_cpx" + (k - proteins) + "_" + compartment(k - proteins);
+                    w.write("<modifierSpeciesReference species=\"" + species + "\"/>\n");
+                }
+                w.write("</listOfModifiers>\n");
+            }
+            w.write("</reaction>\n");
+        }
+        w.write("</listOfReactions>\n");
+        w.write("</model>\n</sbml>\n");
+    }
+
+    private static String metabolite(int i) {
+        return "M_m" + (i / COMPARTMENTS.length) + "_" + compartment(i);
+    }
+
+    private static String protein(int i) {
+        return "M_p" + i + "_" + compartment(i);
+    }
+
+    private static String compartment(int i) {
+        return COMPARTMENTS[i % COMPARTMENTS.length];
+    }
+
+    private static String symbol(int gene) {
+        return "G" + gene;
+    }
+
+    private static String uniprot(int gene) {
+        return "urn:miriam:uniprot:P" + String.format("%05d", gene);
+    }
+
+    private static String escapeUrn(String id) {
+        return id.replace(":", "%3A");
+    }
+
+    private static String[] copyOf(String[] resources, int n) {
+        String[] copy = new String[Math.max(0, Math.min(n, resources.length))];
+        System.arraycopy(resources, 0, copy, 0, copy.length);
+        return copy;
+    }
+
+    private static void reference(Writer w, String species) throws IOException {
+        w.write("<speciesReference species=\"" + species + "\" stoichiometry=\"1\"/>\n");
+    }
+
+    private static void notes(Writer w, String... paragraphs) throws IOException {
+        w.write("<notes><body xmlns=\"http://www.w3.org/1999/xhtml\">");
+        for (String paragraph : paragraphs) {
+            w.write("<p>" + paragraph + "</p>");
+        }
+        w.write("</body></notes>\n");
+    }
+
+    private static void annotation(Writer w, String metaid, String qualifier, String... resources) throws IOException {
+        if(resources.length == 0) {
+            return;
+        }
+        w.write("<annotation><rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\""
+                + " xmlns:bqbiol=\"http://biomodels.net/biology-qualifiers/\""
+                + " xmlns:bqmodel=\"http://biomodels.net/model-qualifiers/\">"
+                + "<rdf:Description rdf:about=\"#" + metaid + "\"><" + qualifier + "><rdf:Bag>");
+        for (String resource : resources) {
+            w.write("<rdf:li rdf:resource=\"" + resource + "\"/>");
+        }
+        w.write("</rdf:Bag></" + qualifier + "></rdf:Description></rdf:RDF></annotation>\n");
+    }
+}
@@ -0,0 +1,53 @@
+package org.humanmetabolism;
+
+import org.humanmetabolism.converter.SyntheticSbmlGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchConverterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void convertsCompressedInputs() throws Exception {
+        Path input = Files.createDirectories(dir.resolve("models"));
+        byte[] sbml = SyntheticSbmlGenerator.reconLike(200).toBytes();
+        Files.write(input.resolve("plain.xml"), sbml);
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(input.resolve("packed.xml.gz")))) {
+            outputStream.write(sbml);
+        }
+        Files.write(input.resolve("notes.txt"), new byte[]{'x'});
+
+        Path output = dir.resolve("biopax");
+        List<BatchConverter.Task> tasks = BatchConverter.tasks(input, output, ".owl");
+        assertEquals(2, tasks.size());
+        assertEquals(input.resolve("packed.xml.gz"), tasks.get(0).getInput());
+        assertEquals(output.resolve("packed.owl"), tasks.get(0).getOutput());
+        assertEquals(output.resolve("plain.owl"), tasks.get(1).getOutput());
+
+        assertEquals(0, new BatchConverter(new ConversionOptions(), 2).run(tasks, output.resolve(BatchConverter.SUMMARY_FILE)));
+        assertTrue(Files.size(output.resolve("packed.owl")) > 0);
+        // the same model, either way
+        assertArrayEquals(Files.readAllBytes(output.resolve("plain.owl")), Files.readAllBytes(output.resolve("packed.owl")));
+    }
+
+    @Test
+    public void baseName() {
+        assertEquals("recon2", BatchConverter.baseName(Paths.get("recon2.xml.gz")));
+        assertEquals("recon2", BatchConverter.baseName(Paths.get("recon2.SBML.zst")));
+        assertEquals("recon2.v3", BatchConverter.baseName(Paths.get("recon2.v3.xml")));
+        assertEquals("model", BatchConverter.baseName(Paths.get("model.txt")));
+    }
+}
@@ -0,0 +1,139 @@
+package org.humanmetabolism;
+
+import org.humanmetabolism.converter.SyntheticSbmlGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversionServerTest {
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private ConversionServer server;
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    public void stop() {
+        if(server != null) {
+            server.stop(5);
+        }
+    }
+
+    @Test
+    public void convertsUploadAndLocalFile() throws Exception {
+        start(new InetSocketAddress("127.0.0.1", 0), 2, 4);
+        byte[] sbml = SyntheticSbmlGenerator.reconLike(100).toBytes();
+        Path file = Files.write(dir.resolve("model.xml"), sbml);
+
+        HttpResponse<byte[]> upload = post("", sbml);
+        assertEquals(200, upload.statusCode());
+        assertEquals("application/rdf+xml", upload.headers().firstValue("Content-Type").orElse(null));
+        assertTrue(new String(upload.body(), StandardCharsets.UTF_8).endsWith("</rdf:RDF>\n"));
+
+        HttpResponse<byte[]> local = post("?file=" + URLEncoder.encode(file.toString(), StandardCharsets.UTF_8), new byte[0]);
+        assertEquals(200, local.statusCode());
+        assertArrayEquals(upload.body(), local.body());
+    }
+
+    @Test
+    public void rejectsWhenSaturated() throws Exception {
+        // one worker, no queue
+        start(new InetSocketAddress("127.0.0.1", 0), 1, 0);
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            // the worker waits for the rest of this request's body
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(("POST /convert HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1000000\r\n\r\n<?xml")
+                    .getBytes(StandardCharsets.US_ASCII));
+            outputStream.flush();
+            awaitMetrics("\"active\": 1,");
+
+            HttpResponse<byte[]> response = post("", SyntheticSbmlGenerator.reconLike(10).toBytes());
+            assertEquals(429, response.statusCode());
+            assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+        }
+        String metrics = awaitMetrics("\"failed\": 1,");
+        assertTrue(metrics.contains("\"requests\": 2,"), metrics);
+        assertTrue(metrics.contains("\"rejected\": 1,"), metrics);
+        assertTrue(metrics.contains("\"completed\": 0,"), metrics);
+    }
+
+    @Test
+    public void localFilesOnlyUnderRootWhenNotLoopback() throws Exception {
+        // (any address - not a loopback one)
+        start(new InetSocketAddress("0.0.0.0", 0), 1, 1);
+        byte[] sbml = SyntheticSbmlGenerator.reconLike(10).toBytes();
+        Path root = Files.createDirectories(dir.resolve("root"));
+        Path inside = Files.write(root.resolve("model.xml"), sbml);
+        Path outside = Files.write(dir.resolve("model.xml"), sbml);
+
+        assertEquals(403, post("?file=" + URLEncoder.encode(inside.toString(), StandardCharsets.UTF_8), new byte[0]).statusCode());
+        server.setFileRoot(root);
+        assertEquals(200, post("?file=" + URLEncoder.encode(inside.toString(), StandardCharsets.UTF_8), new byte[0]).statusCode());
+        assertEquals(403, post("?file=" + URLEncoder.encode(outside.toString(), StandardCharsets.UTF_8), new byte[0]).statusCode());
+        String sneaky = root.resolve("..").resolve("model.xml").toString();
+        assertEquals(403, post("?file=" + URLEncoder.encode(sneaky, StandardCharsets.UTF_8), new byte[0]).statusCode());
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        start(new InetSocketAddress("127.0.0.1", 0), 1, 1);
+        assertEquals(200, post("", SyntheticSbmlGenerator.reconLike(10).toBytes()).statusCode());
+        assertEquals(405, client.send(HttpRequest.newBuilder(uri("/convert")).GET().build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode());
+
+        assertEquals(200, get("/metrics").statusCode());
+        // (counted when the exchange is closed)
+        String metrics = awaitMetrics("\"completed\": 1,");
+        assertTrue(metrics.contains("\"requests\": 1,"), metrics);
+        assertTrue(metrics.contains("\"failed\": 0,"), metrics);
+        assertTrue(metrics.contains("\"throughputPerMinute\": "), metrics);
+        assertEquals("ok\n", get("/health").body());
+    }
+
+    private void start(InetSocketAddress address, int workers, int queue) throws Exception {
+        server = new ConversionServer(new ConversionOptions(), address, workers, queue);
+        server.start();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+
+    private HttpResponse<byte[]> post(String query, byte[] body) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri("/convert" + query))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /*
+     * Polls the metrics until these contain the text (e.g. while a request gets to a worker).
+     */
+    private String awaitMetrics(String text) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        String metrics;
+        while (!(metrics = get("/metrics").body()).contains(text)) {
+            assertTrue(System.nanoTime() < deadline, metrics);
+            Thread.sleep(20);
+        }
+        return metrics;
+    }
+}
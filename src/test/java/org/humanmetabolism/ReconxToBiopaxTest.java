@@ -0,0 +1,96 @@
+package org.humanmetabolism;
+
+import org.humanmetabolism.converter.ConversionMetrics;
+import org.humanmetabolism.converter.InputFiles;
+import org.humanmetabolism.converter.SyntheticSbmlGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReconxToBiopaxTest {
+    private static final int REACTIONS = 600;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void incrementalUpdateOfOneReaction() throws Exception {
+        String sbml = sbml();
+        String changed = replace(sbml, "name=\"reaction 17\"", "name=\"reaction seventeen\"");
+        ConversionMetrics metrics = assertIncremental(sbml, changed, false, false);
+        assertEquals(REACTIONS - 1, metrics.get("reactionsReused"));
+    }
+
+    @Test
+    public void incrementalUpdateOfRemovedReactionAndChangedSpecies() throws Exception {
+        String sbml = sbml();
+        String changed = replace(sbml, "id=\"M_m3_c\" name=\"metabolite 3\"", "id=\"M_m3_c\" name=\"metabolite three\"");
+        // (a protein that complexes are made of)
+        changed = replace(changed, "id=\"M_p2_e\" name=\"G2\"", "id=\"M_p2_e\" name=\"G2a\"");
+        changed = changed.replaceFirst("(?s)<reaction metaid=\"R_r5\".*?</reaction>\n", "");
+        assertTrue(changed.length() < sbml.length());
+        ConversionMetrics metrics = assertIncremental(sbml, changed, true, true);
+        assertTrue((Integer) metrics.get("reactionsReused") < REACTIONS - 1);
+    }
+
+    /*
+     * Converts the SBML, then the changed SBML incrementally (twice - the second time, nothing changes),
+     * and compares the output with the changed SBML's full conversion.
+     */
+    private ConversionMetrics assertIncremental(String sbml, String changed, boolean pathway, boolean gzip)
+            throws Exception {
+        ConversionOptions options = new ConversionOptions();
+        options.setMakePathway(pathway);
+        options.setGzip(gzip);
+        options.setIncremental(true);
+        Path output = dir.resolve("incremental.owl");
+        ReconxToBiopax.convert(write("before.xml", sbml), output.toString(), options);
+        assertTrue(Files.exists(Paths.get(output + ".index")));
+
+        File changedFile = write("after.xml", changed);
+        ConversionMetrics metrics = ReconxToBiopax.convert(changedFile, output.toString(), options);
+
+        ConversionOptions fullOptions = new ConversionOptions();
+        fullOptions.setMakePathway(pathway);
+        Path full = dir.resolve("full.owl");
+        ConversionMetrics fullMetrics = ReconxToBiopax.convert(changedFile, full.toString(), fullOptions);
+        assertEquals(0, fullMetrics.get("reactionsReused"));
+        byte[] expected = Files.readAllBytes(full);
+        assertArrayEquals(expected, read(output));
+
+        ConversionMetrics again = ReconxToBiopax.convert(changedFile, output.toString(), options);
+        assertEquals(again.get("reactions"), again.get("reactionsReused"));
+        assertArrayEquals(expected, read(output));
+        return metrics;
+    }
+
+    private static String sbml() {
+        return new String(SyntheticSbmlGenerator.reconLike(REACTIONS).toBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static String replace(String s, String target, String replacement) {
+        assertTrue(s.contains(target), target);
+        return s.replace(target, replacement);
+    }
+
+    private File write(String name, String sbml) throws IOException {
+        return Files.write(dir.resolve(name), sbml.getBytes(StandardCharsets.UTF_8)).toFile();
+    }
+
+    private static byte[] read(Path path) throws IOException {
+        try (InputStream inputStream = InputFiles.open(path)) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
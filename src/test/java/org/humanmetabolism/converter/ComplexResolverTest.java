@@ -0,0 +1,61 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXFactory;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Complex;
+import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.biopax.paxtools.model.level3.Protein;
+import org.biopax.paxtools.model.level3.ProteinReference;
+import org.biopax.paxtools.model.level3.RelationshipXref;
+import org.biopax.paxtools.model.level3.UnificationXref;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ComplexResolverTest {
+
+    @Test
+    public void relationshipXrefMatchesUnificationXref() {
+        BioPAXFactory factory = BioPAXLevel.L3.getDefaultFactory();
+        Model model = factory.createModel();
+
+        // as converted from a protein species and a complex species
+        UnificationXref unificationXref = model.addNew(UnificationXref.class, "unificationxref_uniprot_P12345");
+        unificationXref.setDb("uniprot");
+        unificationXref.setId("P12345");
+        ProteinReference proteinRef = model.addNew(ProteinReference.class, "ref_G1");
+        proteinRef.setDisplayName("G1");
+        proteinRef.addXref(unificationXref);
+
+        RelationshipXref relationshipXref = model.addNew(RelationshipXref.class, "relationshipxref_uniprot_P12345");
+        relationshipXref.setDb("UniProt");
+        relationshipXref.setId("P12345");
+        Complex complex = model.addNew(Complex.class, "complex_G1_G2");
+        complex.setDisplayName("G1:G2");
+        complex.addXref(relationshipXref);
+
+        BiopaxElementRegistry registry = new BiopaxElementRegistry(factory, model);
+        ComplexResolver resolver = new ComplexResolver(registry, new XrefRegistry(registry, ""),
+                new UriFactory("", new StringPool()), null);
+        for (BioPAXElement element : new ArrayList<>(model.getObjects())) {
+            resolver.visit(element);
+        }
+        resolver.complete(model);
+
+        assertEquals(1, resolver.getMatchedCount());
+        assertEquals(0, resolver.getSymbolMatchedCount());
+        assertEquals(1, resolver.getSymbolCreatedCount());
+        assertEquals(2, complex.getComponent().size());
+        int matched = 0;
+        for (PhysicalEntity component : complex.getComponent()) {
+            if(((Protein) component).getEntityReference() == proteinRef) {
+                matched++;
+            }
+        }
+        assertEquals(1, matched);
+    }
+}
@@ -0,0 +1,108 @@
+package org.humanmetabolism.converter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sbml.jsbml.ModifierSpeciesReference;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.SpeciesReference;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CountingCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void computesOncePerKey() {
+        CountingCache<String, Object> cache = new CountingCache<>("test");
+        AtomicInteger calls = new AtomicInteger();
+        Object a = cache.get("a", k -> {
+            calls.incrementAndGet();
+            return new Object();
+        });
+        assertSame(a, cache.get("a", k -> {
+            throw new AssertionError("computed again");
+        }));
+        cache.get("b", k -> {
+            calls.incrementAndGet();
+            return new Object();
+        });
+        assertEquals(2, calls.get());
+        assertEquals(1L, cache.getHits());
+        assertEquals(2L, cache.getMisses());
+        assertEquals(2, cache.size());
+        assertEquals("test cache: 1 hits, 2 misses, 2 entries", cache.toString());
+    }
+
+    @Test
+    public void computesOncePerKeyConcurrently() throws Exception {
+        CountingCache<Integer, Integer> cache = new CountingCache<>("test");
+        ConcurrentMap<Integer, AtomicInteger> calls = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    int key = i % 100;
+                    assertEquals(key * 2, (int) cache.get(key, k -> {
+                        calls.computeIfAbsent(k, x -> new AtomicInteger()).incrementAndGet();
+                        return k * 2;
+                    }));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(100, calls.size());
+        for (AtomicInteger count : calls.values()) {
+            assertEquals(1, count.get());
+        }
+        assertEquals(100L, cache.getMisses());
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void speciesConvertedOncePerConversion() throws Exception {
+        Path sbml = Files.write(dir.resolve("model.xml"), SyntheticSbmlGenerator.reconLike(300).toBytes());
+        long references = 0;
+        Set<String> used = new HashSet<>();
+        for (Reaction reaction : SBMLReader.read(sbml.toFile()).getModel().getListOfReactions()) {
+            for (ModifierSpeciesReference modifier : reaction.getListOfModifiers()) {
+                used.add(modifier.getSpecies());
+                references++;
+            }
+            for (SpeciesReference reactant : reaction.getListOfReactants()) {
+                used.add(reactant.getSpecies());
+                references++;
+            }
+            for (SpeciesReference product : reaction.getListOfProducts()) {
+                used.add(product.getSpecies());
+                references++;
+            }
+        }
+
+        for (boolean streaming : new boolean[]{false, true}) {
+            SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+            sbmlToBiopaxConverter.setStreaming(streaming);
+            sbmlToBiopaxConverter.convert(sbml.toFile());
+            CountingCache<String, ?> speciesCache = sbmlToBiopaxConverter.getSpeciesCache();
+            assertEquals(used.size(), speciesCache.size());
+            assertEquals(used.size(), speciesCache.getMisses());
+            assertEquals(references, speciesCache.getHits() + speciesCache.getMisses());
+        }
+    }
+}
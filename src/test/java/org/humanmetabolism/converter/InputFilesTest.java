@@ -0,0 +1,64 @@
+package org.humanmetabolism.converter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InputFilesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void readsPlainAndGzipped() throws Exception {
+        byte[] sbml = SyntheticSbmlGenerator.reconLike(100).toBytes();
+        Path plain = Files.write(dir.resolve("model.xml"), sbml);
+        Path packed = dir.resolve("model.xml.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(packed))) {
+            outputStream.write(sbml);
+        }
+        assertEquals(InputFiles.Compression.NONE, InputFiles.compression(plain));
+        assertEquals(InputFiles.Compression.GZIP, InputFiles.compression(packed));
+        try (InputStream inputStream = InputFiles.open(plain)) {
+            assertArrayEquals(sbml, inputStream.readAllBytes());
+        }
+        try (InputStream inputStream = InputFiles.open(packed)) {
+            assertArrayEquals(sbml, inputStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void failsOnSourceError() {
+        InputStream source = new InputStream() {
+            private int bytes;
+
+            @Override
+            public int read() {
+                if(++bytes > 100_000) {
+                    throw new StackOverflowError("decompressor bug");
+                }
+                return 'x';
+            }
+        };
+        // the reader gets the error instead of waiting for the data forever
+        IOException e = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> assertThrows(IOException.class, () -> {
+            try (InputStream inputStream = new InputFiles.PipelineInputStream(source, "test")) {
+                inputStream.readAllBytes();
+            }
+        }));
+        assertTrue(e.getCause() instanceof StackOverflowError);
+    }
+}
@@ -0,0 +1,151 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXFactory;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.BiochemicalReaction;
+import org.biopax.paxtools.model.level3.Catalysis;
+import org.biopax.paxtools.model.level3.Complex;
+import org.biopax.paxtools.model.level3.Control;
+import org.biopax.paxtools.model.level3.Protein;
+import org.biopax.paxtools.model.level3.ProteinReference;
+import org.biopax.paxtools.model.level3.RelationshipXref;
+import org.biopax.paxtools.model.level3.SmallMolecule;
+import org.biopax.paxtools.model.level3.SmallMoleculeReference;
+import org.biopax.paxtools.model.level3.UnificationXref;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IntegrityCheckerTest {
+    private final BioPAXFactory factory = BioPAXLevel.L3.getDefaultFactory();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void countsAndSamples() {
+        IntegrityChecker checker = new IntegrityChecker(false, 2);
+        RelationshipXref relationshipXref = factory.create(RelationshipXref.class, "rx");
+        for (int i = 0; i < 3; i++) {
+            checker.checkReference(factory.create(ProteinReference.class, "ref" + i),
+                    Collections.singletonList(relationshipXref));
+        }
+        checker.checkReference(factory.create(ProteinReference.class, "ok"),
+                Arrays.asList(relationshipXref, factory.create(UnificationXref.class, "ux")));
+
+        BiochemicalReaction reaction = factory.create(BiochemicalReaction.class, "R_r1");
+        reaction.addLeft(factory.create(SmallMolecule.class, "M_m1_c"));
+        Control control = factory.create(Catalysis.class, "control_R_r1_M_p1_c");
+        control.addControlled(reaction);
+        checker.checkReaction(reaction, Collections.singletonList(control));
+
+        assertEquals(3L, checker.getCount(IntegrityChecker.Rule.ER_WITHOUT_UNIFICATION_XREF));
+        assertEquals(Arrays.asList("ref0", "ref1"), checker.getSamples(IntegrityChecker.Rule.ER_WITHOUT_UNIFICATION_XREF));
+        assertEquals(1L, checker.getCount(IntegrityChecker.Rule.CONVERSION_WITHOUT_PARTICIPANTS));
+        assertEquals(1L, checker.getCount(IntegrityChecker.Rule.INCOMPLETE_CONTROL));
+        assertEquals(5L, checker.getViolationCount());
+
+        assertEquals("integrity violations: 5; ER_WITHOUT_UNIFICATION_XREF: 3; CONVERSION_WITHOUT_PARTICIPANTS: 1;"
+                + " INCOMPLETE_CONTROL: 1", checker.toString());
+        assertEquals("#rule\tcount\tsamples\n"
+                + "ER_WITHOUT_UNIFICATION_XREF\t3\tref0\tref1\n"
+                + "EMPTY_COMPLEX\t0\n"
+                + "DANGLING_XREF\t0\n"
+                + "INCOMPLETE_XREF\t0\n"
+                + "CONVERSION_WITHOUT_PARTICIPANTS\t1\tR_r1\n"
+                + "INCOMPLETE_CONTROL\t1\tcontrol_R_r1_M_p1_c\n", checker.report());
+
+        ConversionMetrics metrics = new ConversionMetrics();
+        checker.addTo(metrics);
+        assertEquals(3L, metrics.get("integrity.ER_WITHOUT_UNIFICATION_XREF"));
+        assertEquals(0L, metrics.get("integrity.EMPTY_COMPLEX"));
+    }
+
+    @Test
+    public void complexesAndXrefsAfterTraversal() {
+        Model model = factory.createModel();
+        Complex empty = model.addNew(Complex.class, "M_cpx1_c");
+        Complex complex = model.addNew(Complex.class, "M_cpx2_c");
+        complex.addComponent(model.addNew(Protein.class, "protein_G1"));
+        UnificationXref used = model.addNew(UnificationXref.class, "used");
+        used.setDb("chebi");
+        used.setId("CHEBI:15377");
+        model.addNew(SmallMoleculeReference.class, "ref_M_m1_c").addXref(used);
+        UnificationXref dangling = model.addNew(UnificationXref.class, "dangling");
+        dangling.setDb("chebi");
+        dangling.setId("CHEBI:15378");
+        UnificationXref incomplete = model.addNew(UnificationXref.class, "incomplete");
+        incomplete.setDb("chebi");
+        complex.addXref(incomplete);
+
+        IntegrityChecker checker = new IntegrityChecker(false, 10);
+        new PostProcessingPipeline(checker).run(model);
+        assertEquals(Collections.singletonList("M_cpx1_c"), checker.getSamples(IntegrityChecker.Rule.EMPTY_COMPLEX));
+        assertEquals(Collections.singletonList("dangling"), checker.getSamples(IntegrityChecker.Rule.DANGLING_XREF));
+        assertEquals(Collections.singletonList("incomplete"), checker.getSamples(IntegrityChecker.Rule.INCOMPLETE_XREF));
+        assertEquals(3L, checker.getViolationCount());
+
+        // (nothing collected is kept for the next run)
+        empty.addComponent(model.addNew(Protein.class, "protein_G2"));
+        model.remove(dangling);
+        new PostProcessingPipeline(checker).run(model);
+        assertEquals(4L, checker.getViolationCount());
+    }
+
+    @Test
+    public void strictModeFailsOnFirstViolation() {
+        IntegrityChecker checker = new IntegrityChecker(true, 10);
+        assertTrue(checker.isStrict());
+        IntegrityException e = assertThrows(IntegrityException.class, () -> checker.checkReference(
+                factory.create(SmallMoleculeReference.class, "ref_M_m1_c"), Collections.emptyList()));
+        assertEquals(IntegrityChecker.Rule.ER_WITHOUT_UNIFICATION_XREF, e.getRule());
+        assertEquals("ref_M_m1_c", e.getUri());
+        assertEquals(0L, checker.getViolationCount());
+    }
+
+    @Test
+    public void checksWhileConverting() throws Exception {
+        Path good = Files.write(dir.resolve("good.xml"), SyntheticSbmlGenerator.reconLike(200).toBytes());
+        // metabolites without identifiers
+        Path bad = Files.write(dir.resolve("bad.xml"),
+                SyntheticSbmlGenerator.reconLike(200).setAnnotationsPerSpecies(0).toBytes());
+
+        for (boolean streaming : new boolean[]{false, true}) {
+            SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+            sbmlToBiopaxConverter.setStreaming(streaming);
+            IntegrityChecker checker = new IntegrityChecker(false, 5);
+            sbmlToBiopaxConverter.setIntegrityChecker(checker);
+            sbmlToBiopaxConverter.convert(good.toFile());
+            assertEquals(0L, checker.getCount(IntegrityChecker.Rule.ER_WITHOUT_UNIFICATION_XREF));
+            assertEquals(0L, checker.getCount(IntegrityChecker.Rule.EMPTY_COMPLEX));
+            assertEquals(0L, checker.getCount(IntegrityChecker.Rule.CONVERSION_WITHOUT_PARTICIPANTS));
+            assertEquals(0L, checker.getCount(IntegrityChecker.Rule.INCOMPLETE_CONTROL));
+
+            sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+            sbmlToBiopaxConverter.setStreaming(streaming);
+            checker = new IntegrityChecker(false, 5);
+            sbmlToBiopaxConverter.setIntegrityChecker(checker);
+            Model model = sbmlToBiopaxConverter.convert(bad.toFile());
+            assertEquals(model.getObjects(SmallMoleculeReference.class).size(),
+                    checker.getCount(IntegrityChecker.Rule.ER_WITHOUT_UNIFICATION_XREF));
+            assertEquals(5, checker.getSamples(IntegrityChecker.Rule.ER_WITHOUT_UNIFICATION_XREF).size());
+
+            sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+            sbmlToBiopaxConverter.setStreaming(streaming);
+            sbmlToBiopaxConverter.setIntegrityChecker(new IntegrityChecker(true, 5));
+            SbmlToBiopaxConverter strict = sbmlToBiopaxConverter;
+            IntegrityException e = assertThrows(IntegrityException.class, () -> strict.convert(bad.toFile()));
+            assertEquals(IntegrityChecker.Rule.ER_WITHOUT_UNIFICATION_XREF, e.getRule());
+            assertTrue(e.getUri().contains("ref_M_m"), e.getUri());
+        }
+    }
+}
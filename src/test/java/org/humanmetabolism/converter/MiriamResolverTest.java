@@ -0,0 +1,72 @@
+package org.humanmetabolism.converter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MiriamResolverTest {
+    private final MiriamResolver resolver = MiriamResolver.getInstance();
+
+    private void assertResolved(String expected, String resource) {
+        MiriamResolver.Resolved resolved = resolver.resolve(resource);
+        assertEquals(expected, (resolved == null) ? null : resolved.toString(), resource);
+    }
+
+    @Test
+    public void miriamUrns() {
+        assertResolved("chebi:CHEBI:15589", "urn:miriam:chebi:CHEBI%3A15589");
+        assertResolved("go:GO:0005739", "URN:MIRIAM:obo.go:GO%3A0005739");
+        assertResolved("kegg compound:C00001", "urn:miriam:kegg.compound:C00001");
+        assertResolved("biomodels database:BIOMD0000000001", "urn:miriam:biomodels.db:BIOMD0000000001");
+        assertResolved("ec code:1.1.1.1", "urn:miriam:ec-code:1.1.1.1");
+    }
+
+    @Test
+    public void identifiersOrg() {
+        // namespace/id style
+        assertResolved("chebi:CHEBI:15589", "http://identifiers.org/chebi/CHEBI:15589");
+        assertResolved("kegg compound:C00001", "https://identifiers.org/kegg.compound/C00001");
+        assertResolved("ncbigene:1234", "http://identifiers.org/ncbigene/1234");
+        // compact style (the prefix is added to the embedded-prefix ids)
+        assertResolved("chebi:CHEBI:15589", "https://identifiers.org/CHEBI:15589");
+        assertResolved("go:GO:0005739", "https://identifiers.org/GO:0005739");
+        assertResolved("taxonomy:9606", "https://identifiers.org/taxonomy:9606");
+    }
+
+    @Test
+    public void bioregistry() {
+        assertResolved("chebi:CHEBI:15589", "https://bioregistry.io/chebi:15589");
+        assertResolved("chebi:CHEBI:15589", "https://bioregistry.io/reference/chebi:15589");
+        assertResolved("hmdb:HMDB0000001", "https://bioregistry.io/hmdb:HMDB0000001");
+    }
+
+    @Test
+    public void unrecognized() {
+        assertNull(resolver.resolve(null));
+        assertResolved(null, "http://example.org/chebi/CHEBI:15589");
+        assertResolved(null, "urn:miriam:chebi");
+        assertResolved(null, "urn:miriam:chebi:");
+        assertResolved(null, "https://identifiers.org/chebi");
+        assertResolved(null, "https://bioregistry.io/chebi");
+    }
+
+    @Test
+    public void databaseNames() {
+        assertEquals("go", resolver.db("obo.go"));
+        assertEquals("chebi", resolver.db("obo.chebi"));
+        assertEquals("pubchem compound", resolver.db("pubchem.compound"));
+        // not a precompiled prefix (the same rules)
+        assertEquals("my database", resolver.db("My.DB"));
+        assertEquals("my database", resolver.db("My.DB"));
+    }
+
+    @Test
+    public void percentDecoding() {
+        assertEquals("CHEBI:15589", MiriamResolver.decode("CHEBI%3A15589", 0, 13));
+        assertEquals("a b\u00e9c", MiriamResolver.decode("xa%20b%C3%A9cx", 1, 13));
+        assertEquals("100%", MiriamResolver.decode("100%", 0, 4));
+        assertEquals("%zz%4", MiriamResolver.decode("%zz%4", 0, 5));
+        assertEquals("no escapes", MiriamResolver.decode("no escapes%20", 0, 10));
+    }
+}
@@ -0,0 +1,135 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.Model;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ModelCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private Model model() throws Exception {
+        Path sbml = dir.resolve("model.xml");
+        if(!Files.exists(sbml)) {
+            Files.write(sbml, SyntheticSbmlGenerator.reconLike(50).toBytes());
+        }
+        SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+        sbmlToBiopaxConverter.biopaxModelXmlBase("reconx:");
+        return sbmlToBiopaxConverter.convert(sbml.toFile());
+    }
+
+    @Test
+    public void keyDependsOnContentSettingsAndVersion() throws Exception {
+        Path a = Files.write(dir.resolve("a.xml"), new byte[]{'a'});
+        Path b = Files.write(dir.resolve("b.xml"), new byte[]{'b'});
+        Path a2 = Files.write(dir.resolve("a2.xml"), new byte[]{'a'});
+        String key = ModelCache.key(a, "pathway=false", "1.0");
+        assertEquals(key, ModelCache.key(a2, "pathway=false", "1.0"));
+        assertNotEquals(key, ModelCache.key(b, "pathway=false", "1.0"));
+        assertNotEquals(key, ModelCache.key(a, "pathway=true", "1.0"));
+        assertNotEquals(key, ModelCache.key(a, "pathway=false", "1.1"));
+    }
+
+    @Test
+    public void hitAndMiss() throws Exception {
+        ModelCache cache = new ModelCache(dir.resolve("cache"), 1L << 30);
+        Model model = model();
+        String key = cache.key(dir.resolve("model.xml"), "settings");
+        assertNull(cache.get(key));
+        cache.put(key, model);
+        Model cached = cache.get(key);
+        assertNotNull(cached);
+        assertEquals(model.getObjects().size(), cached.getObjects().size());
+        assertNull(cache.get(cache.key(dir.resolve("model.xml"), "other settings")));
+
+        // a broken entry is a miss, and is dropped
+        Files.write(cache.entry(key), new byte[]{1, 2, 3});
+        assertNull(cache.get(key));
+        assertFalse(Files.exists(cache.entry(key)));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        Model model = model();
+        ModelCache scratch = new ModelCache(dir.resolve("scratch"), 1L << 30);
+        scratch.put("size", model);
+        long size = Files.size(scratch.entry("size"));
+
+        // room for two entries
+        ModelCache cache = new ModelCache(dir.resolve("cache"), 3 * size - 1);
+        long now = System.currentTimeMillis();
+        cache.put("a", model);
+        Files.setLastModifiedTime(cache.entry("a"), FileTime.fromMillis(now - 20_000));
+        cache.put("b", model);
+        Files.setLastModifiedTime(cache.entry("b"), FileTime.fromMillis(now - 10_000));
+        assertNotNull(cache.get("a")); // now the most recently used
+        cache.put("c", model);
+
+        assertTrue(Files.exists(cache.entry("a")));
+        assertFalse(Files.exists(cache.entry("b")));
+        assertTrue(Files.exists(cache.entry("c")));
+    }
+
+    @Test
+    public void concurrentPutAndGet() throws Exception {
+        Model model = model();
+        int objects = model.getObjects().size();
+        ModelCache scratch = new ModelCache(dir.resolve("scratch"), 1L << 30);
+        scratch.put("size", model);
+        long size = Files.size(scratch.entry("size"));
+
+        // two instances on the same directory (e.g. conversions in one JVM), evicting all the time
+        Path cacheDir = dir.resolve("cache");
+        ModelCache[] caches = {new ModelCache(cacheDir, 3 * size), new ModelCache(cacheDir, 3 * size)};
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                ModelCache cache = caches[t % 2];
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20; i++) {
+                        String key = "k" + ((thread + i) % 6);
+                        Model cached = cache.get(key);
+                        if(cached != null) {
+                            assertEquals(objects, cached.getObjects().size());
+                        }
+                        cache.put(key, model);
+                        cache.evict(); // (would fail with OverlappingFileLockException without the in-JVM lock)
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(); // (rethrows)
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long total = 0;
+        try (var entries = Files.newDirectoryStream(cacheDir, "*.model")) {
+            for (Path entry : entries) {
+                total += Files.size(entry);
+            }
+        }
+        assertTrue(total <= 3 * size, "cache size " + total);
+    }
+}
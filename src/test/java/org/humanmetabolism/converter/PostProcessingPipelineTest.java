@@ -0,0 +1,107 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Protein;
+import org.biopax.paxtools.model.level3.ProteinReference;
+import org.biopax.paxtools.model.level3.SmallMolecule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PostProcessingPipelineTest {
+
+    /*
+     * Records the visits and completions (to a log shared by the steps).
+     */
+    private static class Recorder implements ModelPostProcessor {
+        final String name;
+        final List<String> log;
+        int visited;
+
+        Recorder(String name, List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void visit(BioPAXElement element) {
+            visited++;
+            log.add(name + " " + element.getUri());
+        }
+
+        @Override
+        public void complete(Model model) {
+            log.add(name + " complete " + visited);
+        }
+    }
+
+    private static class Remover extends Recorder {
+        Remover(List<String> log) {
+            super("remover", log);
+        }
+
+        @Override
+        public void complete(Model model) {
+            super.complete(model);
+            model.remove(model.getByID("p1"));
+        }
+    }
+
+    private Model model() {
+        Model model = BioPAXLevel.L3.getDefaultFactory().createModel();
+        model.addNew(Protein.class, "p1");
+        model.addNew(ProteinReference.class, "pr1");
+        model.addNew(SmallMolecule.class, "sm1");
+        return model;
+    }
+
+    @Test
+    public void oneTraversalThenCompletionInOrder() {
+        for (boolean timed : new boolean[]{false, true}) {
+            Model model = model();
+            List<String> uris = new ArrayList<>();
+            for (BioPAXElement element : model.getObjects()) {
+                uris.add(element.getUri());
+            }
+            List<String> log = new ArrayList<>();
+            PostProcessingPipeline pipeline = new PostProcessingPipeline(new Recorder("first", log), new Remover(log))
+                    .add(new Recorder("last", log));
+            if(timed) {
+                pipeline.setMetrics(new ConversionMetrics());
+            }
+            pipeline.run(model);
+
+            // each element is visited by all the steps, before the next element
+            List<String> expected = new ArrayList<>();
+            for (String uri : uris) {
+                expected.addAll(Arrays.asList("first " + uri, "remover " + uri, "last " + uri));
+            }
+            // the steps complete after the traversal (so a step may change the model)
+            expected.addAll(Arrays.asList("first complete 3", "remover complete 3", "last complete 3"));
+            assertEquals(expected, log);
+            assertEquals(2, model.getObjects().size());
+        }
+    }
+
+    @Test
+    public void stepsTimed() {
+        ConversionMetrics metrics = new ConversionMetrics();
+        List<String> log = new ArrayList<>();
+        new PostProcessingPipeline(new Recorder("first", log), new Remover(log)).setMetrics(metrics).run(model());
+
+        assertEquals(8, log.size());
+        for (String phase : Arrays.asList("postprocess.Recorder", "postprocess.Remover")) {
+            assertTrue(metrics.getNanos(phase) > 0, phase);
+            // (time only - the steps share the traversal)
+            assertEquals(-1L, metrics.getAllocatedBytes(phase), phase);
+            assertTrue(metrics.toJson().contains("\"" + phase + "\": {\"wallTimeMs\": "), metrics.toJson());
+        }
+    }
+}
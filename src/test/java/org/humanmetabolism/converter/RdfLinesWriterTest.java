@@ -0,0 +1,90 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RdfLinesWriterTest {
+    private static final String XML_BASE = "reconx:";
+
+    @TempDir
+    Path dir;
+
+    private static Model convert() throws Exception {
+        SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+        sbmlToBiopaxConverter.biopaxModelXmlBase(XML_BASE);
+        sbmlToBiopaxConverter.setMakePathway(true);
+        return sbmlToBiopaxConverter.convert(
+                new ByteArrayInputStream(SyntheticSbmlGenerator.reconLike(300).toBytes()));
+    }
+
+    private static Set<String> resolvedUris(Model model) {
+        Set<String> uris = new HashSet<>();
+        for (BioPAXElement element : model.getObjects()) {
+            uris.add(RdfLinesWriter.resolve(XML_BASE, element.getUri()));
+        }
+        return uris;
+    }
+
+    @Test
+    public void nTriplesParse() throws Exception {
+        Model model = convert();
+        Path nt = dir.resolve("model.nt");
+        new RdfLinesWriter(RdfLinesWriter.Format.NTRIPLES, 4).write(model, nt, false);
+
+        Set<String> subjects = new HashSet<>();
+        try (InputStream inputStream = Files.newInputStream(nt)) {
+            for (Statement statement : Rio.parse(inputStream, "", RDFFormat.NTRIPLES)) {
+                subjects.add(statement.getSubject().stringValue());
+            }
+        }
+        // every object, with its URI resolved against the xml:base
+        assertEquals(resolvedUris(model), subjects);
+    }
+
+    @Test
+    public void nQuadsParse() throws Exception {
+        Model model = convert();
+        Path nq = dir.resolve("model.nq.gz");
+        new RdfLinesWriter(RdfLinesWriter.Format.NQUADS, 2).write(model, nq, true);
+
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(nq))) {
+            org.eclipse.rdf4j.model.Model statements = Rio.parse(inputStream, "", RDFFormat.NQUADS);
+            // all in the data source graph
+            assertEquals(1, statements.contexts().size());
+            Set<String> subjects = new HashSet<>();
+            for (Resource subject : statements.subjects()) {
+                subjects.add(subject.stringValue());
+            }
+            assertEquals(resolvedUris(model), subjects);
+        }
+    }
+
+    @Test
+    public void resolve() {
+        assertEquals("reconx:bioregistry.io/ncbitaxon:9606", RdfLinesWriter.resolve("reconx:", "bioregistry.io/ncbitaxon:9606"));
+        assertEquals("reconx:R_1", RdfLinesWriter.resolve("reconx:", "reconx:R_1"));
+        assertEquals("http://a.org/b/R_1", RdfLinesWriter.resolve("http://a.org/b/model#", "R_1"));
+        assertEquals("http://a.org/R_1", RdfLinesWriter.resolve("http://a.org", "R_1"));
+        assertEquals("http://a.org/b#R_1", RdfLinesWriter.resolve("http://a.org/b", "#R_1"));
+        assertTrue(RdfLinesWriter.isAbsolute("chebi:15377"));
+        assertFalse(RdfLinesWriter.isAbsolute("bioregistry.io/chebi:15377"));
+    }
+}
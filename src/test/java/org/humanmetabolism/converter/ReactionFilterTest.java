@@ -0,0 +1,138 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.CellularLocationVocabulary;
+import org.biopax.paxtools.model.level3.Control;
+import org.biopax.paxtools.model.level3.Controller;
+import org.biopax.paxtools.model.level3.Conversion;
+import org.biopax.paxtools.model.level3.PhysicalEntity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReactionFilterTest {
+    private final Map<String, SbmlSpecies> species = new HashMap<>();
+
+    @TempDir
+    Path dir;
+
+    private SbmlReaction reaction(String id, int sboTerm, String subsystem, String reactant, String product) {
+        SbmlReaction reaction = new SbmlReaction(id, id, sboTerm, true);
+        reaction.getReactants().add(reactant);
+        reaction.getProducts().add(product);
+        if(subsystem != null) {
+            reaction.setNotesParagraphs(Arrays.asList("SUBSYSTEM: " + subsystem, "EC Number: 1.1.1.1"));
+        }
+        return reaction;
+    }
+
+    private void species(String id, String compartment) {
+        species.put(id, new SbmlSpecies(id, id, 247, compartment));
+    }
+
+    @Test
+    public void criteria() {
+        species("M_a_c", "c");
+        species("M_a_m", "m");
+        species("M_b_e", "e");
+        SbmlReaction r1 = reaction("R_r1", 176, "Glycolysis", "M_a_c", "M_a_c");
+        SbmlReaction r2 = reaction("R_r2", 185, "Transport, mitochondrial", "M_a_c", "M_a_m");
+        SbmlReaction r3 = reaction("R_x3", 176, null, "M_b_e", "M_unknown");
+
+        ReactionFilter filter = new ReactionFilter();
+        assertTrue(filter.isEmpty());
+        for (SbmlReaction reaction : Arrays.asList(r1, r2, r3)) {
+            assertTrue(filter.accept(reaction, species));
+        }
+
+        // ids: the list or the pattern
+        filter = new ReactionFilter().addId("R_x3").setIdPattern("R_r[2-9]");
+        assertFalse(filter.isEmpty());
+        assertFalse(filter.accept(r1, species));
+        assertTrue(filter.accept(r2, species));
+        assertTrue(filter.accept(r3, species));
+        // (the whole id must match)
+        assertFalse(new ReactionFilter().setIdPattern("R_r").accept(r1, species));
+
+        filter = new ReactionFilter().addSboTerm(185);
+        assertFalse(filter.accept(r1, species));
+        assertTrue(filter.accept(r2, species));
+
+        // a reactant or product in any of the compartments
+        filter = new ReactionFilter().addCompartment("m").addCompartment("e");
+        assertFalse(filter.accept(r1, species));
+        assertTrue(filter.accept(r2, species));
+        assertTrue(filter.accept(r3, species));
+
+        filter = new ReactionFilter().addSubsystem(" glycolysis ");
+        assertTrue(filter.accept(r1, species));
+        assertFalse(filter.accept(r2, species));
+        assertFalse(filter.accept(r3, species));
+
+        // every criterion
+        filter = new ReactionFilter().setIdPattern("R_.*").addSboTerm(176).addCompartment("c");
+        assertTrue(filter.accept(r1, species));
+        assertFalse(filter.accept(r2, species));
+        assertFalse(filter.accept(r3, species));
+    }
+
+    @Test
+    public void sameCriteriaSameString() {
+        ReactionFilter a = new ReactionFilter().addId("R_r2").addId("R_r1").addSubsystem("Glycolysis");
+        ReactionFilter b = new ReactionFilter().addSubsystem("Glycolysis").addId("R_r1").addId("R_r2");
+        assertEquals(a.toString(), b.toString());
+        assertFalse(a.toString().equals(new ReactionFilter().addId("R_r1").toString()));
+    }
+
+    @Test
+    public void onlySelectedReactionsConverted() throws Exception {
+        Path sbml = Files.write(dir.resolve("model.xml"), SyntheticSbmlGenerator.reconLike(300).toBytes());
+        for (boolean streaming : new boolean[]{false, true}) {
+            SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+            sbmlToBiopaxConverter.setStreaming(streaming);
+            sbmlToBiopaxConverter.biopaxModelXmlBase("reconx:");
+            sbmlToBiopaxConverter.setReactionFilter(new ReactionFilter().addSubsystem("Subsystem 1"));
+            ConversionMetrics metrics = new ConversionMetrics();
+            sbmlToBiopaxConverter.setMetrics(metrics);
+            Model model = sbmlToBiopaxConverter.convert(sbml.toFile());
+
+            // (i % 80 == 1)
+            Set<String> conversions = new HashSet<>();
+            Set<PhysicalEntity> participants = new HashSet<>();
+            for (Conversion conversion : model.getObjects(Conversion.class)) {
+                conversions.add(conversion.getUri());
+                participants.addAll(conversion.getLeft());
+                participants.addAll(conversion.getRight());
+            }
+            assertEquals(new HashSet<>(Arrays.asList("reconx:R_r1", "reconx:R_r81", "reconx:R_r161", "reconx:R_r241")),
+                    conversions);
+            for (Control control : model.getObjects(Control.class)) {
+                for (Controller controller : control.getController()) {
+                    participants.add((PhysicalEntity) controller);
+                }
+            }
+            Set<CellularLocationVocabulary> locations = new HashSet<>();
+            for (PhysicalEntity participant : participants) {
+                locations.add(participant.getCellularLocation());
+            }
+
+            // no other species and compartments
+            for (PhysicalEntity entity : model.getObjects(PhysicalEntity.class)) {
+                assertTrue(participants.contains(entity) || entity.getComponentOf().size() > 0, entity.getUri());
+            }
+            assertEquals(locations, model.getObjects(CellularLocationVocabulary.class));
+            assertEquals(296, ((Number) metrics.get("reactionsSkipped")).intValue());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.BiochemicalReaction;
+import org.biopax.paxtools.model.level3.SmallMolecule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SbmlNotesTest {
+
+    @TempDir
+    Path dir;
+
+    /*
+     * Adds the text as if read from <body><p>...</p>...</body>.
+     */
+    private static void paragraphs(SbmlNotes notes, String... paragraphs) {
+        notes.boundary("body");
+        for (String paragraph : paragraphs) {
+            notes.boundary("p");
+            notes.append(paragraph);
+            notes.boundary("p");
+        }
+        notes.boundary("body");
+    }
+
+    @Test
+    public void plainText() {
+        SbmlNotes notes = new SbmlNotes();
+        notes.boundary("body");
+        notes.append("\n  Some\tnotes  ");
+        notes.boundary("b");
+        notes.append("in bold");
+        notes.boundary("b");
+        notes.boundary("br");
+        char[] chars = "[next line] ".toCharArray();
+        notes.append(chars, 1, 9);
+        notes.boundary("body");
+        assertEquals("Some notes in bold next line", notes.build());
+
+        // (reset)
+        assertNull(notes.build());
+        notes.append(" \n ");
+        assertNull(notes.build());
+    }
+
+    @Test
+    public void structuredNotes() {
+        SbmlNotes notes = new SbmlNotes();
+        paragraphs(notes, " GENE_ASSOCIATION: (G1 and G2) or G3", "SUBSYSTEM:  Glycolysis/gluconeogenesis",
+                "EC Number: 1.1.1.1", "Confidence Level: 4");
+        SbmlElement element = new SbmlElement("R_r1", "reaction 1", 176);
+        notes.build(element);
+
+        assertEquals(Arrays.asList("GENE_ASSOCIATION: (G1 and G2) or G3", "SUBSYSTEM: Glycolysis/gluconeogenesis",
+                "EC Number: 1.1.1.1", "Confidence Level: 4"), element.getNotesParagraphs());
+        assertEquals("Glycolysis/gluconeogenesis", element.getNotesField("subsystem"));
+        assertEquals("1.1.1.1", element.getNotesField("EC Number"));
+        assertNull(element.getNotesField("EC"));
+        assertNull(element.getNotesField("FORMULA"));
+        assertEquals("GENE_ASSOCIATION: (G1 and G2) or G3 SUBSYSTEM: Glycolysis/gluconeogenesis"
+                + " EC Number: 1.1.1.1 Confidence Level: 4", element.getNotes());
+    }
+
+    @Test
+    public void unstructuredNotes() {
+        SbmlNotes notes = new SbmlNotes();
+        paragraphs(notes, "See http://example.org: a web page", "(no fields here)");
+        SbmlElement element = new SbmlElement("M_m1_c", "metabolite 1", 247);
+        notes.build(element);
+        assertEquals("See http://example.org: a web page (no fields here)", element.getNotes());
+        assertTrue(element.getNotesParagraphs().isEmpty());
+
+        // no text - no notes
+        SbmlElement empty = new SbmlElement("M_m2_c", "metabolite 2", 247);
+        paragraphs(notes, " ", "");
+        notes.build(empty);
+        assertNull(empty.getNotes());
+    }
+
+    @Test
+    public void fieldKeys() {
+        assertEquals(9, SbmlNotes.keyEnd("EC Number: 1.1.1.1", 0, 18));
+        assertEquals(16, SbmlNotes.keyEnd("GENE_ASSOCIATION: G1", 0, 20));
+        assertEquals(8, SbmlNotes.keyEnd("x CHARGE: -1", 2, 12));
+        assertEquals(-1, SbmlNotes.keyEnd("http://example.org", 0, 18));
+        assertEquals(-1, SbmlNotes.keyEnd("1st: value", 0, 10));
+        assertEquals(-1, SbmlNotes.keyEnd("not (a) key: value", 0, 18));
+        assertEquals(-1, SbmlNotes.keyEnd("no colon", 0, 8));
+        assertEquals(-1, SbmlNotes.keyEnd("SUBSYSTEM: x", 0, 9));
+    }
+
+    @Test
+    public void ecNumbers() {
+        assertEquals(Collections.emptyList(), SbmlToBiopaxUtils.ecNumbers(null));
+        assertEquals(Arrays.asList("1.1.1.1", "1.1.1.2"), SbmlToBiopaxUtils.ecNumbers("1.1.1.1 or 1.1.1.2"));
+        assertEquals(Arrays.asList("3.4.-.-", "3.6.1.n1", "2.7.1.1"),
+                SbmlToBiopaxUtils.ecNumbers("EC:3.4.-.-; 3.6.1.n1, ec:2.7.1.1"));
+        assertEquals(Collections.emptyList(), SbmlToBiopaxUtils.ecNumbers("1.1.1 n.1.1.1 1.1.1.a 1.1..1 -.1.1.1"));
+    }
+
+    @Test
+    public void sameCommentsWhenStreaming() throws Exception {
+        Path sbml = Files.write(dir.resolve("model.xml"), SyntheticSbmlGenerator.reconLike(10).toBytes());
+        for (boolean streaming : new boolean[]{false, true}) {
+            SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+            sbmlToBiopaxConverter.setStreaming(streaming);
+            sbmlToBiopaxConverter.biopaxModelXmlBase("reconx:");
+            Model model = sbmlToBiopaxConverter.convert(sbml.toFile());
+
+            BiochemicalReaction reaction = (BiochemicalReaction) model.getByID("reconx:R_r1");
+            assertEquals(new HashSet<>(Arrays.asList("GENE_ASSOCIATION: G1", "SUBSYSTEM: subsystem 1",
+                    "EC Number: 1.1.1.1", "Confidence Level: 1")), reaction.getComment(), "streaming=" + streaming);
+            assertEquals(Collections.singleton("1.1.1.1"), reaction.getECNumber());
+            // (metabolite notes are fields too)
+            for (SmallMolecule smallMolecule : model.getObjects(SmallMolecule.class)) {
+                assertEquals(2, smallMolecule.getComment().size(), smallMolecule.getUri());
+                for (String comment : smallMolecule.getComment()) {
+                    assertTrue(comment.startsWith("FORMULA: C") || comment.startsWith("CHARGE: "), comment);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class SbmlToBiopaxConverterTest {
+
+    @TempDir
+    Path dir;
+
+    private File sbml(int reactions) throws Exception {
+        Path sbml = dir.resolve("model.xml");
+        Files.write(sbml, SyntheticSbmlGenerator.reconLike(reactions).toBytes());
+        return sbml.toFile();
+    }
+
+    private byte[] convert(File sbml, int threads, boolean streaming) throws Exception {
+        SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+        sbmlToBiopaxConverter.setParallelism(threads);
+        sbmlToBiopaxConverter.setStreaming(streaming);
+        sbmlToBiopaxConverter.setMakePathway(true);
+        sbmlToBiopaxConverter.biopaxModelXmlBase("reconx:");
+        Model bpModel = sbmlToBiopaxConverter.convert(sbml);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new SimpleIOHandler(BioPAXLevel.L3).convertToOWL(bpModel, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void sameOutputWithAnyNumberOfThreads() throws Exception {
+        File sbml = sbml(2500); // several parallel batches
+        assertArrayEquals(convert(sbml, 1, false), convert(sbml, 4, false));
+    }
+
+    @Test
+    public void sameOutputWithAnyNumberOfThreadsStreaming() throws Exception {
+        File sbml = sbml(2500); // several parallel batches
+        assertArrayEquals(convert(sbml, 1, true), convert(sbml, 4, true));
+    }
+}
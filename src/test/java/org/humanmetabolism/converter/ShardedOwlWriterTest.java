@@ -0,0 +1,147 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.io.SimpleIOHandler;
+import org.biopax.paxtools.model.BioPAXElement;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Control;
+import org.biopax.paxtools.model.level3.Conversion;
+import org.biopax.paxtools.model.level3.Interaction;
+import org.biopax.paxtools.model.level3.Pathway;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShardedOwlWriterTest {
+
+    @TempDir
+    Path dir;
+
+    private Model model() throws Exception {
+        Path sbml = Files.write(dir.resolve("model.xml"), SyntheticSbmlGenerator.reconLike(200).toBytes());
+        SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+        sbmlToBiopaxConverter.setMakePathway(true);
+        sbmlToBiopaxConverter.biopaxModelXmlBase("reconx:");
+        return sbmlToBiopaxConverter.convert(sbml.toFile());
+    }
+
+    /*
+     * Checks that each shard loads on its own, matches the manifest, and that the shards
+     * together have every object of the model and every interaction exactly once.
+     */
+    private List<String> check(Model model, List<ShardedOwlWriter.Shard> shards, Path shardsDir) throws Exception {
+        List<String> manifest = Files.readAllLines(shardsDir.resolve(ShardedOwlWriter.MANIFEST_FILE));
+        assertEquals("#shard\tfile\tinteractions\tobjects", manifest.get(0));
+        assertEquals(shards.size() + 1, manifest.size());
+
+        List<String> names = new ArrayList<>();
+        Set<String> uris = new HashSet<>();
+        Set<String> interactions = new HashSet<>();
+        int others = 0;
+        for (int i = 0; i < shards.size(); i++) {
+            ShardedOwlWriter.Shard shard = shards.get(i);
+            names.add(shard.getName());
+            assertEquals(shard.getName() + "\t" + shard.getFile() + "\t" + shard.getInteractionCount()
+                    + "\t" + shard.getObjectCount(), manifest.get(i + 1));
+            if(shard.getName().equals(ShardedOwlWriter.OTHER)) {
+                // (the rest of the objects, e.g. the pathway, which refers to the other shards' interactions)
+                others = shard.getObjectCount();
+                continue;
+            }
+
+            Model shardModel;
+            try (InputStream inputStream = InputFiles.open(shardsDir.resolve(shard.getFile()))) {
+                shardModel = new SimpleIOHandler(BioPAXLevel.L3).convertFromOWL(inputStream);
+            }
+            assertEquals(shard.getObjectCount(), shardModel.getObjects().size(), shard.getName());
+            int shardInteractions = 0;
+            for (BioPAXElement element : shardModel.getObjects()) {
+                uris.add(element.getUri());
+                if(element instanceof Interaction) {
+                    assertTrue(interactions.add(element.getUri()), element.getUri());
+                    shardInteractions++;
+                }
+            }
+            assertEquals(shard.getInteractionCount(), shardInteractions, shard.getName());
+        }
+
+        Set<String> expected = new HashSet<>();
+        for (BioPAXElement element : model.getObjects()) {
+            expected.add(element.getUri());
+        }
+        assertTrue(expected.containsAll(uris));
+        assertEquals(expected.size(), uris.size() + others);
+        assertEquals(model.getObjects(Conversion.class).size() + model.getObjects(Control.class).size(),
+                interactions.size());
+        // the model pathway is not an interaction of any shard
+        assertEquals(ShardedOwlWriter.OTHER, names.get(names.size() - 1));
+        assertEquals(1, model.getObjects(Pathway.class).size());
+        return names;
+    }
+
+    @Test
+    public void byHash() throws Exception {
+        Model model = model();
+        Path shardsDir = dir.resolve("hash");
+        List<ShardedOwlWriter.Shard> shards = new ShardedOwlWriter(ShardedOwlWriter.Partitioning.HASH, 4, true,
+                "reconx:", 3).write(model, shardsDir);
+        assertEquals(Arrays.asList("bucket0", "bucket1", "bucket2", "bucket3", "other"), check(model, shards, shardsDir));
+        assertEquals("bucket0.owl.gz", shards.get(0).getFile());
+
+        // the same files again
+        Path again = dir.resolve("again");
+        new ShardedOwlWriter(ShardedOwlWriter.Partitioning.HASH, 4, true, "reconx:", 1).write(model, again);
+        for (ShardedOwlWriter.Shard shard : shards) {
+            try (InputStream a = InputFiles.open(shardsDir.resolve(shard.getFile()));
+                 InputStream b = InputFiles.open(again.resolve(shard.getFile()))) {
+                assertArrayEquals(a.readAllBytes(), b.readAllBytes(), shard.getFile());
+            }
+        }
+    }
+
+    @Test
+    public void byCompartment() throws Exception {
+        Model model = model();
+        Path shardsDir = dir.resolve("compartment");
+        List<ShardedOwlWriter.Shard> shards = new ShardedOwlWriter(ShardedOwlWriter.Partitioning.COMPARTMENT, 0, false,
+                "reconx:", 4).write(model, shardsDir);
+        for (String name : check(model, shards, shardsDir)) {
+            assertTrue(name.matches("[a-z ]+(\\+[a-z ]+)*|other"), name);
+        }
+        for (ShardedOwlWriter.Shard shard : shards) {
+            assertTrue(shard.getFile().matches("[a-z_]+\\.owl"), shard.getFile());
+        }
+    }
+
+    @Test
+    public void bySubsystem() throws Exception {
+        Model model = model();
+        Path shardsDir = dir.resolve("subsystem");
+        List<ShardedOwlWriter.Shard> shards = new ShardedOwlWriter(ShardedOwlWriter.Partitioning.SUBSYSTEM, 0, false,
+                null, 2).write(model, shardsDir);
+        List<String> names = check(model, shards, shardsDir);
+        // "subsystem 0" to "subsystem 79"
+        assertEquals(81, names.size());
+        assertTrue(names.contains("subsystem 79"));
+        assertEquals("subsystem_0.owl", shards.get(0).getFile());
+    }
+
+    @Test
+    public void positiveBuckets() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardedOwlWriter(ShardedOwlWriter.Partitioning.HASH, 0, false, null, 1));
+    }
+}
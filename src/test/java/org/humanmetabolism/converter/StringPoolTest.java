@@ -0,0 +1,72 @@
+package org.humanmetabolism.converter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class StringPoolTest {
+
+    @Test
+    public void equalStringsShareOneInstance() {
+        StringPool pool = new StringPool();
+        String first = new String("M_m1_c");
+        assertSame(first, pool.get(first));
+        assertSame(first, pool.get(new String("M_m1_c")));
+        // (the pooled instance itself is not a duplicate)
+        assertSame(first, pool.get(first));
+        assertNull(pool.get(null));
+
+        assertEquals(1, pool.size());
+        assertEquals(3L, pool.getRequests());
+        assertEquals(1L, pool.getHits());
+        // 40 bytes of headers and fields + 6 Latin-1 chars, 8-byte aligned
+        assertEquals(48L, pool.getSavedBytes());
+    }
+
+    @Test
+    public void savedBytesOfNonLatin1Strings() {
+        StringPool pool = new StringPool();
+        pool.get(new String("\u03b1-D-glucose"));
+        pool.get(new String("\u03b1-D-glucose"));
+        // 40 + 2 * 11 chars, aligned
+        assertEquals(64L, pool.getSavedBytes());
+    }
+
+    @Test
+    public void concurrentRequests() throws Exception {
+        StringPool pool = new StringPool();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    List<String> strings = new ArrayList<>();
+                    for (int i = 0; i < 1000; i++) {
+                        strings.add(pool.get("reconx:R_r" + i));
+                    }
+                    return strings;
+                }));
+            }
+            List<String> expected = futures.get(0).get();
+            for (Future<List<String>> future : futures) {
+                List<String> strings = future.get();
+                for (int i = 0; i < strings.size(); i++) {
+                    assertSame(expected.get(i), strings.get(i));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1000, pool.size());
+        assertEquals(8000L, pool.getRequests());
+        assertEquals(7000L, pool.getHits());
+    }
+}
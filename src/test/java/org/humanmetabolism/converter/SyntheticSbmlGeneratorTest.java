@@ -0,0 +1,73 @@
+package org.humanmetabolism.converter;
+
+import org.junit.jupiter.api.Test;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.ModifierSpeciesReference;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+public class SyntheticSbmlGeneratorTest {
+
+    @Test
+    public void sameOutputForSameParametersAndSeed() throws Exception {
+        byte[] sbml = SyntheticSbmlGenerator.reconLike(200).toBytes();
+        assertArrayEquals(sbml, SyntheticSbmlGenerator.reconLike(200).toBytes());
+        StringWriter writer = new StringWriter();
+        SyntheticSbmlGenerator.reconLike(200).write(writer);
+        assertEquals(new String(sbml, StandardCharsets.UTF_8), writer.toString());
+
+        assertFalse(Arrays.equals(sbml, SyntheticSbmlGenerator.reconLike(200).setSeed(7).toBytes()));
+        assertFalse(Arrays.equals(sbml, SyntheticSbmlGenerator.reconLike(201).toBytes()));
+    }
+
+    @Test
+    public void reconLikeModel() throws Exception {
+        byte[] sbml = new SyntheticSbmlGenerator().setReactions(300).setMetabolites(120).setProteins(20)
+                .setComplexes(10).setModifiersPerReaction(2).setAnnotationsPerSpecies(2).toBytes();
+        Model model = new SBMLReader().readSBMLFromStream(new ByteArrayInputStream(sbml)).getModel();
+
+        assertEquals(300, model.getNumReactions());
+        assertEquals(120 + 20 + 10, model.getNumSpecies());
+        assertEquals(8, model.getNumCompartments());
+
+        Set<String> speciesSbo = new HashSet<>();
+        for (Species species : model.getListOfSpecies()) {
+            speciesSbo.add(species.getSBOTermID());
+            assertNotNull(model.getCompartment(species.getCompartment()), species.getId());
+            if(species.getSBOTerm() == 247) {
+                assertEquals(2, species.getCVTerm(0).getResourceCount(), species.getId());
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("SBO:0000247", "SBO:0000252", "SBO:0000297")), speciesSbo);
+
+        Set<String> reactionSbo = new HashSet<>();
+        for (Reaction reaction : model.getListOfReactions()) {
+            reactionSbo.add(reaction.getSBOTermID());
+            assertEquals(2, reaction.getNumModifiers(), reaction.getId());
+            for (ModifierSpeciesReference modifier : reaction.getListOfModifiers()) {
+                assertNotNull(model.getSpecies(modifier.getSpecies()), reaction.getId());
+            }
+            for (SpeciesReference reference : reaction.getListOfReactants()) {
+                assertNotNull(model.getSpecies(reference.getSpecies()), reaction.getId());
+            }
+            for (SpeciesReference reference : reaction.getListOfProducts()) {
+                assertNotNull(model.getSpecies(reference.getSpecies()), reaction.getId());
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("SBO:0000176", "SBO:0000185")), reactionSbo);
+    }
+}
@@ -0,0 +1,83 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.Control;
+import org.biopax.paxtools.model.level3.Controller;
+import org.biopax.paxtools.model.level3.Conversion;
+import org.biopax.paxtools.model.level3.EntityReference;
+import org.biopax.paxtools.model.level3.Process;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UriFactoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void urisFromSbmlIds() {
+        UriFactory uriFactory = new UriFactory("reconx:", new StringPool());
+        assertEquals("reconx:R_r1", uriFactory.element("R_r1"));
+        assertEquals("reconx:ref_M_p1_m", uriFactory.reference("M_p1_m"));
+        assertEquals("reconx:control_R_r1_M_p1_m", uriFactory.control("R_r1", "M_p1_m"));
+        assertEquals("reconx:component_M_cpx1_m_ref_M_p1_m",
+                uriFactory.component(uriFactory.element("M_cpx1_m"), uriFactory.reference("M_p1_m")));
+        assertEquals("reconx:protein_G7", uriFactory.symbolProtein("G7"));
+        assertEquals("reconx:ref_protein_G7", uriFactory.symbolReference("G7"));
+
+        UriFactory noBase = new UriFactory(null, new StringPool());
+        assertEquals("", noBase.getXmlBase());
+        assertEquals("component_M_cpx1_m_ref_M_p1_m", noBase.component("M_cpx1_m", "ref_M_p1_m"));
+    }
+
+    @Test
+    public void urisAndNamesPooled() {
+        StringPool pool = new StringPool();
+        UriFactory uriFactory = new UriFactory("reconx:", pool);
+        assertSame(uriFactory.reference("M_m1_c"), uriFactory.reference("M_m1_c"));
+        assertSame(uriFactory.uri("ref_M_m1_c"), uriFactory.reference("M_m1_c"));
+        assertSame(uriFactory.name(new String("glucose")), uriFactory.name(new String("glucose")));
+        assertSame(pool, uriFactory.getPool());
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void convertedModelUris() throws Exception {
+        Path sbml = Files.write(dir.resolve("model.xml"), SyntheticSbmlGenerator.reconLike(100).toBytes());
+        SbmlToBiopaxConverter sbmlToBiopaxConverter = new SbmlToBiopaxConverter();
+        sbmlToBiopaxConverter.biopaxModelXmlBase("reconx:");
+        ConversionMetrics metrics = new ConversionMetrics();
+        sbmlToBiopaxConverter.setMetrics(metrics);
+        Model model = sbmlToBiopaxConverter.convert(sbml.toFile());
+
+        UriFactory uriFactory = new UriFactory("reconx:", new StringPool());
+        assertFalse(model.getObjects(Control.class).isEmpty());
+        for (Control control : model.getObjects(Control.class)) {
+            Process controlled = control.getControlled().iterator().next();
+            Controller controller = control.getController().iterator().next();
+            assertEquals(uriFactory.control(local(controlled.getUri()), local(controller.getUri())), control.getUri());
+        }
+        for (Conversion conversion : model.getObjects(Conversion.class)) {
+            assertTrue(conversion.getUri().startsWith("reconx:R_r"), conversion.getUri());
+        }
+        // (species with the same unification xrefs share the first one's reference)
+        for (EntityReference reference : model.getObjects(EntityReference.class)) {
+            String speciesId = local(reference.getUri()).substring("ref_".length());
+            assertTrue(speciesId.startsWith("protein_G") || model.containsID(uriFactory.element(speciesId)),
+                    reference.getUri());
+        }
+        assertTrue((Long) metrics.get("stringPoolDuplicates") > 0);
+    }
+
+    private static String local(String uri) {
+        return uri.substring("reconx:".length());
+    }
+}
@@ -0,0 +1,113 @@
+package org.humanmetabolism.converter;
+
+import org.biopax.paxtools.model.BioPAXFactory;
+import org.biopax.paxtools.model.BioPAXLevel;
+import org.biopax.paxtools.model.Model;
+import org.biopax.paxtools.model.level3.EntityReference;
+import org.biopax.paxtools.model.level3.ProteinReference;
+import org.biopax.paxtools.model.level3.RelationshipXref;
+import org.biopax.paxtools.model.level3.UnificationXref;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class XrefRegistryTest {
+    private final BioPAXFactory factory = BioPAXLevel.L3.getDefaultFactory();
+    private final Model model = factory.createModel();
+    private final BiopaxElementRegistry elements = new BiopaxElementRegistry(factory, model);
+    private final XrefRegistry xrefRegistry = new XrefRegistry(elements, "reconx:");
+
+    @Test
+    public void oneXrefPerNormalizedKey() {
+        UnificationXref xref = xrefRegistry.getOrCreate(UnificationXref.class, "ChEBI", "CHEBI:15377");
+        assertEquals("reconx:unificationxref_chebi_CHEBI%3A15377", xref.getUri());
+        assertEquals("chebi", xref.getDb());
+        assertEquals("CHEBI:15377", xref.getId());
+        assertSame(xref, model.getByID(xref.getUri()));
+
+        assertSame(xref, xrefRegistry.getOrCreate(UnificationXref.class, " chebi ", "CHEBI:15377 "));
+        // (ids are case-sensitive; and the same identifier is a different xref of another type)
+        assertNotSame(xref, xrefRegistry.getOrCreate(UnificationXref.class, "chebi", "chebi:15377"));
+        RelationshipXref relationshipXref = xrefRegistry.getOrCreate(RelationshipXref.class, "chebi", "CHEBI:15377");
+        assertEquals("reconx:relationshipxref_chebi_CHEBI%3A15377", relationshipXref.getUri());
+
+        assertEquals(3, xrefRegistry.size());
+        assertEquals(4L, xrefRegistry.getRequestCount());
+    }
+
+    @Test
+    public void bindingsAndRemoval() {
+        UnificationXref xref = xrefRegistry.getOrCreate(UnificationXref.class, "uniprot", "P12345");
+        ProteinReference first = model.addNew(ProteinReference.class, "reconx:ref_G1");
+        ProteinReference second = model.addNew(ProteinReference.class, "reconx:ref_G1b");
+        xrefRegistry.bind(second, xref);
+        xrefRegistry.bind(first, xref);
+        xrefRegistry.bind(second, xref);
+
+        Set<EntityReference> bound = xrefRegistry.getEntityReferences(xref);
+        assertEquals(Arrays.asList(second, first), new ArrayList<>(bound));
+        assertTrue(first.getXref().contains(xref));
+        assertTrue(xrefRegistry.getEntityReferences(
+                xrefRegistry.getOrCreate(UnificationXref.class, "uniprot", "Q99999")).isEmpty());
+
+        UnificationXref unused = xrefRegistry.getOrCreate(UnificationXref.class, "hmdb", "HMDB0000001");
+        xrefRegistry.remove(unused);
+        assertNull(model.getByID(unused.getUri()));
+        assertEquals(2, xrefRegistry.size());
+        // (a new object, when requested again)
+        assertNotSame(unused, xrefRegistry.getOrCreate(UnificationXref.class, "hmdb", "HMDB0000001"));
+    }
+
+    @Test
+    public void deferredXrefsAttachedWhenRequestedAgain() {
+        elements.setDeferred(true);
+        UnificationXref xref = xrefRegistry.getOrCreate(UnificationXref.class, "kegg.compound", "C00001");
+        assertNull(model.getByID(xref.getUri()));
+
+        elements.setDeferred(false);
+        assertSame(xref, xrefRegistry.getOrCreate(UnificationXref.class, "kegg.compound", "C00001"));
+        assertSame(xref, model.getByID(xref.getUri()));
+    }
+
+    @Test
+    public void concurrentRequests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<UnificationXref>>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    List<UnificationXref> xrefs = new ArrayList<>();
+                    for (int i = 0; i < 100; i++) {
+                        UnificationXref xref = xrefRegistry.getOrCreate(UnificationXref.class, "chebi", "CHEBI:" + i);
+                        xrefs.add(xref);
+                    }
+                    return xrefs;
+                }));
+            }
+            List<UnificationXref> expected = futures.get(0).get();
+            for (Future<List<UnificationXref>> future : futures) {
+                List<UnificationXref> xrefs = future.get();
+                for (int i = 0; i < xrefs.size(); i++) {
+                    assertSame(expected.get(i), xrefs.get(i));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(100, xrefRegistry.size());
+        assertEquals(800L, xrefRegistry.getRequestCount());
+        assertEquals(100, model.getObjects(UnificationXref.class).size());
+    }
+}